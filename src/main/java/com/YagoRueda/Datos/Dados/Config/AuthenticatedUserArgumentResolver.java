@@ -0,0 +1,36 @@
+package com.YagoRueda.Datos.Dados.Config;
+
+import com.YagoRueda.Datos.Dados.Dtos.AuthenticatedUser;
+import com.YagoRueda.Datos.Dados.exceptions.UnauthorizedException;
+import com.YagoRueda.Datos.Dados.services.TokenService;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resuelve los parámetros {@link AuthenticatedUser} de los controladores a partir del parámetro {@code token} de la
+ * petición. Si el token no es válido la petición se rechaza con {@link UnauthorizedException}
+ */
+public class AuthenticatedUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final TokenService tokenService;
+
+    public AuthenticatedUserArgumentResolver(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return AuthenticatedUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        String token = webRequest.getParameter("token");
+        return tokenService.authenticate(token)
+                .orElseThrow(() -> new UnauthorizedException("la sesión ha expirado"));
+    }
+}
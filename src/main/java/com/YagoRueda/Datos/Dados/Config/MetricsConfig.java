@@ -0,0 +1,22 @@
+package com.YagoRueda.Datos.Dados.Config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Métricas propias además de las que ya da Spring Boot (peticiones HTTP, repositorios y pool de conexiones). Se
+ * exponen en formato Prometheus en {@code /actuator/prometheus}
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Hace que {@code @Timed} mida los métodos de los beans que lo llevan
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
@@ -0,0 +1,68 @@
+package com.YagoRueda.Datos.Dados.Config;
+
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caché de segundo nivel de Hibernate para {@link SpellEntity} y su daño por nivel, en memoria con Caffeine a través
+ * de JCache. Cada región está acotada por número de entradas y caduca pasado el TTL configurado, de forma que un cambio
+ * hecho desde otro nodo se acaba viendo como mucho tras ese tiempo; los cambios del propio nodo la actualizan al
+ * confirmarse.
+ * <p>
+ * Activa además las estadísticas de Hibernate, de las que salen los aciertos y fallos de {@code /actuator/spellcache}
+ */
+@Configuration
+public class SpellCacheConfig {
+
+    private static final AtomicInteger managers = new AtomicInteger();
+
+    /**
+     * Gestor propio del contexto: el gestor por defecto del proveedor es uno por JVM y lo compartirían contextos con
+     * bases de datos distintas, como los de los tests
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager spellCacheManager(@Value("${datosdados.spells.cache.max-size:10000}") long maxSize,
+                                          @Value("${datosdados.spells.cache.ttl:10m}") Duration ttl) {
+        CacheManager manager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("datosdados-spells-" + managers.incrementAndGet()), getClass().getClassLoader());
+        manager.createCache(SpellEntity.CACHE_REGION, region(maxSize, ttl));
+        manager.createCache(SpellEntity.DAMAGE_CACHE_REGION, region(maxSize, ttl));
+        return manager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer spellCacheHibernateProperties(CacheManager spellCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, spellCacheManager);
+            // Una región sin configurar sería una caché sin límites, mejor fallar al arrancar
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            properties.put(AvailableSettings.LOG_SESSION_METRICS, false);
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxSize, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        // Hibernate ya guarda el estado desensamblado, no hace falta copiarlo en cada lectura
+        configuration.setStoreByValue(false);
+        return configuration;
+    }
+}
@@ -0,0 +1,23 @@
+package com.YagoRueda.Datos.Dados.Config;
+
+import com.YagoRueda.Datos.Dados.services.TokenService;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final TokenService tokenService;
+
+    public WebConfig(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new AuthenticatedUserArgumentResolver(tokenService));
+    }
+}
@@ -0,0 +1,11 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+/**
+ * Usuario autenticado de una petición, resuelto a partir de su token. Solo lleva el id para que un token firmado se
+ * pueda validar sin acceder a bd; quien necesite más datos del usuario los carga a partir de él
+ *
+ * @param userId  Id del usuario
+ * @param tokenId Token con el que se ha autenticado
+ */
+public record AuthenticatedUser(long userId, String tokenId) {
+}
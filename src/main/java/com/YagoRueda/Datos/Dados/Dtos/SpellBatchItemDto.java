@@ -0,0 +1,24 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de un id en una lectura de varios hechizos a la vez
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpellBatchItemDto {
+
+    private long id;
+    /**
+     * {@code False} si el hechizo no existe o el usuario no puede verlo, sin distinguir entre los dos casos
+     */
+    private boolean found;
+    /**
+     * El hechizo, {@code null} si no se ha encontrado
+     */
+    private SpellDto spell;
+}
@@ -0,0 +1,18 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Petición de una operación sobre varios hechizos a la vez
+ */
+@Data
+public class SpellBulkRequestDto {
+
+    private List<Long> ids;
+    /**
+     * Visibilidad que se quiere dejar, solo para el cambio de visibilidad
+     */
+    private Boolean publicVisible;
+}
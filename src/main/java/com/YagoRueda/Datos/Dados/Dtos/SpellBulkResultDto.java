@@ -0,0 +1,25 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Resultado de una operación sobre varios hechizos a la vez
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpellBulkResultDto {
+
+    /**
+     * Ids de los hechizos modificados o eliminados
+     */
+    private List<Long> affected;
+    /**
+     * Ids que no se han tocado: no existen, son de otro usuario o ya estaban como se pedía
+     */
+    private List<Long> skipped;
+}
@@ -17,6 +17,7 @@ import java.util.TreeMap;
 public class SpellDto {
 
     private Long id;
+    private Long version;
     private Long userId;
     private boolean publicVisible;
     private String name;
@@ -33,10 +34,22 @@ public class SpellDto {
     private Map<Integer, String> damageByLevel = new TreeMap<>();
 
 
-    public SpellEntity toEntity(UserEntity user) throws InvalidInputDataException {
-        if (level != null && level < 0) {
+    /**
+     * Comprueba los datos del hechizo. Se usa al crearlo y al modificarlo, sobre el resultado de aplicar los cambios
+     *
+     * @throws InvalidInputDataException Si algún dato no es válido
+     */
+    public void validate() throws InvalidInputDataException {
+        if (level == null) {
+            throw new InvalidInputDataException("El nivel es obligatorio");
+        }
+        if (level < 0) {
             throw new InvalidInputDataException("El nivel no puede ser menor que 0");
         }
+    }
+
+    public SpellEntity toEntity(UserEntity user) throws InvalidInputDataException {
+        validate();
 
         SpellEntity entity = new SpellEntity();
         entity.setUser(user);
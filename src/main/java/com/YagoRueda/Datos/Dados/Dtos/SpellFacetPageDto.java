@@ -0,0 +1,31 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Página de hechizos filtrados por facetas junto con los recuentos de cada faceta
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpellFacetPageDto {
+
+    private List<SpellDto> items;
+    /**
+     * Cursor opaco para pedir la siguiente página, {@code null} si no hay más resultados
+     */
+    private String nextCursor;
+    /**
+     * Número total de hechizos que cumplen el filtro
+     */
+    private int total;
+    /**
+     * Número de hechizos por faceta y valor que se obtendrían eligiendo ese valor con el resto de filtros aplicados
+     */
+    private Map<String, Map<String, Integer>> facets;
+}
@@ -0,0 +1,41 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de una importación masiva de hechizos
+ */
+@Data
+@NoArgsConstructor
+public class SpellImportResultDto {
+
+    /**
+     * Error de una línea de la importación
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        /**
+         * Número de línea, empezando en 1
+         */
+        private long line;
+        private String message;
+    }
+
+    private int imported;
+    private int failed;
+    /**
+     * Errores de las primeras líneas fallidas, como mucho tantos como indique la configuración
+     */
+    private List<RowError> errors = new ArrayList<>();
+    /**
+     * {@code True} si han fallado más líneas de las que se detallan en {@code errors}
+     */
+    private boolean errorsTruncated;
+}
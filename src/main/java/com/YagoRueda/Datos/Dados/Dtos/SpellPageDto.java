@@ -0,0 +1,22 @@
+package com.YagoRueda.Datos.Dados.Dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Página de hechizos de una consulta paginada
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpellPageDto {
+
+    private List<SpellDto> items;
+    /**
+     * Cursor opaco para pedir la siguiente página, {@code null} si no hay más resultados
+     */
+    private String nextCursor;
+}
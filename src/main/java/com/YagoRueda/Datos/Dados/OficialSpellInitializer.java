@@ -1,34 +1,107 @@
 package com.YagoRueda.Datos.Dados;
 
-import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
-import com.YagoRueda.Datos.Dados.models.SpellEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
-import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
 import com.YagoRueda.Datos.Dados.repositories.UserRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.boot.CommandLineRunner;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellCatalog;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellImporter;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellSnapshot;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellLoadProgress;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellsLoadedEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Path;
 import java.time.Instant;
-import java.util.*;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Component
-public class OficialSpellInitializer implements CommandLineRunner {
+public class OficialSpellInitializer {
 
-    private final SpellRepository spellRepository;
     private final UserRepository userRepository;
-    private final String OFICIALUSERNAME = "Admin";
-
-    public OficialSpellInitializer(SpellRepository spellRepository, UserRepository userRepository) {
-        this.spellRepository = spellRepository;
+    private final OfficialSpellImporter officialSpellImporter;
+    private final OfficialSpellCatalog officialSpellCatalog;
+    private final OfficialSpellSnapshot officialSpellSnapshot;
+    private final boolean remoteRefresh;
+    private final Path snapshotOutput;
+    private final OfficialSpellLoadProgress progress;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean loadInBackground;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "official-spell-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    public static final String OFICIALUSERNAME = "Admin";
+
+    public OficialSpellInitializer(UserRepository userRepository, OfficialSpellImporter officialSpellImporter,
+                                   OfficialSpellSnapshot officialSpellSnapshot, OfficialSpellCatalog officialSpellCatalog,
+                                   @Value("${datosdados.official-spells.remote-refresh:false}") boolean remoteRefresh,
+                                   @Value("${datosdados.official-spells.snapshot-output:official-spells-snapshot.json.gz}") Path snapshotOutput,
+                                   OfficialSpellLoadProgress progress, ApplicationEventPublisher eventPublisher,
+                                   @Value("${datosdados.official-spells.load-in-background:true}") boolean loadInBackground) {
         this.userRepository = userRepository;
+        this.officialSpellImporter = officialSpellImporter;
+        this.officialSpellCatalog = officialSpellCatalog;
+        this.officialSpellSnapshot = officialSpellSnapshot;
+        this.remoteRefresh = remoteRefresh;
+        this.snapshotOutput = snapshotOutput;
+        this.progress = progress;
+        this.eventPublisher = eventPublisher;
+        this.loadInBackground = loadInBackground;
     }
 
 
-    @Override
-    public void run(String... args) throws Exception {
+    /**
+     * Lanza la carga de los hechizos oficiales cuando la aplicación ya atiende peticiones. En segundo plano, los
+     * endpoints de usuarios y sesiones funcionan mientras tanto y los de hechizos oficiales responden 503
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLoading() {
+        if (loadInBackground) {
+            loader.execute(this::run);
+        } else {
+            run();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private void run() {
+        progress.start();
+        OfficialSpellImporter.Result result = null;
+        try {
+            result = loadOficialSpells();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Error cargando los hechizos oficiales: " + e.getMessage());
+            e.printStackTrace();
+            progress.fail(e);
+        } finally {
+            // El catálogo se recarga aunque la carga falle, con lo que haya en bd
+            progress.phase("Cargando el catálogo en memoria");
+            officialSpellCatalog.reload();
+        }
+        if (result != null && result.imported() + result.updated() > 0) {
+            // Los índices en memoria se construyeron al arrancar, quizá antes de terminar la carga
+            progress.phase("Reconstruyendo los índices de búsqueda");
+            eventPublisher.publishEvent(new OfficialSpellsLoadedEvent(result.imported(), result.updated()));
+        }
+        if (!progress.isFinished()) {
+            progress.finish();
+        }
+        System.out.println("✅ Catálogo oficial disponible " + progress.status().readyAfterStartMillis()
+                + " ms después del arranque.");
+    }
+
+    private OfficialSpellImporter.Result loadOficialSpells() {
 
         //Comprobación y creación del usuario
         System.out.println("🔍 Comprobando cuenta de hechizos oficiales...");
@@ -46,134 +119,38 @@ public class OficialSpellInitializer implements CommandLineRunner {
 
         UserEntity adminUser = userRepository.findByUsername(OFICIALUSERNAME);
 
-        //
-        RestTemplate restTemplate = new RestTemplate();
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        // Obtener lista de hechizos
-        String baseUrl = "https://www.dnd5eapi.co";
-        String spellListUrl = baseUrl + "/api/spells";
-
-        String spellListResponse = restTemplate.getForObject(spellListUrl, String.class);
-        JsonNode spellListRoot = objectMapper.readTree(spellListResponse);
-
-        System.out.println("🔍 Comprobando numero de hechizos");
-        int oficialSpells = spellListRoot.get("count").asInt();
-        long totalSpells = spellRepository.countByUser(adminUser);
-        System.out.println("🔍 El número de hechizos coincide (" + totalSpells + "/" + oficialSpells + ").");
-
-
-        if (oficialSpells != totalSpells) {
-            System.out.println("🔍 El número de hechizos no coincide (" + totalSpells + "/" + oficialSpells + "). Cargando hechizos oficiales...");
-
-            restTemplate = new RestTemplate();
-            objectMapper = new ObjectMapper();
-
-            // Obtener lista de hechizos
-            baseUrl = "https://www.dnd5eapi.co";
-            spellListUrl = baseUrl + "/api/spells";
-
-            spellListResponse = restTemplate.getForObject(spellListUrl, String.class);
-            spellListRoot = objectMapper.readTree(spellListResponse);
-            JsonNode results = spellListRoot.get("results");
-
-            for (JsonNode spellSummary : results) {
-                String spellUrl = baseUrl + spellSummary.get("url").asText();
-
-                try {
-                    String spellDetailsResponse = restTemplate.getForObject(spellUrl, String.class);
-                    JsonNode spellNode = objectMapper.readTree(spellDetailsResponse);
-
-                    if (!spellRepository.existsByUserAndName(adminUser, spellNode.get("name").asText().trim())) {
-                        // Mapear campos relevantes (aquí debes adaptar esto a tu entidad SpellEntity)
-                        SpellEntity spell = new SpellEntity();
-                        spell.setName(spellNode.get("name").asText());
-                        spell.setLevel(spellNode.get("level").asInt());
-                        spell.setDescription(spellNode.get("desc").get(0).asText());
-                        spell.setSchool(spellNode.get("school").get("name").asText());
-                        if (spellNode.has("components")) {
-                            String componentes_sin_limpiar = objectMapper.writeValueAsString(spellNode.get("components"));
-                            // jsonArrayStr = "[\"V\",\"S\",\"M\"]"
-                            String componentes_limpiados = componentes_sin_limpiar.
-                                     replace("[", "")
-                                    .replace("]", "")
-                                    .replace("\"", "")
-                                    .replace(",", ", ");
-
-                            spell.setComponents(componentes_limpiados);
-                            // Resultado: "V, S, M"
-                        } else {
-                            spell.setComponents("No tiene componentes");
-                        }
-                        spell.setCastTime(spellNode.has("casting_time") ? spellNode.get("casting_time").asText() : "");
-                        spell.setDuration(spellNode.has("duration") ? spellNode.get("duration").asText() : "");
-                        spell.setCastRange(spellNode.has("range") ? spellNode.get("range").asText() : "");
-                        spell.setConcentration(spellNode.has("concentration") && spellNode.get("concentration").asBoolean());
-                        spell.setRitual(spellNode.has("ritual") && spellNode.get("ritual").asBoolean());
-                        spell.setPublicVisible(true);
-                        spell.setUser(adminUser);
-
-                        if (spellNode.has("damage")) {
-                            JsonNode damage = spellNode.get("damage");
-
-                            if (damage.has("damage_type")) {
-                                String damageType = damage.get("damage_type").get("name").asText();
-                                try {
-                                    SpellDamageType type = SpellDamageType.valueOf(damageType.toUpperCase());
-                                    spell.setDamageType(type);
-                                } catch (IllegalArgumentException e) {
-                                    System.err.println("Tipo de daño desconocido: " + damageType);
-                                    System.err.println("Error al importar" + spellNode.get("name").asText());
-                                }
-                            }
-
-                            if (damage.has("damage_at_slot_level")) {
-                                JsonNode damageLevelNode = damage.get("damage_at_slot_level");
-                                Map<Integer, String> damageMap = new HashMap<>();
-
-                                Iterator<String> fieldNames = damageLevelNode.fieldNames();
-                                while (fieldNames.hasNext()) {
-                                    String level = fieldNames.next();
-                                    String value = damageLevelNode.get(level).asText();
-                                    damageMap.put(Integer.parseInt(level), value);
-                                }
-
-                                spell.setDamageByLevel(damageMap); // ✅ Correcto
-
-                            }
-
-                            // Alternativamente, daño por nivel de personaje (menos común)
-                            else if (damage.has("damage_at_character_level")) {
-                                JsonNode damageLevelNode = damage.get("damage_at_character_level");
-                                Map<Integer, String> damageMap = new HashMap<>();
-
-                                Iterator<String> fieldNames = damageLevelNode.fieldNames();
-                                while (fieldNames.hasNext()) {
-                                    String level = fieldNames.next();
-                                    String value = damageLevelNode.get(level).asText();
-                                    damageMap.put(Integer.parseInt(level), value);
-                                }
-
-                                spell.setDamageByLevel(damageMap);
-                            }
-                        }
-
-                        // Guardar hechizo
-                        spellRepository.save(spell);
-                        System.out.println("✅ Hechizo guardado: " + spell.getName());
-                    }
-
-
-                } catch (Exception e) {
-                    System.err.println("❌ Error procesando hechizo en: " + spellUrl);
-                    e.printStackTrace();
-                }
+        OfficialSpellImporter.Result result;
+        if (remoteRefresh) {
+            // Descarga completa desde la API para generar una instantánea nueva
+            System.out.println("🔍 Descargando los hechizos oficiales de " + officialSpellImporter.getBaseUrl() + "...");
+            OfficialSpellImporter.Fetched fetched = officialSpellImporter.fetchAll();
+            if (fetched.failed() == 0) {
+                officialSpellSnapshot.write(snapshotOutput, new OfficialSpellSnapshot.Snapshot(OfficialSpellSnapshot.FORMAT,
+                        Instant.now(), officialSpellImporter.getBaseUrl(), fetched.spells()));
+                System.out.println("✅ Instantánea generada en " + snapshotOutput.toAbsolutePath());
+            } else {
+                System.err.println("❌ No se genera la instantánea, han fallado " + fetched.failed() + " hechizos");
             }
-            System.out.println("✅ Todos los hechizos oficiales han sido cargados.");
+            result = officialSpellImporter.sync(adminUser, fetched.spells());
         } else {
-            System.out.println("✅ Ya están todos los hechizos oficiales cargados.");
+            Optional<OfficialSpellSnapshot.Snapshot> snapshot = officialSpellSnapshot.read();
+            if (snapshot.isPresent()) {
+                System.out.println("🔍 Sincronizando con la instantánea del " + snapshot.get().generatedAt() + "...");
+                result = officialSpellImporter.sync(adminUser, snapshot.get().spells());
+            } else {
+                // Sin instantánea solo se piden a la API los hechizos que faltan, pero el arranque depende de la red
+                System.err.println("⚠️ No hay instantánea en " + officialSpellSnapshot.getLocation()
+                        + ", comprobando la API. Genera una con datosdados.official-spells.remote-refresh=true");
+                result = officialSpellImporter.importMissing(adminUser);
+            }
         }
-
-
+        if (result.imported() + result.updated() == 0) {
+            System.out.println("✅ Ya están todos los hechizos oficiales cargados (" + result.listed() + ").");
+        } else {
+            System.out.println("✅ Hechizos oficiales cargados: " + result.imported() + " nuevos, " + result.updated()
+                    + " actualizados, " + result.skipped() + " sin cambios y " + result.failed() + " con error en "
+                    + result.elapsedMillis() + " ms.");
+        }
+        return result;
     }
 }
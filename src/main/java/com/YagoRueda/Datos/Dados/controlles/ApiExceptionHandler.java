@@ -0,0 +1,53 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.exceptions.ConflictException;
+import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.exceptions.ServiceBusyException;
+import com.YagoRueda.Datos.Dados.exceptions.UnauthorizedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Traduce a respuestas HTTP las excepciones que no capturan los propios controladores
+ */
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(UnauthorizedException.class)
+    public ResponseEntity<?> unauthorized(UnauthorizedException e) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", e.getMessage()));
+    }
+
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<?> busy(ServiceBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1")
+                .body(Map.of("message", e.getMessage()));
+    }
+
+    /**
+     * Datos no válidos detectados al completar una respuesta asíncrona, como una contraseña incorrecta en el login
+     */
+    @ExceptionHandler(InvalidInputDataException.class)
+    public ResponseEntity<?> invalidInput(InvalidInputDataException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+    }
+
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<?> conflict(ConflictException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+    }
+
+    /**
+     * Otra petición ha modificado el hechizo entre que se leyó y se guardó
+     */
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<?> concurrentModification(ObjectOptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("message", "El hechizo ha sido modificado por otra petición, vuelve a leerlo"));
+    }
+}
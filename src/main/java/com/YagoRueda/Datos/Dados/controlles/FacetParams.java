@@ -0,0 +1,39 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.YagoRueda.Datos.Dados.services.SpellFacetIndex;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parámetros de filtrado por facetas de los listados de hechizos. Los parámetros de lista se pueden repetir
+ * ({@code level=1&level=2}) o separar por comas ({@code level=1,2})
+ *
+ * @param level         niveles admitidos
+ * @param school        escuelas admitidas
+ * @param damageType    tipos de daño admitidos
+ * @param concentration si el hechizo requiere concentración
+ * @param ritual        si el hechizo se puede lanzar como ritual
+ * @param facets        {@code true} para pedir los recuentos aunque no se filtre por nada
+ */
+record FacetParams(List<Integer> level, List<String> school, List<SpellDamageType> damageType, Boolean concentration,
+                   Boolean ritual, Boolean facets) {
+
+    /**
+     * @return {@code True} si se ha pedido algún filtro o los recuentos
+     */
+    boolean isRequested() {
+        return level != null || school != null || damageType != null || concentration != null || ritual != null
+                || Boolean.TRUE.equals(facets);
+    }
+
+    SpellFacetIndex.Filter toFilter() {
+        return new SpellFacetIndex.Filter(toSet(level), toSet(school), toSet(damageType), concentration, ritual);
+    }
+
+    private static <T> Set<T> toSet(List<T> values) {
+        return values == null ? null : new HashSet<>(values);
+    }
+}
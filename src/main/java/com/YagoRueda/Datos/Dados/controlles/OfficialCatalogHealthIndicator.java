@@ -0,0 +1,47 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.services.OfficialSpellCatalog;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellLoadProgress;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indicador de salud {@code officialCatalog} con el progreso de la carga de los hechizos oficiales. Está fuera de
+ * servicio mientras se cargan y forma parte del grupo {@code readiness}, así que el nodo no recibe tráfico hasta que
+ * el catálogo está completo
+ */
+@Component
+public class OfficialCatalogHealthIndicator implements HealthIndicator {
+
+    private final OfficialSpellLoadProgress progress;
+    private final OfficialSpellCatalog catalog;
+
+    public OfficialCatalogHealthIndicator(OfficialSpellLoadProgress progress, OfficialSpellCatalog catalog) {
+        this.progress = progress;
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Health health() {
+        OfficialSpellLoadProgress.Status status = progress.status();
+        Health.Builder health = progress.isFinished() ? Health.up() : Health.outOfService();
+        health.withDetail("state", status.state())
+                .withDetail("phase", status.phase())
+                .withDetail("processed", status.processed())
+                .withDetail("total", status.total())
+                .withDetail("spells", catalog.size());
+        if (status.startedAt() != null) {
+            health.withDetail("startedAt", status.startedAt());
+        }
+        if (status.finishedAt() != null) {
+            health.withDetail("finishedAt", status.finishedAt())
+                    .withDetail("readyAfterStartMs", status.readyAfterStartMillis());
+        }
+        if (status.error() != null) {
+            // La carga ha fallado pero se sirve lo que ya había en bd
+            health.withDetail("error", status.error());
+        }
+        return health.build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellCatalog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Respuestas ya serializadas y comprimidas del catálogo oficial completo, que es la lectura más pesada y la que menos
+ * cambia.
+ * <p>
+ * Se guarda una copia por formato (JSON, CBOR y Smile) de la instantánea actual de {@link OfficialSpellCatalog}. La
+ * lista completa del catálogo es la misma instancia mientras no se recarga, así que cuando cambia se descartan todas
+ * las copias y se vuelven a generar según se pidan.
+ */
+@Component
+class OfficialSpellPayloads {
+
+    /**
+     * Respuesta serializada
+     *
+     * @param mediaType Formato
+     * @param raw       Bytes sin comprimir
+     * @param gzip      Bytes comprimidos con gzip, {@code null} si la respuesta no llega al tamaño mínimo
+     */
+    record Payload(MediaType mediaType, byte[] raw, byte[] gzip) {
+    }
+
+    private record Cached(List<SpellDto> source, Map<MediaType, Payload> payloads) {
+    }
+
+    private final OfficialSpellCatalog officialSpellCatalog;
+    private final Map<MediaType, ObjectMapper> mappers = new LinkedHashMap<>();
+    private final long minCompressSize;
+    private volatile Cached cached = new Cached(null, Map.of());
+
+    OfficialSpellPayloads(OfficialSpellCatalog officialSpellCatalog, List<AbstractJackson2HttpMessageConverter> converters,
+                          @Value("${server.compression.min-response-size:2KB}") DataSize minCompressSize) {
+        this.officialSpellCatalog = officialSpellCatalog;
+        this.minCompressSize = minCompressSize.toBytes();
+        for (AbstractJackson2HttpMessageConverter converter : converters) {
+            for (MediaType mediaType : converter.getSupportedMediaTypes()) {
+                // Solo los tipos concretos, no los comodines como application/*+json
+                if (!mediaType.isWildcardSubtype()) {
+                    mappers.putIfAbsent(mediaType, converter.getObjectMapper());
+                }
+            }
+        }
+    }
+
+    /**
+     * Elige el formato de la respuesta según la cabecera {@code Accept}, JSON si el cliente acepta cualquiera
+     *
+     * @param accept Valor de la cabecera, puede ser nulo
+     * @return El formato o vacío si no se acepta ninguno de los disponibles
+     */
+    Optional<MediaType> negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return Optional.of(MediaType.APPLICATION_JSON);
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        // En MediaType la especificidad tiene en cuenta primero el valor q
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType candidate : accepted) {
+            if (candidate.isWildcardType() || candidate.isWildcardSubtype()) {
+                if (candidate.includes(MediaType.APPLICATION_JSON)) {
+                    return Optional.of(MediaType.APPLICATION_JSON);
+                }
+                continue;
+            }
+            for (MediaType available : mappers.keySet()) {
+                if (available.isCompatibleWith(candidate)) {
+                    return Optional.of(available);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Devuelve el catálogo oficial completo serializado en el formato pedido
+     *
+     * @param mediaType Formato devuelto por {@link #negotiate(String)}
+     * @return La respuesta o vacío si el catálogo aún no se ha cargado
+     */
+    Optional<Payload> officialCatalog(MediaType mediaType) {
+        if (!officialSpellCatalog.isLoaded()) {
+            return Optional.empty();
+        }
+        List<SpellDto> spells = officialSpellCatalog.search(null);
+        Cached current = cached;
+        if (current.source() != spells) {
+            current = new Cached(spells, new ConcurrentHashMap<>());
+            cached = current;
+        }
+        List<SpellDto> source = current.source();
+        return Optional.of(current.payloads().computeIfAbsent(mediaType, type -> serialize(type, source)));
+    }
+
+    private Payload serialize(MediaType mediaType, List<SpellDto> spells) {
+        try {
+            byte[] raw = mappers.get(mediaType).writeValueAsBytes(spells);
+            return new Payload(mediaType, raw, raw.length < minCompressSize ? null : gzip(raw));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,37 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.services.SessionCache;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Endpoint de Actuator ({@code /actuator/sessioncache}) con las estadísticas de la caché de sesiones
+ */
+@Component
+@Endpoint(id = "sessioncache")
+public class SessionCacheEndpoint {
+
+    private final SessionCache sessionCache;
+
+    public SessionCacheEndpoint(SessionCache sessionCache) {
+        this.sessionCache = sessionCache;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        long hits = sessionCache.getHits();
+        long misses = sessionCache.getMisses();
+        long lookups = hits + misses;
+        return Map.of(
+                "size", sessionCache.size(),
+                "maxSize", sessionCache.getMaxSize(),
+                "hits", hits,
+                "misses", misses,
+                "evictions", sessionCache.getEvictions(),
+                "hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups
+        );
+    }
+}
@@ -0,0 +1,55 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoint de Actuator ({@code /actuator/spellcache}) con las estadísticas de la caché de segundo nivel de los
+ * hechizos, por región, y las conexiones pedidas a la bd desde el arranque
+ */
+@Component
+@Endpoint(id = "spellcache")
+public class SpellCacheEndpoint {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public SpellCacheEndpoint(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", statistics.isStatisticsEnabled());
+        stats.put(SpellEntity.CACHE_REGION, region(statistics, SpellEntity.CACHE_REGION));
+        stats.put(SpellEntity.DAMAGE_CACHE_REGION, region(statistics, SpellEntity.DAMAGE_CACHE_REGION));
+        stats.put("connections", statistics.getConnectCount());
+        return stats;
+    }
+
+    private static Map<String, Object> region(Statistics statistics, String name) {
+        CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+        if (region == null) {
+            return Map.of();
+        }
+        long hits = region.getHitCount();
+        long misses = region.getMissCount();
+        long lookups = hits + misses;
+        return Map.of(
+                "hits", hits,
+                "misses", misses,
+                "puts", region.getPutCount(),
+                "hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups
+        );
+    }
+}
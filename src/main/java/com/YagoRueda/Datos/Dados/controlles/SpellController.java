@@ -1,51 +1,79 @@
 package com.YagoRueda.Datos.Dados.controlles;
 
+import com.YagoRueda.Datos.Dados.Dtos.AuthenticatedUser;
+import com.YagoRueda.Datos.Dados.Dtos.SpellBulkRequestDto;
 import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
 import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.exceptions.ServiceBusyException;
 import com.YagoRueda.Datos.Dados.exceptions.UnauthorizedException;
 import com.YagoRueda.Datos.Dados.models.SpellEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellLoadProgress;
+import com.YagoRueda.Datos.Dados.services.SpellImportService;
+import com.YagoRueda.Datos.Dados.services.SpellScopeVersions;
 import com.YagoRueda.Datos.Dados.services.SpellService;
 import com.YagoRueda.Datos.Dados.services.TokenService;
 import com.YagoRueda.Datos.Dados.services.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/spell")
 public class SpellController {
 
+    /**
+     * Tipo de los cuerpos JSON Merge Patch (RFC 7396)
+     */
+    public static final String MERGE_PATCH_VALUE = "application/merge-patch+json";
+
     private final SpellService spellService;
     private final TokenService tokenService;
+    private final SpellScopeVersions scopeVersions;
+    private final OfficialSpellPayloads officialSpellPayloads;
+    private final OfficialSpellLoadProgress officialSpellLoadProgress;
+    private final SpellImportService spellImportService;
+    private final ObjectMapper objectMapper;
 
-    public SpellController(SpellService spellService, TokenService tokenService) {
+    public SpellController(SpellService spellService, TokenService tokenService, SpellScopeVersions scopeVersions,
+                           OfficialSpellPayloads officialSpellPayloads, OfficialSpellLoadProgress officialSpellLoadProgress,
+                           SpellImportService spellImportService, ObjectMapper objectMapper) {
         this.spellService = spellService;
         this.tokenService = tokenService;
+        this.scopeVersions = scopeVersions;
+        this.officialSpellPayloads = officialSpellPayloads;
+        this.officialSpellLoadProgress = officialSpellLoadProgress;
+        this.spellImportService = spellImportService;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Enpoint de creación de hechizos
      *
-     * @param token Token que representa la sesión de un usuario
+     * @param principal Usuario autenticado a partir del token de la sesión
      * @param dto   {@code SpellDto} que representa el hechizo creado
      * @return Respuesta HTTP con el status code correspondiente
      */
     @PostMapping()
-    public ResponseEntity<?> createSpell(@RequestParam String token, @RequestBody SpellDto dto) {
-
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión ha expirado"));
-        }
-
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
-        }
+    public ResponseEntity<?> createSpell(AuthenticatedUser principal, @RequestBody SpellDto dto) {
+        UserEntity user = tokenService.getUser(principal);
         try {
             SpellEntity entity = spellService.createSpell(user, dto);
             return ResponseEntity.status(HttpStatus.OK).body(entity.toDTO());
@@ -58,20 +86,13 @@ public class SpellController {
     /**
      * Enpoint de modificación de hechizos
      *
-     * @param token Token que representa la sesión de un usuario
+     * @param principal Usuario autenticado a partir del token de la sesión
      * @param dto   {@code SpellDto} que representa el hechizo modificado
      * @return Respuesta HTTP con el status code correspondiente
      */
     @PutMapping()
-    public ResponseEntity<?> modifySpell(@RequestParam String token, @RequestBody SpellDto dto) {
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión ha expirado"));
-        }
-
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
-        }
+    public ResponseEntity<?> modifySpell(AuthenticatedUser principal, @RequestBody SpellDto dto) {
+        UserEntity user = tokenService.getUser(principal);
         try {
             SpellEntity entity = spellService.modifySpell(user, dto);
             return ResponseEntity.status(HttpStatus.OK).body(entity.toDTO());
@@ -82,25 +103,80 @@ public class SpellController {
         }
     }
 
+    /**
+     * Enpoint de modificación parcial de hechizos con JSON Merge Patch: solo se cambian los campos que trae el cuerpo y
+     * en {@code damageByLevel} un nivel a {@code null} se elimina. Con {@code version} responde 409 si otro ha
+     * modificado el hechizo desde esa versión
+     *
+     * @param principal Usuario autenticado a partir del token de la sesión
+     * @param id        id del hechizo a modificar
+     * @param patch     campos a cambiar, por ejemplo {@code {"publicVisible": true, "version": 3}}
+     * @return Respuesta HTTP con el hechizo modificado
+     */
+    @PatchMapping(consumes = {MERGE_PATCH_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> patchSpell(AuthenticatedUser principal, @RequestParam long id, @RequestBody JsonNode patch) {
+        UserEntity user = tokenService.getUser(principal);
+        try {
+            SpellEntity entity = spellService.patchSpell(user, id, patch);
+            return ResponseEntity.status(HttpStatus.OK).body(entity.toDTO());
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+        }
+    }
+
     /**
      * Enpoint de eliminación de hechizos
      *
-     * @param token Token que representa la sesión de un usuario
+     * @param principal Usuario autenticado a partir del token de la sesión
      * @param id    id del hechizo a eliminar
      * @return Respuesta HTTP con el status code correspondiente
      */
     @DeleteMapping()
-    public ResponseEntity<?> deleteSpell(@RequestParam String token, @RequestParam long id) {
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión ha expirado"));
+    public ResponseEntity<?> deleteSpell(AuthenticatedUser principal, @RequestParam long id) {
+        UserEntity user = tokenService.getUser(principal);
+        try {
+            spellService.deleteSpell(user, id);
+            return ResponseEntity.status(HttpStatus.OK).body(Map.of("message", "Entidad borrada con exito"));
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
         }
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
+    }
+
+
+    /**
+     * Endpoint de eliminación de varios hechizos del usuario a la vez, por ejemplo {@code {"ids": [1, 2, 3]}}
+     *
+     * @param principal Usuario autenticado a partir del token de la sesión
+     * @param request   ids de los hechizos a eliminar
+     * @return Respuesta HTTP con los ids eliminados y los ignorados por no existir o ser de otro usuario
+     */
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<?> bulkDeleteSpells(AuthenticatedUser principal, @RequestBody SpellBulkRequestDto request) {
+        UserEntity user = tokenService.getUser(principal);
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(spellService.bulkDeleteSpells(user, request.getIds()));
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
         }
+    }
+
+    /**
+     * Endpoint para publicar u ocultar varios hechizos del usuario a la vez, por ejemplo
+     * {@code {"ids": [1, 2, 3], "publicVisible": true}}
+     *
+     * @param principal Usuario autenticado a partir del token de la sesión
+     * @param request   ids de los hechizos y visibilidad que se les quiere dar
+     * @return Respuesta HTTP con los ids modificados y los ignorados
+     */
+    @PostMapping("/bulk/visibility")
+    public ResponseEntity<?> bulkSetVisibility(AuthenticatedUser principal, @RequestBody SpellBulkRequestDto request) {
+        UserEntity user = tokenService.getUser(principal);
         try {
-            spellService.deleteSpell(id);
-            return ResponseEntity.status(HttpStatus.OK).body(Map.of("message", "Entidad borrada con exito"));
+            if (request.getPublicVisible() == null) {
+                throw new InvalidInputDataException("Indica la visibilidad");
+            }
+            return ResponseEntity.status(HttpStatus.OK)
+                    .body(spellService.bulkSetVisibility(user, request.getIds(), request.getPublicVisible()));
         } catch (InvalidInputDataException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
         }
@@ -110,22 +186,32 @@ public class SpellController {
     /**
      * Endpoint que devuelve la lista de hechizos de un usuario
      *
-     * @param token  token de la sesión del usuario al que pertenecen los hechizos
+     * @param principal Usuario autenticado al que pertenecen los hechizos
      * @param search nombre del hechizo que se usara para el filtro la búsqueda, puede estar vació
+     * @param cursor cursor de la página anterior; si se indica este parámetro o {@code limit} la respuesta se pagina
+     * @param limit  tamaño de página
+     * @param filter filtros por facetas ({@code level}, {@code school}, {@code damageType}, {@code concentration},
+     *               {@code ritual}) y {@code facets=true} para pedir solo los recuentos; con cualquiera de ellos la
+     *               respuesta se pagina e incluye los recuentos de cada faceta
+     * @param request petición, para responder 304 si el cliente ya tiene la última versión de sus hechizos
      * @return Respuesta HTTP con el status code y la información correspondiente
      */
     @GetMapping("/list")
-    public ResponseEntity<?> getSpells(@RequestParam String token, @RequestParam(required = false) String search) {
-
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión ha expirado"));
-        }
-
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
+    public ResponseEntity<?> getSpells(AuthenticatedUser principal, @RequestParam(required = false) String search,
+                                       @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+                                       FacetParams filter, ServletWebRequest request) {
+        if (notModified(request, SpellScopeVersions.user(principal.userId()))) {
+            return null;
         }
+        UserEntity user = tokenService.getUser(principal);
         try {
+            if (filter.isRequested()) {
+                return ResponseEntity.status(HttpStatus.OK)
+                        .body(spellService.getListSpellsFaceted(principal.userId(), search, filter.toFilter(), cursor, limit));
+            }
+            if (cursor != null || limit != null) {
+                return ResponseEntity.status(HttpStatus.OK).body(spellService.getListSpellsPage(user, search, cursor, limit));
+            }
             List<SpellDto> spellDtoList = spellService.getListSpells(user, search);
             return ResponseEntity.status(HttpStatus.OK).body(spellDtoList);
         } catch (InvalidInputDataException e) {
@@ -137,42 +223,111 @@ public class SpellController {
     /**
      * Endpoint que devuelve un hechizo de un usuario
      *
-     * @param token token de la sesión del usuario al que pertenecen los hechizos
+     * @param principal Usuario autenticado al que pertenecen los hechizos
      * @param id    id del hechizo que se busca
+     * @param request petición, para responder 304 si el cliente ya tiene la última versión del hechizo. La versión es
+     *                la de la propia entidad, que se lee de la caché de segundo nivel igual que el hechizo
      * @return Respuesta HTTP con el status code y la información correspondiente
      */
     @GetMapping()
-    public ResponseEntity<?> getSpell(@RequestParam String token, @RequestParam long id) {
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión ha expirado"));
-        }
-
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
-        }
+    public ResponseEntity<?> getSpell(AuthenticatedUser principal, @RequestParam long id, ServletWebRequest request) {
         try {
             SpellDto spellDto = spellService.getSpell(id);
             if (spellDto == null) {
                 throw new InvalidInputDataException("Hechizo no encontrado");
             }
+            if (notModified(request, Optional.of(SpellScopeVersions.Version.of(spellDto.getVersion())))) {
+                return null;
+            }
             return ResponseEntity.status(HttpStatus.OK).body(spellDto);
         } catch (InvalidInputDataException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
         }
     }
 
-    @GetMapping("/wotspells")
-    public ResponseEntity<?> getWOTSpell(@RequestParam String token, @RequestParam(required = false) String search) {
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "la sesión ha expirado"));
+    /**
+     * Endpoint que devuelve varios hechizos por id en una sola consulta, por ejemplo {@code /spell/batch?ids=1,2,3}.
+     * Los que no existen o no puede ver el usuario vienen marcados como no encontrados
+     *
+     * @param principal Usuario autenticado
+     * @param ids       ids de los hechizos
+     * @return Respuesta HTTP con un resultado por id en el orden pedido
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<?> getSpellsBatch(AuthenticatedUser principal, @RequestParam List<Long> ids) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(spellService.getSpells(principal.userId(), ids));
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
         }
+    }
 
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
+    /**
+     * Endpoint de búsqueda por texto en el nombre y la descripción de los hechizos visibles para el usuario
+     *
+     * @param principal Usuario autenticado
+     * @param q         palabras a buscar, por ejemplo "bonus action"
+     * @param limit     número máximo de resultados
+     * @return Respuesta HTTP con los hechizos ordenados por relevancia
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchSpells(AuthenticatedUser principal, @RequestParam String q,
+                                          @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.status(HttpStatus.OK).body(spellService.searchSpells(principal.userId(), q, limit));
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
         }
+    }
+
+    /**
+     * Endpoint de autocompletado de nombres de hechizos, tolera texto incompleto y errores de escritura
+     *
+     * @param principal Usuario autenticado
+     * @param q         texto escrito hasta el momento
+     * @param limit     número máximo de sugerencias
+     * @return Respuesta HTTP con los nombres sugeridos
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<?> suggestSpells(AuthenticatedUser principal, @RequestParam String q,
+                                           @RequestParam(required = false) Integer limit) {
         try {
+            return ResponseEntity.status(HttpStatus.OK).body(spellService.suggestSpellNames(principal.userId(), q, limit));
+        } catch (InvalidInputDataException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Endpoint que devuelve los hechizos oficiales. El catálogo completo, sin filtro ni paginación, se sirve ya
+     * serializado y comprimido en el formato pedido
+     *
+     * @param principal Usuario autenticado
+     * @param search    nombre del hechizo que se usara para el filtro la búsqueda, puede estar vació
+     * @param cursor    cursor de la página anterior; si se indica este parámetro o {@code limit} la respuesta se pagina
+     * @param limit     tamaño de página
+     * @param request   petición, para responder 304 si el cliente ya tiene la última versión del catálogo
+     * @return Respuesta HTTP con el status code y la información correspondiente, 503 mientras se cargan los hechizos
+     * oficiales
+     */
+    @GetMapping("/wotspells")
+    public ResponseEntity<?> getWOTSpell(AuthenticatedUser principal, @RequestParam(required = false) String search,
+                                         @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+                                         ServletWebRequest request) {
+        requireOfficialCatalog();
+        if (notModified(request, SpellScopeVersions.OFFICIAL)) {
+            return null;
+        }
+        if ((search == null || search.isEmpty()) && cursor == null && limit == null) {
+            ResponseEntity<byte[]> precompressed = precompressedOfficialCatalog(request);
+            if (precompressed != null) {
+                return precompressed;
+            }
+        }
+        try {
+            if (cursor != null || limit != null) {
+                return ResponseEntity.status(HttpStatus.OK).body(spellService.getWOTSpellsPage(search, cursor, limit));
+            }
             List<SpellDto> dtos = spellService.getWOTSpells(search);
             return ResponseEntity.status(HttpStatus.OK).body(dtos);
         } catch (InvalidInputDataException e) {
@@ -180,17 +335,27 @@ public class SpellController {
         }
     }
 
+    /**
+     * Endpoint que devuelve los hechizos públicos de otros usuarios, con los mismos parámetros y respuesta que el
+     * listado de hechizos propios
+     *
+     * @see #getSpells(AuthenticatedUser, String, String, Integer, FacetParams, ServletWebRequest) listado propio
+     */
     @GetMapping("/public")
-    public ResponseEntity<?> getPublicSpell(@RequestParam String token, @RequestParam(required = false) String search) {
-        if (!tokenService.validateAndRenewToken(token)) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", "la sesión ha expirado"));
-        }
-
-        UserEntity user = tokenService.getUser(token);
-        if (user == null) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "la sesión no existe"));
+    public ResponseEntity<?> getPublicSpell(AuthenticatedUser principal, @RequestParam(required = false) String search,
+                                            @RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+                                            FacetParams filter, ServletWebRequest request) {
+        if (notModified(request, SpellScopeVersions.PUBLIC)) {
+            return null;
         }
         try {
+            if (filter.isRequested()) {
+                return ResponseEntity.status(HttpStatus.OK)
+                        .body(spellService.getPublicSpellsFaceted(search, filter.toFilter(), cursor, limit));
+            }
+            if (cursor != null || limit != null) {
+                return ResponseEntity.status(HttpStatus.OK).body(spellService.getPublicSpellsPage(search, cursor, limit));
+            }
             List<SpellDto> dtos = spellService.getPublicSpells(search);
             return ResponseEntity.status(HttpStatus.OK).body(dtos);
         } catch (InvalidInputDataException e) {
@@ -198,4 +363,145 @@ public class SpellController {
         }
     }
 
+    /**
+     * Endpoint que devuelve los hechizos oficiales escribiéndolos según se leen, sin construir la lista completa en
+     * memoria. Devuelve un array JSON o NDJSON si se pide {@code application/x-ndjson} en la cabecera {@code Accept}
+     *
+     * @param principal Usuario autenticado a partir del token de la sesión
+     * @param search    nombre del hechizo que se usara para el filtro la búsqueda, puede estar vació
+     * @param accept    cabecera {@code Accept} de la petición
+     * @param response  respuesta HTTP en la que se escriben los hechizos
+     */
+    @GetMapping("/wotspells/stream")
+    public void streamWOTSpells(AuthenticatedUser principal, @RequestParam(required = false) String search,
+                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                HttpServletResponse response) throws IOException {
+        requireOfficialCatalog();
+        try (SpellStreamWriter writer = SpellStreamWriter.open(objectMapper, response, accept)) {
+            spellService.streamWOTSpells(search, writer::write);
+        }
+    }
+
+    /**
+     * Endpoint que devuelve los hechizos públicos escribiéndolos según se leen
+     *
+     * @see #streamWOTSpells(AuthenticatedUser, String, String, HttpServletResponse)
+     */
+    @GetMapping("/public/stream")
+    public void streamPublicSpells(AuthenticatedUser principal, @RequestParam(required = false) String search,
+                                   @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                   HttpServletResponse response) throws IOException {
+        try (SpellStreamWriter writer = SpellStreamWriter.open(objectMapper, response, accept)) {
+            spellService.streamPublicSpells(search, writer::write);
+        }
+    }
+
+    /**
+     * Endpoint que exporta todos los hechizos del usuario como NDJSON, escribiéndolos según se leen de bd. El resultado
+     * se puede volver a importar con {@link #importSpells(AuthenticatedUser, HttpServletRequest)}
+     *
+     * @param principal Usuario autenticado a partir del token de la sesión
+     * @param response  respuesta HTTP en la que se escriben los hechizos
+     */
+    @GetMapping("/export")
+    public void exportSpells(AuthenticatedUser principal, HttpServletResponse response) throws IOException {
+        UserEntity user = tokenService.getUser(principal);
+        try (SpellStreamWriter writer = SpellStreamWriter.open(objectMapper, response, SpellStreamWriter.NDJSON_VALUE)) {
+            spellService.streamListSpells(user, writer::write);
+        }
+    }
+
+    /**
+     * Endpoint de importación masiva de hechizos. El cuerpo es NDJSON con un hechizo por línea en el formato de
+     * {@code SpellDto}; se lee según llega y las líneas erróneas no impiden importar las demás
+     *
+     * @param principal Usuario autenticado al que pertenecerán los hechizos
+     * @param request   petición con el NDJSON en el cuerpo
+     * @return Respuesta HTTP con el número de hechizos importados y los errores de cada línea
+     */
+    @PostMapping(value = "/import", consumes = {SpellStreamWriter.NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<?> importSpells(AuthenticatedUser principal, HttpServletRequest request) throws IOException {
+        UserEntity user = tokenService.getUser(principal);
+        try (Reader body = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            return ResponseEntity.status(HttpStatus.OK).body(spellImportService.importSpells(user, body));
+        }
+    }
+
+    /**
+     * Respuesta con el catálogo oficial completo ya serializado, comprimida con gzip si el cliente lo admite y supera el
+     * tamaño mínimo de compresión
+     *
+     * @return La respuesta o {@code null} si el catálogo no está cargado o el cliente no acepta ningún formato
+     * disponible, en cuyo caso se genera la respuesta normal
+     */
+    private ResponseEntity<byte[]> precompressedOfficialCatalog(ServletWebRequest request) {
+        Optional<OfficialSpellPayloads.Payload> found = officialSpellPayloads.negotiate(request.getHeader(HttpHeaders.ACCEPT))
+                .flatMap(officialSpellPayloads::officialCatalog);
+        if (found.isEmpty()) {
+            return null;
+        }
+        OfficialSpellPayloads.Payload payload = found.get();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = payload.gzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        // Vary ya lo ha añadido notModified
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK)
+                .contentType(payload.mediaType());
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(gzip ? payload.gzip() : payload.raw());
+    }
+
+    /**
+     * Compara la versión de un listado con las cabeceras {@code If-None-Match} e {@code If-Modified-Since}. Si el cliente
+     * ya tiene la última versión deja preparada una respuesta 304 sin cuerpo; si no, añade {@code ETag} y
+     * {@code Last-Modified} a la respuesta. En ambos casos el cliente debe revalidar antes de reutilizar su copia.
+     * <p>
+     * El {@code ETag} depende del formato negociado con {@code Accept} y la respuesta lleva
+     * {@code Vary: Accept, Accept-Encoding}, para que ni el cliente ni las cachés intermedias confundan las versiones
+     * JSON, CBOR, Smile y comprimidas de la misma respuesta.
+     * <p>
+     * Las versiones se leen de memoria. Sin cabeceras condicionales no se consulta nunca la bd: si las versiones aún
+     * no se han cargado la respuesta sale sin {@code ETag} ni {@code Last-Modified}
+     *
+     * @param request Petición
+     * @param scope   Listado del que depende la respuesta
+     * @return {@code True} si no hay que generar la respuesta
+     */
+    private boolean notModified(ServletWebRequest request, String scope) {
+        boolean conditional = request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+        return notModified(request, conditional
+                ? Optional.of(scopeVersions.current(scope))
+                : scopeVersions.cached(scope));
+    }
+
+    /**
+     * Igual que {@link #notModified(ServletWebRequest, String)} con una versión ya conocida, vacía si no se conoce
+     */
+    private boolean notModified(ServletWebRequest request, Optional<SpellScopeVersions.Version> version) {
+        HttpServletResponse response = request.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (version.isEmpty()) {
+            return false;
+        }
+        String representation = officialSpellPayloads.negotiate(request.getHeader(HttpHeaders.ACCEPT))
+                .map(MediaType::getSubtype)
+                .orElse("other");
+        return request.checkNotModified(version.get().etag(representation), version.get().lastModified());
+    }
+
+    /**
+     * Corta la petición con 503 mientras se cargan los hechizos oficiales, para no devolver un catálogo incompleto
+     */
+    private void requireOfficialCatalog() {
+        if (!officialSpellLoadProgress.isFinished()) {
+            OfficialSpellLoadProgress.Status status = officialSpellLoadProgress.status();
+            throw new ServiceBusyException("Cargando el catálogo oficial (" + status.processed() + "/" + status.total()
+                    + "), inténtalo de nuevo en unos segundos");
+        }
+    }
 }
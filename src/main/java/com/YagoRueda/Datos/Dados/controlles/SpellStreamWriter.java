@@ -0,0 +1,74 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Escribe objetos en la respuesta HTTP según se van generando, como un array JSON o como NDJSON (un objeto por línea)
+ * dependiendo de la cabecera {@code Accept}
+ */
+class SpellStreamWriter implements Closeable {
+
+    static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private final JsonGenerator generator;
+    private final boolean ndjson;
+
+    private SpellStreamWriter(JsonGenerator generator, boolean ndjson) {
+        this.generator = generator;
+        this.ndjson = ndjson;
+    }
+
+    /**
+     * Prepara la respuesta y abre el escritor
+     *
+     * @param mapper   {@code ObjectMapper} con la configuración de la aplicación
+     * @param response Respuesta HTTP
+     * @param accept   Valor de la cabecera {@code Accept}, puede ser nulo
+     * @return El escritor
+     */
+    static SpellStreamWriter open(ObjectMapper mapper, HttpServletResponse response, String accept) throws IOException {
+        boolean ndjson = accept != null && accept.contains(NDJSON_VALUE);
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(ndjson ? NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        JsonGenerator generator = mapper.getFactory().createGenerator(response.getOutputStream());
+        if (ndjson) {
+            generator.setRootValueSeparator(null);
+        } else {
+            generator.writeStartArray();
+        }
+        return new SpellStreamWriter(generator, ndjson);
+    }
+
+    /**
+     * Escribe un elemento
+     *
+     * @param value El elemento
+     */
+    void write(Object value) {
+        try {
+            generator.writeObject(value);
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+}
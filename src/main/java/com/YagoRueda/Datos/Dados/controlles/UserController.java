@@ -12,6 +12,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/user")
@@ -23,40 +24,47 @@ public class UserController {
         this.userService = userService;
     }
 
+    /**
+     * Endpoint de registro. La respuesta se completa de forma asíncrona cuando termina el hash de la contraseña, sin
+     * ocupar un hilo de Tomcat mientras espera
+     */
     @PostMapping("/signup")
-    public ResponseEntity<?> signup(@RequestBody UserDto dto) {
+    public CompletableFuture<ResponseEntity<?>> signup(@RequestBody UserDto dto) {
 
         if (dto.getUsername() == null || dto.getUsername().isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios")));
         }
         if (dto.getPassword() == null || dto.getPassword().isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios")));
         }
         if (dto.getPasswordRepeat() == null || dto.getPasswordRepeat().isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios")));
         }
         try {
-            UserEntity entity = userService.signup(dto);
-            return ResponseEntity.status(HttpStatus.CREATED).body(entity);
+            return userService.signup(dto).thenApply(entity -> ResponseEntity.status(HttpStatus.CREATED).body(entity));
         } catch (InvalidInputDataException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage())));
         }
 
     }
 
+    /**
+     * Endpoint de inicio de sesión. La respuesta se completa de forma asíncrona cuando termina la verificación de la
+     * contraseña, sin ocupar un hilo de Tomcat mientras espera. Una contraseña incorrecta se responde con 400 desde
+     * {@link ApiExceptionHandler}
+     */
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody UserDto dto) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody UserDto dto) {
         if (dto.getUsername() == null || dto.getUsername().isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios")));
         }
         if (dto.getPassword() == null || dto.getPassword().isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Uno o varios campos estan vacios")));
         }
         try {
-            String token = userService.login(dto);
-            return ResponseEntity.status(HttpStatus.OK).body(Map.of("token", token));
+            return userService.login(dto).thenApply(token -> ResponseEntity.status(HttpStatus.OK).body(Map.of("token", token)));
         } catch (InvalidInputDataException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage())));
         }
     }
 
@@ -0,0 +1,7 @@
+package com.YagoRueda.Datos.Dados.exceptions;
+
+public class ConflictException extends RuntimeException {
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -3,23 +3,52 @@ package com.YagoRueda.Datos.Dados.models;
 import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
 import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
 import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.services.SpellTextNormalizer;
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.util.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_spell_user_name", columnList = "user_id, name"),
+        @Index(name = "idx_spell_user_folded", columnList = "user_id, nameFolded, id"),
+        @Index(name = "idx_spell_official_folded", columnList = "official, nameFolded, id"),
+        @Index(name = "idx_spell_public_folded", columnList = "publicVisible, official, nameFolded, id")
+})
+// Caché de segundo nivel: READ_WRITE bloquea la entrada mientras la transacción que la modifica no termina y la
+// actualiza o la elimina al confirmarla, así que una lectura nunca ve un hechizo ya modificado o borrado
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SpellEntity.CACHE_REGION)
+// Los UPDATE solo incluyen las columnas que han cambiado
+@DynamicUpdate
 public class SpellEntity {
 
+    /**
+     * Regiones de la caché de segundo nivel para los hechizos y para su daño por nivel
+     */
+    public static final String CACHE_REGION = "spell";
+    public static final String DAMAGE_CACHE_REGION = "spell.damageByLevel";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia spell_entity_seq con bloques de 50 ids, con IDENTITY Hibernate no puede agrupar las inserciones
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     @Getter
     private long id;
 
+    // Bloqueo optimista: Hibernate la comprueba y la aumenta en cada UPDATE
+    @Version
+    @Getter
+    private long version;
+
     @Setter
     @Getter
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private UserEntity user;
     @Setter
@@ -29,6 +58,16 @@ public class SpellEntity {
     @Getter
     private String name;
 
+    // Nombre en minúsculas y sin tildes para las búsquedas por prefijo, se mantiene en onSave()
+    @Getter
+    private String nameFolded;
+
+    // Copia de "el dueño es la cuenta oficial" para filtrar sin join con los usuarios
+    @Setter
+    @Getter
+    @Column(nullable = false)
+    private boolean official;
+
     @Getter
     private Integer level;
     @Setter
@@ -61,6 +100,12 @@ public class SpellEntity {
     @Getter
     private SpellDamageType damageType;
 
+    // SHA-256 del contenido de los hechizos oficiales, para sincronizar solo los que cambian
+    @Setter
+    @Getter
+    @Column(length = 64)
+    private String contentHash;
+
     @ElementCollection
     @CollectionTable(
             name = "spell_damage_by_level",
@@ -68,6 +113,8 @@ public class SpellEntity {
     )
     @MapKeyColumn(name = "nivel")
     @Column(name = "dado_de_ataque")
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SpellEntity.DAMAGE_CACHE_REGION)
     @Getter
     @Setter
     private Map<Integer, String> damageByLevel = new TreeMap<>();
@@ -80,9 +127,17 @@ public class SpellEntity {
         this.level = newLevel;
     }
 
+    @PrePersist
+    @PreUpdate
+    void onSave() {
+        this.nameFolded = SpellTextNormalizer.fold(this.name);
+    }
+
     public SpellDto toDTO() {
         SpellDto dto = new SpellDto();
         dto.setId(this.id);
+        dto.setVersion(this.version);
+        // Sobre el proxy LAZY getId() no inicializa el usuario
         dto.setUserId(this.user != null ? this.user.getId() : null);
         dto.setPublicVisible(this.publicVisible);
         dto.setName(this.name);
@@ -96,7 +151,8 @@ public class SpellEntity {
         dto.setConcentration(this.concentration);
         dto.setRitual(this.ritual);
         dto.setDamageType(this.damageType);
-        dto.setDamageByLevel(this.damageByLevel);
+        // Copia para que el DTO no dependa de la sesión de Hibernate una vez construido
+        dto.setDamageByLevel(new TreeMap<>(this.damageByLevel));
         return dto;
     }
 
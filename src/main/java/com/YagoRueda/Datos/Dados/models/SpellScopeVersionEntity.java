@@ -0,0 +1,29 @@
+package com.YagoRueda.Datos.Dados.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Versión de un ámbito de lectura de hechizos, aumenta cada vez que cambia algún hechizo del ámbito
+ */
+@Entity
+public class SpellScopeVersionEntity {
+    @Id
+    @Getter
+    @Setter
+    private String scope;
+
+    @Getter
+    @Setter
+    private long version;
+
+    @Getter
+    @Setter
+    @Column(nullable = false)
+    private Instant modifiedAt;
+}
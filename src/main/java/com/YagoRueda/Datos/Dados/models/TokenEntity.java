@@ -7,6 +7,7 @@ import lombok.Setter;
 import java.time.Instant;
 
 @Entity
+@Table(indexes = @Index(name = "idx_token_expires_at", columnList = "expiresAt"))
 public class TokenEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,13 @@
+package com.YagoRueda.Datos.Dados.repositories;
+
+/**
+ * Proyección con la huella del contenido de un hechizo, para sincronizar el catálogo oficial sin cargar las entidades
+ */
+public interface SpellHashView {
+
+    Long getId();
+
+    String getName();
+
+    String getContentHash();
+}
@@ -2,12 +2,22 @@ package com.YagoRueda.Datos.Dados.repositories;
 
 import com.YagoRueda.Datos.Dados.models.SpellEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface SpellRepository extends JpaRepository<SpellEntity, Long> {
 
@@ -17,22 +27,190 @@ public interface SpellRepository extends JpaRepository<SpellEntity, Long> {
      * @param user {@code UserEntity} que representa al usuario al que persistence los hechizos
      * @return lista de hechizos
      */
+    @EntityGraph(attributePaths = "damageByLevel")
     List<SpellEntity> findByUser(UserEntity user);
 
-    @Query("SELECT s FROM SpellEntity s JOIN s.user u WHERE u.username = 'admin' AND s.name LIKE CONCAT(:search, '%')")
+    /**
+     * Función que devuelve los hechizos oficiales cuyo nombre normalizado empieza por el filtro
+     *
+     * @param search filtro ya normalizado, puede estar vacío
+     * @return lista de hechizos
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    @Query("SELECT s FROM SpellEntity s WHERE s.official = true AND s.nameFolded LIKE CONCAT(:search, '%')")
     List<SpellEntity> findWOTSpells(@Param("search") String search);
 
-    @Query("SELECT s FROM SpellEntity s JOIN s.user u WHERE u.username <> 'admin' AND s.publicVisible = true AND s.name LIKE CONCAT(:search, '%')")
+    /**
+     * Función que devuelve los hechizos públicos que no son oficiales cuyo nombre normalizado empieza por el filtro
+     *
+     * @param search filtro ya normalizado, puede estar vacío
+     * @return lista de hechizos
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    @Query("SELECT s FROM SpellEntity s WHERE s.publicVisible = true AND s.official = false AND s.nameFolded LIKE CONCAT(:search, '%')")
     List<SpellEntity> findPublicSpells(@Param("search") String search);
 
+    /**
+     * Devuelve todos los hechizos oficiales con su daño por nivel
+     *
+     * @return lista de hechizos
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    List<SpellEntity> findByOfficialTrue();
+
+    /**
+     * Busca un hechizo cargando en la misma consulta su daño por nivel
+     *
+     * @param id id del hechizo
+     * @return el hechizo si existe
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    Optional<SpellEntity> findWithDamageById(long id);
+
+    /**
+     * Recorre los hechizos oficiales cuyo nombre empieza por el filtro sin cargarlos todos a la vez. Debe consumirse
+     * dentro de una transacción y cerrarse al terminar
+     *
+     * @param search filtro ya normalizado por el que empieza el nombre, puede estar vacío
+     * @return stream de hechizos
+     */
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"), @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SpellEntity s WHERE s.official = true AND s.nameFolded LIKE CONCAT(:search, '%')")
+    Stream<SpellEntity> streamWOTSpells(@Param("search") String search);
+
+    /**
+     * Recorre los hechizos públicos que no son oficiales cuyo nombre empieza por el filtro sin cargarlos todos a la vez.
+     * Debe consumirse dentro de una transacción y cerrarse al terminar
+     *
+     * @param search filtro ya normalizado por el que empieza el nombre, puede estar vacío
+     * @return stream de hechizos
+     */
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"), @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SpellEntity s WHERE s.publicVisible = true AND s.official = false AND s.nameFolded LIKE CONCAT(:search, '%')")
+    Stream<SpellEntity> streamPublicSpells(@Param("search") String search);
+
+    /**
+     * Recorre los hechizos de un usuario ordenados por id sin cargarlos todos a la vez. Debe consumirse dentro de una
+     * transacción y cerrarse al terminar
+     *
+     * @param user {@code UserEntity} que representa al usuario al que pertenecen los hechizos
+     * @return stream de hechizos
+     */
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"), @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("SELECT s FROM SpellEntity s WHERE s.user = :user ORDER BY s.id")
+    Stream<SpellEntity> streamByUser(@Param("user") UserEntity user);
+
+    /**
+     * Recorre todos los hechizos con los campos que necesitan los índices en memoria, sin cargar las entidades. Debe
+     * consumirse dentro de una transacción y cerrarse al terminar
+     *
+     * @return stream de proyecciones
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"))
+    @Query("SELECT s.id AS id, u.id AS userId, s.publicVisible AS publicVisible, s.official AS official, s.name AS name, s.description AS description, "
+            + "s.level AS level, s.school AS school, s.damageType AS damageType, s.concentration AS concentration, s.ritual AS ritual FROM SpellEntity s JOIN s.user u")
+    Stream<SpellSearchView> streamSearchViews();
+
+    /**
+     * Devuelve los campos que necesitan los índices en memoria de los hechizos indicados, sin cargar las entidades
+     *
+     * @param ids ids de los hechizos
+     * @return proyecciones de los hechizos que existen, en cualquier orden
+     */
+    @Query("SELECT s.id AS id, u.id AS userId, s.publicVisible AS publicVisible, s.official AS official, s.name AS name, s.description AS description, "
+            + "s.level AS level, s.school AS school, s.damageType AS damageType, s.concentration AS concentration, s.ritual AS ritual FROM SpellEntity s JOIN s.user u "
+            + "WHERE s.id IN :ids")
+    List<SpellSearchView> findSearchViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Devuelve los hechizos con los ids indicados cargando su daño por nivel en la misma consulta
+     *
+     * @param ids ids de los hechizos
+     * @return hechizos encontrados, en cualquier orden
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    List<SpellEntity> findWithDamageByIdIn(Collection<Long> ids);
+
+    /**
+     * Devuelve los hechizos con los ids indicados que puede ver el usuario, los suyos, los públicos y los oficiales,
+     * cargando su daño por nivel en la misma consulta
+     *
+     * @param ids    ids de los hechizos
+     * @param userId Id del usuario que los pide
+     * @return hechizos encontrados y visibles, en cualquier orden
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    @Query("SELECT s FROM SpellEntity s WHERE s.id IN :ids AND (s.user.id = :userId OR s.publicVisible = true OR s.official = true)")
+    List<SpellEntity> findVisibleWithDamageByIdIn(@Param("ids") Collection<Long> ids, @Param("userId") long userId);
+
+    /**
+     * Devuelve los hechizos con los ids indicados que son del usuario, cargando su daño por nivel en la misma consulta
+     *
+     * @param ids    ids de los hechizos
+     * @param userId Dueño de los hechizos
+     * @return hechizos encontrados, en cualquier orden
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    @Query("SELECT s FROM SpellEntity s WHERE s.id IN :ids AND s.user.id = :userId")
+    List<SpellEntity> findOwnedWithDamageByIdIn(@Param("ids") Collection<Long> ids, @Param("userId") long userId);
+
+    /**
+     * Devuelve los hechizos con los ids indicados que son públicos y no oficiales, cargando su daño por nivel en la
+     * misma consulta
+     *
+     * @param ids ids de los hechizos
+     * @return hechizos encontrados, en cualquier orden
+     */
+    @EntityGraph(attributePaths = "damageByLevel")
+    @Query("SELECT s FROM SpellEntity s WHERE s.id IN :ids AND s.publicVisible = true AND s.official = false")
+    List<SpellEntity> findPublicWithDamageByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Devuelve la visibilidad de los hechizos indicados que son del usuario
+     *
+     * @param user Dueño de los hechizos
+     * @param ids  ids de los hechizos
+     * @return proyecciones de los hechizos encontrados, en cualquier orden
+     */
+    @Query("SELECT s.id AS id, s.publicVisible AS publicVisible, s.official AS official FROM SpellEntity s WHERE s.user = :user AND s.id IN :ids")
+    List<SpellVisibilityView> findOwnedVisibility(@Param("user") UserEntity user, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Elimina en una sola sentencia los hechizos indicados que son del usuario. Hibernate borra antes las filas de su
+     * daño por nivel con la misma condición
+     *
+     * @param user Dueño de los hechizos
+     * @param ids  ids de los hechizos
+     * @return Número de hechizos eliminados
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM SpellEntity s WHERE s.user = :user AND s.id IN :ids")
+    int deleteOwned(@Param("user") UserEntity user, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Cambia en una sola sentencia la visibilidad de los hechizos indicados que son del usuario y no la tienen ya,
+     * aumentando su versión como haría Hibernate al modificarlos uno a uno
+     *
+     * @param user          Dueño de los hechizos
+     * @param ids           ids de los hechizos
+     * @param publicVisible Visibilidad nueva
+     * @return Número de hechizos modificados
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE SpellEntity s SET s.publicVisible = :publicVisible, s.version = s.version + 1 "
+            + "WHERE s.user = :user AND s.id IN :ids AND s.publicVisible <> :publicVisible")
+    int updateOwnedVisibility(@Param("user") UserEntity user, @Param("ids") Collection<Long> ids,
+                              @Param("publicVisible") boolean publicVisible);
+
     /**
      * Función que devuelve todos los hechizos de un usuario usando un filtro para el nombre, el filtro puede estar vacio
      *
-     * @param user {@code UserEntity} que representa al usuario al que persistence los hechizos
-     * @param name nombre de hechizo que se usara como filtro para la busqueda
+     * @param user       {@code UserEntity} que representa al usuario al que persistence los hechizos
+     * @param nameFolded nombre de hechizo ya normalizado que se usara como filtro para la busqueda
      * @return hechizo correspondiente
      */
-    List<SpellEntity> findByUserAndNameStartingWithIgnoreCase(UserEntity user, String name);
+    @EntityGraph(attributePaths = "damageByLevel")
+    List<SpellEntity> findByUserAndNameFoldedStartingWith(UserEntity user, String nameFolded);
 
     /**
      * Función para contar todos los hechizos que tiene un usuario
@@ -42,6 +220,24 @@ public interface SpellRepository extends JpaRepository<SpellEntity, Long> {
      */
     int countByUser(UserEntity user);
 
+    /**
+     * Devuelve los nombres de todos los hechizos de un usuario, sin cargar las entidades
+     *
+     * @param user {@code UserEntity} que representa al usuario al que pertenecen los hechizos
+     * @return Nombres de los hechizos
+     */
+    @Query("SELECT s.name FROM SpellEntity s WHERE s.user = :user")
+    List<String> findNamesByUser(@Param("user") UserEntity user);
+
+    /**
+     * Devuelve el id, el nombre y la huella del contenido de todos los hechizos de un usuario, sin cargar las entidades
+     *
+     * @param user {@code UserEntity} que representa al usuario al que pertenecen los hechizos
+     * @return Proyecciones de los hechizos
+     */
+    @Query("SELECT s.id AS id, s.name AS name, s.contentHash AS contentHash FROM SpellEntity s WHERE s.user = :user")
+    List<SpellHashView> findHashesByUser(@Param("user") UserEntity user);
+
     /**
      * Función que indica si un hechizo existe para un usuario indicando el nombre del hechizo
      *
@@ -51,5 +247,37 @@ public interface SpellRepository extends JpaRepository<SpellEntity, Long> {
      */
     boolean existsByUserAndName(UserEntity user, String name);
 
+    /**
+     * Página de los hechizos de un usuario cuyo nombre empieza por el filtro, ordenados por nombre normalizado e id.
+     * Se pagina por clave, así que el coste de cada página no depende de lo avanzada que esté
+     *
+     * @param user       {@code UserEntity} que representa al usuario al que pertenecen los hechizos
+     * @param nameFolded filtro ya normalizado por el que empieza el nombre, puede estar vacío
+     * @param position   posición desde la que empieza la página
+     * @param limit      número máximo de hechizos
+     * @return ventana con los hechizos y la posición de la siguiente página
+     */
+    Window<SpellEntity> findByUserAndNameFoldedStartingWithOrderByNameFoldedAscIdAsc(UserEntity user, String nameFolded, ScrollPosition position, Limit limit);
+
+    /**
+     * Página de los hechizos oficiales cuyo nombre empieza por el filtro, ordenados por nombre normalizado e id
+     *
+     * @param nameFolded filtro ya normalizado por el que empieza el nombre, puede estar vacío
+     * @param position   posición desde la que empieza la página
+     * @param limit      número máximo de hechizos
+     * @return ventana con los hechizos y la posición de la siguiente página
+     */
+    Window<SpellEntity> findByOfficialTrueAndNameFoldedStartingWithOrderByNameFoldedAscIdAsc(String nameFolded, ScrollPosition position, Limit limit);
+
+    /**
+     * Página de los hechizos públicos que no son oficiales, ordenados por nombre normalizado e id
+     *
+     * @param nameFolded filtro ya normalizado por el que empieza el nombre, puede estar vacío
+     * @param position   posición desde la que empieza la página
+     * @param limit      número máximo de hechizos
+     * @return ventana con los hechizos y la posición de la siguiente página
+     */
+    Window<SpellEntity> findByPublicVisibleTrueAndOfficialFalseAndNameFoldedStartingWithOrderByNameFoldedAscIdAsc(String nameFolded, ScrollPosition position, Limit limit);
+
 
 }
@@ -0,0 +1,56 @@
+package com.YagoRueda.Datos.Dados.repositories;
+
+import com.YagoRueda.Datos.Dados.models.SpellScopeVersionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface SpellScopeVersionRepository extends JpaRepository<SpellScopeVersionEntity, String> {
+
+    /**
+     * Lee la versión de un ámbito directamente de bd, sin pasar por las entidades del contexto de persistencia que
+     * {@link #increment(Collection, Instant)} no actualiza
+     *
+     * @param scope El ámbito
+     * @return Su versión o vacío si nunca ha cambiado
+     */
+    @Query("SELECT v.scope AS scope, v.version AS version, v.modifiedAt AS modifiedAt FROM SpellScopeVersionEntity v WHERE v.scope = :scope")
+    Optional<SpellScopeVersionView> findVersion(@Param("scope") String scope);
+
+    /**
+     * Lee la versión de varios ámbitos directamente de bd
+     *
+     * @param scopes Los ámbitos
+     * @return La versión de los que existen
+     */
+    @Query("SELECT v.scope AS scope, v.version AS version, v.modifiedAt AS modifiedAt FROM SpellScopeVersionEntity v WHERE v.scope IN :scopes")
+    List<SpellScopeVersionView> findVersions(@Param("scopes") Collection<String> scopes);
+
+    /**
+     * Lee los ámbitos que han cambiado desde un momento dado
+     *
+     * @param since Momento desde el que se buscan cambios, incluido
+     * @return Su versión
+     */
+    @Query("SELECT v.scope AS scope, v.version AS version, v.modifiedAt AS modifiedAt FROM SpellScopeVersionEntity v WHERE v.modifiedAt >= :since")
+    List<SpellScopeVersionView> findVersionsModifiedSince(@Param("since") Instant since);
+
+    /**
+     * Aumenta en uno la versión de los ámbitos que ya existen
+     *
+     * @param scopes     Los ámbitos
+     * @param modifiedAt Momento del cambio
+     * @return Número de ámbitos actualizados, menor que los pedidos si alguno no existía
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SpellScopeVersionEntity v SET v.version = v.version + 1, v.modifiedAt = :modifiedAt WHERE v.scope IN :scopes")
+    int increment(@Param("scopes") Collection<String> scopes, @Param("modifiedAt") Instant modifiedAt);
+}
@@ -0,0 +1,15 @@
+package com.YagoRueda.Datos.Dados.repositories;
+
+import java.time.Instant;
+
+/**
+ * Proyección con la versión de un ámbito de lectura de hechizos
+ */
+public interface SpellScopeVersionView {
+
+    String getScope();
+
+    long getVersion();
+
+    Instant getModifiedAt();
+}
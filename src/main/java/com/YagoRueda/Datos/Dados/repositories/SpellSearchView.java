@@ -0,0 +1,31 @@
+package com.YagoRueda.Datos.Dados.repositories;
+
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+
+/**
+ * Proyección con los campos de un hechizo que necesitan los índices en memoria de búsqueda, sugerencias y filtros
+ */
+public interface SpellSearchView {
+
+    Long getId();
+
+    Long getUserId();
+
+    Boolean getPublicVisible();
+
+    Boolean getOfficial();
+
+    String getName();
+
+    String getDescription();
+
+    Integer getLevel();
+
+    String getSchool();
+
+    SpellDamageType getDamageType();
+
+    Boolean getConcentration();
+
+    Boolean getRitual();
+}
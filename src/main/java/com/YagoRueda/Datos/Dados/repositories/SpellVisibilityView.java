@@ -0,0 +1,14 @@
+package com.YagoRueda.Datos.Dados.repositories;
+
+/**
+ * Proyección con la visibilidad de un hechizo, para saber a qué ámbitos afecta una operación masiva sin cargar las
+ * entidades
+ */
+public interface SpellVisibilityView {
+
+    Long getId();
+
+    Boolean getPublicVisible();
+
+    Boolean getOfficial();
+}
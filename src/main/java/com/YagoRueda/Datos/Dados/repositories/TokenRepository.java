@@ -2,22 +2,100 @@ package com.YagoRueda.Datos.Dados.repositories;
 
 import com.YagoRueda.Datos.Dados.models.TokenEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface TokenRepository extends JpaRepository<TokenEntity, Long> {
     Optional<TokenEntity> findByTokenId(String tokenId);
 
+    /**
+     * Busca un token cargando en la misma consulta el usuario al que pertenece
+     *
+     * @param tokenId El token
+     * @return El token con su usuario inicializado
+     */
+    @Query("SELECT t FROM TokenEntity t JOIN FETCH t.user WHERE t.tokenId = :tokenId")
+    Optional<TokenEntity> findWithUserByTokenId(@Param("tokenId") String tokenId);
+
+    /**
+     * Mueve la caducidad de un token que no haya sido revocado
+     *
+     * @param tokenId   El token
+     * @param expiresAt Nueva fecha de caducidad
+     * @return Número de filas actualizadas, 0 si el token no existe o está revocado
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TokenEntity t SET t.expiresAt = :expiresAt WHERE t.tokenId = :tokenId AND t.revoked = false")
+    int renewExpiration(@Param("tokenId") String tokenId, @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Marca un token como caducado
+     *
+     * @param tokenId El token
+     * @return Número de filas actualizadas
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TokenEntity t SET t.expired = true WHERE t.tokenId = :tokenId AND t.expired = false")
+    int markExpired(@Param("tokenId") String tokenId);
+
+    /**
+     * Renueva en bloque la caducidad de varios tokens, sin acortar la de ninguno ni tocar los revocados
+     *
+     * @param tokenIds  Los tokens
+     * @param expiresAt Nueva fecha de caducidad
+     * @return Número de filas actualizadas
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE TokenEntity t SET t.expiresAt = :expiresAt WHERE t.tokenId IN :tokenIds AND t.expiresAt < :expiresAt AND t.revoked = false")
+    int renewExpirations(@Param("tokenIds") Collection<String> tokenIds, @Param("expiresAt") Instant expiresAt);
+
     List<TokenEntity> findByUser(UserEntity user);
 
+    /**
+     * Devuelve los tokens revocados que todavía no han caducado
+     *
+     * @param now Momento actual
+     * @return Tokens revocados vigentes
+     */
+    List<TokenEntity> findByRevokedTrueAndExpiresAtAfter(Instant now);
+
     void deleteByTokenId(String tokenId);
 
     void deleteAllByExpiresAtBefore(Instant now);
 
+    /**
+     * Devuelve un bloque de ids de tokens cuya caducidad es anterior a la fecha indicada
+     *
+     * @param cutoff Fecha límite de caducidad
+     * @param page   Tamaño del bloque
+     * @return Ids de los tokens que se pueden borrar
+     */
+    @Query("SELECT t.id FROM TokenEntity t WHERE t.expiresAt < :cutoff")
+    List<Long> findPurgeableIds(@Param("cutoff") Instant cutoff, Pageable page);
+
+    /**
+     * Borra los tokens indicados con una única sentencia
+     *
+     * @param ids Ids de los tokens
+     * @return Número de tokens borrados
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TokenEntity t WHERE t.id IN :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
+
     void deleteByUser(UserEntity user);
 
     @Query("SELECT t FROM TokenEntity t WHERE t.user = :user AND t.expired = false AND t.revoked = false")
@@ -0,0 +1,110 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.OficialSpellInitializer;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Catálogo en memoria de los hechizos oficiales.
+ * <p>
+ * Los hechizos oficiales solo cambian cuando se ejecuta {@link OficialSpellInitializer}, así que se cargan una vez en
+ * una instantánea inmutable ordenada por nombre normalizado. Las búsquedas por prefijo son dos búsquedas binarias
+ * sobre ese orden y no acceden a bd. Cada recarga construye una instantánea nueva y la publica de golpe, de forma que
+ * las lecturas concurrentes ven la anterior o la nueva, nunca una a medias.
+ */
+@Component
+public class OfficialSpellCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(OfficialSpellCatalog.class);
+
+    /**
+     * Instantánea del catálogo
+     *
+     * @param keys   Nombres normalizados ordenados
+     * @param spells Hechizos en el mismo orden que {@code keys}
+     */
+    private record Snapshot(String[] keys, List<SpellDto> spells) {
+    }
+
+    private final SpellRepository spellRepository;
+    private volatile Snapshot snapshot;
+
+    public OfficialSpellCatalog(SpellRepository spellRepository) {
+        this.spellRepository = spellRepository;
+    }
+
+    /**
+     * Vuelve a leer de bd los hechizos oficiales y sustituye la instantánea actual
+     */
+    public void reload() {
+        List<SpellDto> spells = spellRepository.findByOfficialTrue()
+                .stream()
+                .map(SpellEntity::toDTO)
+                .sorted(Comparator.comparing((SpellDto spell) -> key(spell.getName())).thenComparing(SpellDto::getId))
+                .toList();
+        String[] keys = spells.stream().map(spell -> key(spell.getName())).toArray(String[]::new);
+        snapshot = new Snapshot(keys, spells);
+        log.info("Catálogo de hechizos oficiales cargado con {} hechizos", keys.length);
+    }
+
+    /**
+     * @return {@code True} si el catálogo ya se ha cargado al menos una vez
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    public int size() {
+        Snapshot current = snapshot;
+        return current == null ? 0 : current.keys().length;
+    }
+
+    /**
+     * Devuelve los hechizos oficiales cuyo nombre empieza por el prefijo, sin distinguir mayúsculas ni tildes, ordenados por
+     * nombre. Los DTO se comparten entre peticiones y no deben modificarse
+     *
+     * @param prefix Prefijo del nombre, vacío o nulo devuelve todos
+     * @return Lista inmutable de hechizos, vacía si el catálogo aún no se ha cargado
+     */
+    public List<SpellDto> search(String prefix) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return List.of();
+        }
+        if (prefix == null || prefix.isEmpty()) {
+            return current.spells();
+        }
+        String key = key(prefix);
+        int from = lowerBound(current.keys(), key);
+        // Cualquier clave que empiece por el prefijo es menor que el prefijo seguido del mayor carácter
+        int to = lowerBound(current.keys(), key + Character.MAX_VALUE);
+        return current.spells().subList(from, to);
+    }
+
+    /**
+     * Primera posición cuya clave es mayor o igual que {@code key}
+     */
+    private static int lowerBound(String[] keys, String key) {
+        int position = Arrays.binarySearch(keys, key);
+        if (position < 0) {
+            return -position - 1;
+        }
+        // Con nombres repetidos binarySearch puede caer en cualquiera de ellos
+        while (position > 0 && keys[position - 1].equals(key)) {
+            position--;
+        }
+        return position;
+    }
+
+    private static String key(String name) {
+        return SpellTextNormalizer.fold(name);
+    }
+}
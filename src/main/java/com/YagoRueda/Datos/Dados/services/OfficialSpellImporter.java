@@ -0,0 +1,461 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellHashView;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.function.ThrowingFunction;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Importa los hechizos oficiales desde la API de D&D 5e o desde una instantánea del catálogo.
+ * <p>
+ * Contra la API, la lista se descarga una vez y se compara con los nombres que ya hay en bd, leídos de golpe, para
+ * pedir el detalle solo de los que faltan. Los detalles se piden en paralelo con un número acotado de hilos,
+ * reintentando con espera exponencial los errores transitorios, y según llegan se guardan en lotes para que las
+ * inserciones se agrupen.
+ * <p>
+ * Con una instantánea ({@link OfficialSpellSnapshot}) no hace falta red: cada hechizo lleva una huella de su contenido
+ * y solo se insertan los nuevos y se reescriben los que han cambiado.
+ */
+@Service
+public class OfficialSpellImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(OfficialSpellImporter.class);
+
+    /**
+     * Resumen de una importación
+     *
+     * @param listed        Hechizos en la lista de la API o en la instantánea
+     * @param skipped       Hechizos que ya estaban en bd sin cambios
+     * @param imported      Hechizos nuevos guardados
+     * @param updated       Hechizos existentes reescritos porque su contenido ha cambiado
+     * @param failed        Hechizos cuyo detalle no se ha podido obtener o interpretar
+     * @param elapsedMillis Duración total
+     */
+    public record Result(int listed, int skipped, int imported, int updated, int failed, long elapsedMillis) {
+    }
+
+    /**
+     * Detalles descargados de la API
+     *
+     * @param listed Hechizos en la lista de la API
+     * @param spells Documentos de los hechizos que se han podido descargar, en el formato de la API
+     * @param failed Hechizos cuyo detalle no se ha podido descargar
+     */
+    public record Fetched(int listed, List<JsonNode> spells, int failed) {
+    }
+
+    private final SpellRepository spellRepository;
+    private final SpellScopeVersions scopeVersions;
+    private final OfficialSpellLoadProgress progress;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RestTemplate restTemplate;
+    private final String baseUrl;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final int batchSize;
+
+    public OfficialSpellImporter(SpellRepository spellRepository, SpellScopeVersions scopeVersions,
+                                 OfficialSpellLoadProgress progress, PlatformTransactionManager transactionManager,
+                                 @Value("${datosdados.official-spells.base-url:https://www.dnd5eapi.co}") String baseUrl,
+                                 @Value("${datosdados.official-spells.concurrency:8}") int concurrency,
+                                 @Value("${datosdados.official-spells.max-attempts:3}") int maxAttempts,
+                                 @Value("${datosdados.official-spells.backoff:200ms}") Duration backoff,
+                                 @Value("${datosdados.official-spells.timeout:10s}") Duration timeout,
+                                 @Value("${datosdados.official-spells.batch-size:50}") int batchSize) {
+        this.spellRepository = spellRepository;
+        this.scopeVersions = scopeVersions;
+        this.progress = progress;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoff = backoff;
+        this.batchSize = Math.max(1, batchSize);
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Importa desde la API los hechizos oficiales que todavía no tiene el usuario de administración
+     *
+     * @param admin Usuario al que pertenecen los hechizos oficiales
+     * @return Resumen de la importación
+     * @throws RestClientException Si no se puede descargar la lista de hechizos
+     */
+    public Result importMissing(UserEntity admin) {
+        long start = System.currentTimeMillis();
+        progress.phase("Descargando la lista de hechizos de la API");
+        Map<String, String> listedUrls = listSpells();
+
+        Set<String> existing = new HashSet<>();
+        spellRepository.findNamesByUser(admin).forEach(name -> existing.add(name.trim()));
+        List<String> pending = new ArrayList<>();
+        listedUrls.forEach((name, url) -> {
+            if (!existing.contains(name)) {
+                pending.add(url);
+            }
+        });
+
+        progress.phase("Importando de la API los hechizos que faltan");
+        progress.expect(pending.size());
+        // Se guarda por lotes en el orden en que terminan las descargas, mientras siguen las demás
+        List<SpellEntity> batch = new ArrayList<>(batchSize);
+        int failed = fetchDetails(pending, node -> withHash(toEntity(node, admin)), spell -> {
+            batch.add(spell);
+            if (batch.size() == batchSize) {
+                save(batch);
+            }
+        });
+        save(batch);
+        int imported = pending.size() - failed;
+        if (imported > 0) {
+            // Cambian los listados oficiales y los del usuario de administración
+            scopeVersions.bump(Set.of(SpellScopeVersions.OFFICIAL, SpellScopeVersions.user(admin.getId())));
+        }
+        return new Result(listedUrls.size(), listedUrls.size() - pending.size(), imported, 0, failed,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Descarga de la API el detalle de todos los hechizos oficiales, para generar una instantánea nueva
+     *
+     * @return Los documentos descargados y cuántos han fallado
+     * @throws RestClientException Si no se puede descargar la lista de hechizos
+     */
+    public Fetched fetchAll() {
+        progress.phase("Descargando la lista de hechizos de la API");
+        Map<String, String> listedUrls = listSpells();
+        progress.phase("Descargando todos los hechizos de la API");
+        progress.expect(listedUrls.size());
+        List<JsonNode> spells = new ArrayList<>(listedUrls.size());
+        int failed = fetchDetails(listedUrls.values(), node -> node, spells::add);
+        return new Fetched(listedUrls.size(), spells, failed);
+    }
+
+    /**
+     * Sincroniza los hechizos del usuario de administración con los documentos de una instantánea, sin usar la red.
+     * Inserta los que no existen y reescribe los que tienen otra huella de contenido. No borra los que falten
+     *
+     * @param admin  Usuario al que pertenecen los hechizos oficiales
+     * @param spells Documentos de los hechizos en el formato de la API
+     * @return Resumen de la sincronización
+     */
+    public Result sync(UserEntity admin, List<JsonNode> spells) {
+        long start = System.currentTimeMillis();
+        progress.phase("Sincronizando con la instantánea");
+        progress.expect(spells.size());
+        Map<String, SpellHashView> existing = new HashMap<>();
+        for (SpellHashView view : spellRepository.findHashesByUser(admin)) {
+            existing.putIfAbsent(view.getName().trim(), view);
+        }
+
+        Set<String> seen = new HashSet<>();
+        List<SpellEntity> inserts = new ArrayList<>();
+        Map<Long, SpellEntity> changes = new LinkedHashMap<>();
+        int skipped = 0;
+        int failed = 0;
+        for (JsonNode node : spells) {
+            SpellEntity spell;
+            try {
+                spell = withHash(toEntity(node, admin));
+            } catch (JsonProcessingException | RuntimeException e) {
+                failed++;
+                log.warn("Hechizo no válido en la instantánea: {}", e.getMessage());
+                continue;
+            }
+            String name = spell.getName().trim();
+            SpellHashView current = existing.get(name);
+            if (!seen.add(name) || current != null && spell.getContentHash().equals(current.getContentHash())) {
+                skipped++;
+            } else if (current == null) {
+                inserts.add(spell);
+            } else {
+                changes.put(current.getId(), spell);
+            }
+        }
+
+        progress.advance(skipped + failed);
+        for (int from = 0; from < inserts.size(); from += batchSize) {
+            List<SpellEntity> batch = new ArrayList<>(inserts.subList(from, Math.min(from + batchSize, inserts.size())));
+            save(batch);
+            progress.advance(batch.size());
+        }
+        List<Long> changedIds = new ArrayList<>(changes.keySet());
+        for (int from = 0; from < changedIds.size(); from += batchSize) {
+            List<Long> ids = changedIds.subList(from, Math.min(from + batchSize, changedIds.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                for (SpellEntity stored : spellRepository.findWithDamageByIdIn(ids)) {
+                    copyContent(changes.get(stored.getId()), stored);
+                }
+                spellRepository.flush();
+            });
+            progress.advance(ids.size());
+        }
+
+        if (!inserts.isEmpty() || !changes.isEmpty()) {
+            Set<String> scopes = new LinkedHashSet<>();
+            scopes.add(SpellScopeVersions.OFFICIAL);
+            scopes.add(SpellScopeVersions.user(admin.getId()));
+            scopeVersions.bump(scopes);
+        }
+        return new Result(spells.size(), skipped, inserts.size(), changes.size(), failed,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Calcula la huella del contenido de un hechizo: todos los campos que vienen del catálogo, sin el id, el dueño ni
+     * la visibilidad
+     *
+     * @param spell El hechizo
+     * @return SHA-256 en hexadecimal
+     */
+    public static String contentHash(SpellEntity spell) {
+        StringBuilder content = new StringBuilder();
+        // Separador que no aparece en los textos del catálogo
+        char separator = '\u001F';
+        content.append(spell.getName()).append(separator)
+                .append(spell.getLevel()).append(separator)
+                .append(spell.getSchool()).append(separator)
+                .append(spell.getCastTime()).append(separator)
+                .append(spell.getCastRange()).append(separator)
+                .append(spell.getComponents()).append(separator)
+                .append(spell.getDuration()).append(separator)
+                .append(spell.getDescription()).append(separator)
+                .append(spell.isConcentration()).append(separator)
+                .append(spell.isRitual()).append(separator)
+                .append(spell.getDamageType());
+        new TreeMap<>(spell.getDamageByLevel()).forEach((level, damage) ->
+                content.append(separator).append(level).append('=').append(damage));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SpellEntity withHash(SpellEntity spell) {
+        spell.setContentHash(contentHash(spell));
+        return spell;
+    }
+
+    private static void copyContent(SpellEntity from, SpellEntity to) {
+        to.setName(from.getName());
+        to.setLevel(from.getLevel());
+        to.setSchool(from.getSchool());
+        to.setCastTime(from.getCastTime());
+        to.setCastRange(from.getCastRange());
+        to.setComponents(from.getComponents());
+        to.setDuration(from.getDuration());
+        to.setDescription(from.getDescription());
+        to.setConcentration(from.isConcentration());
+        to.setRitual(from.isRitual());
+        to.setDamageType(from.getDamageType());
+        to.getDamageByLevel().clear();
+        to.getDamageByLevel().putAll(from.getDamageByLevel());
+        to.setContentHash(from.getContentHash());
+    }
+
+    /**
+     * Descarga la lista de hechizos de la API
+     *
+     * @return Url del detalle de cada hechizo por nombre, sin repetidos y en el orden de la lista
+     */
+    private Map<String, String> listSpells() {
+        Map<String, String> urls = new LinkedHashMap<>();
+        for (JsonNode summary : fetch(baseUrl + "/api/spells").get("results")) {
+            urls.putIfAbsent(summary.get("name").asText().trim(), baseUrl + summary.get("url").asText());
+        }
+        return urls;
+    }
+
+    /**
+     * Descarga en paralelo los detalles de los hechizos. La conversión se hace en los hilos de descarga y la entrega
+     * en el hilo que llama, según van terminando
+     *
+     * @param urls      Urls de los detalles
+     * @param mapper    Conversión de cada documento
+     * @param onFetched Recibe cada resultado convertido
+     * @return Número de detalles que no se han podido descargar o convertir
+     */
+    private <T> int fetchDetails(Collection<String> urls, ThrowingFunction<JsonNode, T> mapper, Consumer<T> onFetched) {
+        if (urls.isEmpty()) {
+            return 0;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, urls.size()), runnable -> {
+            Thread thread = new Thread(runnable, "official-spell-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int failed = 0;
+        try {
+            CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+            for (String url : urls) {
+                completion.submit(() -> mapper.applyWithException(fetch(url)));
+            }
+            for (int i = 0; i < urls.size(); i++) {
+                T result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    progress.advance(1);
+                    log.warn("No se ha podido importar un hechizo oficial: {}", e.getCause().getMessage());
+                    continue;
+                }
+                onFetched.accept(result);
+                progress.advance(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Importación de hechizos oficiales interrumpida", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed;
+    }
+
+    private void save(List<SpellEntity> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            spellRepository.saveAll(batch);
+            // Los INSERT del lote salen juntos aquí aunque la importación vaya dentro de otra transacción
+            spellRepository.flush();
+        });
+        batch.clear();
+    }
+
+    /**
+     * Descarga y lee un documento JSON reintentando los errores de red, los 5xx y los 429
+     */
+    private JsonNode fetch(String url) {
+        long delay = backoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return objectMapper.readTree(restTemplate.getForObject(url, String.class));
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS || attempt >= maxAttempts) {
+                    throw e;
+                }
+            } catch (RestClientException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Respuesta no válida de " + url, e);
+            }
+            try {
+                // Con algo de variación para que los hilos no reintenten todos a la vez
+                Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Importación de hechizos oficiales interrumpida", e);
+            }
+            delay *= 2;
+        }
+    }
+
+    private SpellEntity toEntity(JsonNode spellNode, UserEntity admin) throws JsonProcessingException {
+        SpellEntity spell = new SpellEntity();
+        spell.setName(spellNode.get("name").asText());
+        spell.setLevel(spellNode.get("level").asInt());
+        spell.setDescription(spellNode.get("desc").get(0).asText());
+        spell.setSchool(spellNode.get("school").get("name").asText());
+        if (spellNode.has("components")) {
+            // ["V","S","M"] -> "V, S, M"
+            String components = objectMapper.writeValueAsString(spellNode.get("components"))
+                    .replace("[", "")
+                    .replace("]", "")
+                    .replace("\"", "")
+                    .replace(",", ", ");
+            spell.setComponents(components);
+        } else {
+            spell.setComponents("No tiene componentes");
+        }
+        spell.setCastTime(spellNode.has("casting_time") ? spellNode.get("casting_time").asText() : "");
+        spell.setDuration(spellNode.has("duration") ? spellNode.get("duration").asText() : "");
+        spell.setCastRange(spellNode.has("range") ? spellNode.get("range").asText() : "");
+        spell.setConcentration(spellNode.has("concentration") && spellNode.get("concentration").asBoolean());
+        spell.setRitual(spellNode.has("ritual") && spellNode.get("ritual").asBoolean());
+        spell.setPublicVisible(true);
+        spell.setOfficial(true);
+        spell.setUser(admin);
+
+        if (spellNode.has("damage")) {
+            JsonNode damage = spellNode.get("damage");
+            if (damage.has("damage_type")) {
+                String damageType = damage.get("damage_type").get("name").asText();
+                try {
+                    spell.setDamageType(SpellDamageType.valueOf(damageType.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Tipo de daño desconocido {} en {}", damageType, spell.getName());
+                }
+            }
+            // Daño por nivel de espacio de conjuro o, si no lo tiene, por nivel de personaje
+            JsonNode damageLevelNode = damage.has("damage_at_slot_level") ? damage.get("damage_at_slot_level")
+                    : damage.get("damage_at_character_level");
+            if (damageLevelNode != null) {
+                Map<Integer, String> damageMap = new HashMap<>();
+                Iterator<String> fieldNames = damageLevelNode.fieldNames();
+                while (fieldNames.hasNext()) {
+                    String level = fieldNames.next();
+                    damageMap.put(Integer.parseInt(level), damageLevelNode.get(level).asText());
+                }
+                spell.setDamageByLevel(damageMap);
+            }
+        }
+        return spell;
+    }
+}
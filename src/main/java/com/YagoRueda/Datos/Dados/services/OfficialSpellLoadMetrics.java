@@ -0,0 +1,44 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas de la carga de los hechizos oficiales a partir de {@link OfficialSpellLoadProgress}: hechizos procesados y
+ * por procesar en la fase actual, estado (1 en el estado actual y 0 en los demás) y tiempo desde el arranque hasta que
+ * terminó
+ */
+@Component
+public class OfficialSpellLoadMetrics implements MeterBinder {
+
+    private final OfficialSpellLoadProgress progress;
+
+    public OfficialSpellLoadMetrics(OfficialSpellLoadProgress progress) {
+        this.progress = progress;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("datosdados.official.spells.load.processed", progress, p -> p.status().processed())
+                .description("Hechizos oficiales procesados en la fase actual de la carga")
+                .register(registry);
+        Gauge.builder("datosdados.official.spells.load.expected", progress, p -> p.status().total())
+                .description("Hechizos oficiales a procesar en la fase actual, 0 si aún no se sabe")
+                .register(registry);
+        for (OfficialSpellLoadProgress.State state : OfficialSpellLoadProgress.State.values()) {
+            Gauge.builder("datosdados.official.spells.load.state", progress, p -> p.status().state() == state ? 1 : 0)
+                    .description("Estado de la carga de los hechizos oficiales")
+                    .tag("state", state.name())
+                    .register(registry);
+        }
+        TimeGauge.builder("datosdados.official.spells.load.ready.after.start", progress, TimeUnit.MILLISECONDS,
+                        p -> Math.max(0, p.status().readyAfterStartMillis()))
+                .description("Tiempo desde el arranque de la JVM hasta que terminó la carga, 0 si no ha terminado")
+                .register(registry);
+    }
+}
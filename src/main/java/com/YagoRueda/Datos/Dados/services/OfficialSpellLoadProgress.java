@@ -0,0 +1,120 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estado de la carga de los hechizos oficiales, que se hace en segundo plano al arrancar. Lo consultan el endpoint de
+ * hechizos oficiales, que responde 503 mientras no ha terminado, y la comprobación de disponibilidad de Actuator.
+ * <p>
+ * Solo escribe en él el hilo de la carga, los demás lo leen.
+ */
+@Component
+public class OfficialSpellLoadProgress {
+
+    public enum State {
+        /**
+         * La carga aún no ha empezado
+         */
+        PENDING,
+        /**
+         * Cargando, los hechizos oficiales no están disponibles
+         */
+        LOADING,
+        /**
+         * Cargados y en memoria
+         */
+        READY,
+        /**
+         * La carga ha fallado, se sirve lo que ya hubiera en bd
+         */
+        FAILED
+    }
+
+    /**
+     * Estado en un momento dado
+     *
+     * @param state                 Estado
+     * @param phase                 Descripción de lo que se está haciendo
+     * @param processed             Hechizos procesados
+     * @param total                 Hechizos a procesar, 0 si aún no se sabe
+     * @param startedAt             Inicio de la carga, {@code null} si no ha empezado
+     * @param finishedAt            Fin de la carga, {@code null} si no ha terminado
+     * @param readyAfterStartMillis Milisegundos desde que arrancó la JVM hasta que terminó la carga, -1 si no ha terminado
+     * @param error                 Motivo del fallo, {@code null} si no ha fallado
+     */
+    public record Status(State state, String phase, int processed, int total, Instant startedAt, Instant finishedAt,
+                         long readyAfterStartMillis, String error) {
+    }
+
+    private volatile State state = State.PENDING;
+    private volatile String phase = "Esperando al arranque";
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile int total;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile long readyAfterStartMillis = -1;
+    private volatile String error;
+
+    /**
+     * @return {@code True} si la carga ha terminado, haya ido bien o no
+     */
+    public boolean isFinished() {
+        State current = state;
+        return current == State.READY || current == State.FAILED;
+    }
+
+    public Status status() {
+        return new Status(state, phase, processed.get(), total, startedAt, finishedAt, readyAfterStartMillis, error);
+    }
+
+    public void start() {
+        startedAt = Instant.now();
+        state = State.LOADING;
+        phase("Comprobando la cuenta de hechizos oficiales");
+    }
+
+    /**
+     * Empieza una fase nueva de la carga y pone a cero el recuento
+     *
+     * @param description Qué se está haciendo
+     */
+    public void phase(String description) {
+        phase = description;
+        total = 0;
+        processed.set(0);
+    }
+
+    /**
+     * @param spells Hechizos que va a procesar la fase actual
+     */
+    public void expect(int spells) {
+        total = spells;
+    }
+
+    /**
+     * @param spells Hechizos procesados desde la última llamada
+     */
+    public void advance(int spells) {
+        processed.addAndGet(spells);
+    }
+
+    public void finish() {
+        end(State.READY, null);
+    }
+
+    public void fail(Throwable cause) {
+        end(State.FAILED, cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage());
+    }
+
+    private void end(State finalState, String reason) {
+        finishedAt = Instant.now();
+        readyAfterStartMillis = finishedAt.toEpochMilli() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        error = reason;
+        phase = finalState == State.READY ? "Hechizos oficiales cargados" : "Carga fallida";
+        state = finalState;
+    }
+}
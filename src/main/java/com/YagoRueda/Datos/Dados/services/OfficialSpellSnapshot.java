@@ -0,0 +1,123 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Instantánea versionada del catálogo oficial, para cargar los hechizos oficiales sin depender de la API al arrancar.
+ * <p>
+ * Es un JSON comprimido con gzip con la versión del formato, la fecha en que se generó, la url de origen y el
+ * documento de cada hechizo tal como lo devuelve la API, así que se convierte con el mismo código que la importación
+ * por red. Se genera arrancando con {@code datosdados.official-spells.remote-refresh=true} y copiando el fichero
+ * resultante a {@code src/main/resources/official-spells/snapshot.json.gz}.
+ * <p>
+ * Esa instantánea todavía no está en el repositorio: mientras no se genere y se añada, el arranque no la encuentra y
+ * sigue dependiendo de la API, pidiendo solo los hechizos que faltan en bd.
+ */
+@Component
+public class OfficialSpellSnapshot {
+
+    public static final int FORMAT = 1;
+
+    /**
+     * Contenido de una instantánea
+     *
+     * @param format      Versión del formato
+     * @param generatedAt Momento en que se descargaron los hechizos
+     * @param source      Url de la API de la que se descargaron
+     * @param spells      Documentos de los hechizos en el formato de la API
+     */
+    public record Snapshot(int format, Instant generatedAt, String source, List<JsonNode> spells) {
+    }
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public OfficialSpellSnapshot(ResourceLoader resourceLoader,
+                                 @Value("${datosdados.official-spells.snapshot:classpath:official-spells/snapshot.json.gz}") String location) {
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Lee la instantánea configurada
+     *
+     * @return La instantánea o vacío si no existe
+     * @throws IllegalStateException Si existe pero no se puede leer o tiene un formato desconocido
+     */
+    public Optional<Snapshot> read() {
+        Resource resource = resourceLoader.getResource(location);
+        if (!resource.exists()) {
+            return Optional.empty();
+        }
+        try (InputStream in = new GZIPInputStream(resource.getInputStream())) {
+            return Optional.of(read(in));
+        } catch (IOException e) {
+            throw new IllegalStateException("No se puede leer la instantánea de hechizos oficiales " + location, e);
+        }
+    }
+
+    private Snapshot read(InputStream in) throws IOException {
+        JsonNode root = objectMapper.readTree(in);
+        int format = root.path("format").asInt();
+        if (format != FORMAT) {
+            throw new IllegalStateException("Formato de instantánea no soportado: " + format);
+        }
+        List<JsonNode> spells = new ArrayList<>(root.path("spells").size());
+        root.path("spells").forEach(spells::add);
+        return new Snapshot(format, Instant.parse(root.path("generatedAt").asText()), root.path("source").asText(),
+                spells);
+    }
+
+    /**
+     * Escribe una instantánea comprimida. Se escribe en un fichero temporal y se mueve al final, para no dejar una
+     * instantánea a medias si algo falla
+     *
+     * @param target   Fichero de destino
+     * @param snapshot Contenido
+     */
+    public void write(Path target, Snapshot snapshot) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("format", snapshot.format());
+        root.put("generatedAt", snapshot.generatedAt().toString());
+        root.put("source", snapshot.source());
+        ArrayNode spells = root.putArray("spells");
+        snapshot.spells().forEach(spells::add);
+        try {
+            Path absolute = target.toAbsolutePath();
+            Files.createDirectories(absolute.getParent());
+            Path temporary = Files.createTempFile(absolute.getParent(), "official-spells", ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporary))) {
+                objectMapper.writeValue(out, root);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
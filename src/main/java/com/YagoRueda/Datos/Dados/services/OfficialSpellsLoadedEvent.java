@@ -0,0 +1,11 @@
+package com.YagoRueda.Datos.Dados.services;
+
+/**
+ * Evento que se publica cuando la carga de los hechizos oficiales al arrancar ha escrito hechizos en bd, para que los
+ * índices en memoria se reconstruyan con ellos
+ *
+ * @param imported Hechizos nuevos
+ * @param updated  Hechizos reescritos
+ */
+public record OfficialSpellsLoadedEvent(int imported, int updated) {
+}
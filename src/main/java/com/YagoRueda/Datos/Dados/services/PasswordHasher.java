@@ -0,0 +1,33 @@
+package com.YagoRueda.Datos.Dados.services;
+
+/**
+ * Algoritmo de hash de contraseñas. Las implementaciones no deben tener estado mutable compartido, ya que se usan
+ * desde varios hilos a la vez
+ */
+public interface PasswordHasher {
+
+    /**
+     * Calcula el hash de una contraseña
+     *
+     * @param password La contraseña en claro
+     * @return El hash codificado, incluyendo los parámetros necesarios para verificarlo
+     */
+    String hash(String password);
+
+    /**
+     * Comprueba una contraseña contra un hash guardado
+     *
+     * @param password La contraseña en claro
+     * @param encoded  El hash guardado
+     * @return {@code True} si la contraseña coincide
+     */
+    boolean matches(String password, String encoded);
+
+    /**
+     * Indica si un hash guardado se generó con otro algoritmo o con parámetros más débiles que los actuales
+     *
+     * @param encoded El hash guardado
+     * @return {@code True} si conviene recalcularlo
+     */
+    boolean needsRehash(String encoded);
+}
@@ -0,0 +1,144 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.exceptions.ServiceBusyException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta el hash y la verificación de contraseñas en un pool de hilos propio y acotado, para que una ráfaga de
+ * logins no deje sin hilos de Tomcat al resto de peticiones.
+ * <p>
+ * Las operaciones devuelven un {@link CompletableFuture}, así el hilo de la petición queda libre mientras la operación
+ * espera en la cola. Si la cola está llena o la operación no ha terminado en el tiempo máximo falla con
+ * {@link ServiceBusyException}; las que caducan en la cola se descartan sin calcularse
+ */
+@Service
+public class PasswordHashingService {
+
+    /**
+     * Resultado de verificar una contraseña
+     *
+     * @param matches  {@code True} si la contraseña coincide
+     * @param rehashed Nuevo hash a guardar si el anterior estaba obsoleto, {@code null} en otro caso
+     */
+    public record Verification(boolean matches, String rehashed) {
+    }
+
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+
+    public PasswordHashingService(PasswordHasher hasher,
+                                  @Value("${datosdados.password.hashing.threads:0}") int threads,
+                                  @Value("${datosdados.password.hashing.queue-capacity:100}") int queueCapacity,
+                                  @Value("${datosdados.password.hashing.timeout:10s}") Duration timeout) {
+        this.hasher = hasher;
+        this.timeout = timeout;
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Calcula el hash de una contraseña nueva
+     *
+     * @param password La contraseña en claro
+     * @return El hash codificado cuando termine
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> hasher.hash(password));
+    }
+
+    /**
+     * Verifica una contraseña y, si coincide y el hash guardado está obsoleto, calcula uno nuevo
+     *
+     * @param password La contraseña en claro
+     * @param encoded  El hash guardado
+     * @return El resultado de la verificación cuando termine
+     */
+    public CompletableFuture<Verification> verifyAsync(String password, String encoded) {
+        return submit(() -> {
+            if (!hasher.matches(password, encoded)) {
+                return new Verification(false, null);
+            }
+            return new Verification(true, hasher.needsRehash(encoded) ? hasher.hash(password) : null);
+        });
+    }
+
+    /**
+     * Igual que {@link #hashAsync(String)} esperando al resultado
+     */
+    public String hash(String password) {
+        return await(hashAsync(password));
+    }
+
+    /**
+     * Igual que {@link #verifyAsync(String, String)} esperando al resultado
+     */
+    public Verification verify(String password, String encoded) {
+        return await(verifyAsync(password, encoded));
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                // Ha caducado mientras esperaba en la cola, ya nadie espera el resultado
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(task.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(busy());
+            return result;
+        }
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> result.completeExceptionally(busy()));
+        return result;
+    }
+
+    private static ServiceBusyException busy() {
+        return new ServiceBusyException("Demasiadas peticiones de inicio de sesión, inténtalo de nuevo en unos segundos");
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,101 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * {@link PasswordHasher} basado en PBKDF2-HMAC-SHA256 con sal aleatoria y número de iteraciones configurable.
+ * <p>
+ * Los hashes tienen la forma {@code pbkdf2-sha256$<iteraciones>$<sal>$<hash>}. También verifica los hashes antiguos
+ * (SHA-256 sin sal) para que esos usuarios puedan entrar y se les recalcule el hash.
+ */
+@Component
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    public Pbkdf2PasswordHasher(@Value("${datosdados.password.iterations:310000}") int iterations) {
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, iterations);
+        return PREFIX + "$" + iterations + "$" + Base64.getEncoder().encodeToString(salt) + "$"
+                + Base64.getEncoder().encodeToString(hash);
+    }
+
+    @Override
+    public boolean matches(String password, String encoded) {
+        if (encoded == null) {
+            return false;
+        }
+        if (!encoded.startsWith(PREFIX + "$")) {
+            return encoded.equals(legacyHash(password));
+        }
+        String[] parts = encoded.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        try {
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean needsRehash(String encoded) {
+        if (encoded == null || !encoded.startsWith(PREFIX + "$")) {
+            return true;
+        }
+        String[] parts = encoded.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se puede calcular " + ALGORITHM, e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Hash usado antes de PBKDF2: SHA-256 de la contraseña interpretado como texto UTF-8
+     */
+    private static String legacyHash(String password) {
+        try {
+            byte[] hashed = MessageDigest.getInstance("SHA-256").digest(password.getBytes());
+            return new String(hashed, StandardCharsets.UTF_8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de sesiones resueltas, indexada por tokenId.
+ * <p>
+ * Es una LRU acotada por tamaño en la que cada entrada además caduca pasado el TTL configurado, de forma que una
+ * revocación hecha desde otro nodo se acaba viendo como mucho tras ese tiempo.
+ */
+@Component
+public class SessionCache {
+
+    /**
+     * Sesión resuelta a partir de un token
+     *
+     * @param userId    Id del usuario dueño del token
+     * @param expiresAt Momento en el que caduca el token
+     * @param revoked   {@code True} si el token ha sido revocado
+     */
+    public record Session(long userId, Instant expiresAt, boolean revoked) {
+
+        public Session withExpiresAt(Instant newExpiresAt) {
+            return new Session(userId, newExpiresAt, revoked);
+        }
+    }
+
+    private record Entry(Session session, Instant cachedUntil) {
+    }
+
+    private final int maxSize;
+    private final Duration ttl;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SessionCache(@Value("${datosdados.session-cache.max-size:10000}") int maxSize,
+                        @Value("${datosdados.session-cache.ttl:60s}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        // LinkedHashMap en orden de acceso: la entrada más antigua es la menos usada
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > SessionCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Devuelve la sesión cacheada para un token
+     *
+     * @param tokenId El token
+     * @return La sesión o {@code null} si no está en caché o su entrada ha caducado
+     */
+    public synchronized Session get(String tokenId) {
+        Entry entry = entries.get(tokenId);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.cachedUntil().isBefore(Instant.now())) {
+            entries.remove(tokenId);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.session();
+    }
+
+    /**
+     * Guarda o reemplaza la sesión de un token
+     *
+     * @param tokenId El token
+     * @param session La sesión resuelta
+     */
+    public synchronized void put(String tokenId, Session session) {
+        entries.put(tokenId, new Entry(session, Instant.now().plus(ttl)));
+    }
+
+    /**
+     * Elimina de la caché la sesión de un token
+     *
+     * @param tokenId El token
+     */
+    public synchronized void invalidate(String tokenId) {
+        entries.remove(tokenId);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,122 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Genera y verifica tokens autocontenidos firmados con HMAC-SHA256.
+ * <p>
+ * El token tiene la forma {@code v1.<datos>.<firma>}, ambos en base64url, y los datos llevan el id del usuario, la
+ * caducidad y un identificador aleatorio. Verificarlo no necesita acceder a bd. No lleva el nombre del usuario para
+ * que su longitud no dependa de él y quepa siempre en {@code token_entity.token_id}; los tokens generados antes con el
+ * nombre al final se siguen aceptando y el nombre se ignora.
+ */
+@Component
+public class SignedTokenCodec {
+
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * Datos contenidos en un token firmado
+     *
+     * @param userId    Id del usuario
+     * @param expiresAt Caducidad del token
+     */
+    public record Claims(long userId, Instant expiresAt) {
+    }
+
+    private final byte[] secret;
+    private final Duration lifetime;
+    private final ThreadLocal<Mac> mac;
+
+    public SignedTokenCodec(@Value("${datosdados.token.signed.secret:}") String secret,
+                            @Value("${datosdados.token.signed.lifetime:8h}") Duration lifetime) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.lifetime = lifetime;
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Indica si hay un secreto suficientemente largo para firmar tokens (al menos 32 bytes)
+     */
+    public boolean isConfigured() {
+        return secret.length >= 32;
+    }
+
+    public Duration getLifetime() {
+        return lifetime;
+    }
+
+    /**
+     * Genera un token firmado
+     *
+     * @param userId    Id del usuario
+     * @param expiresAt Caducidad del token
+     * @return El token, de como mucho 150 caracteres
+     */
+    public String sign(long userId, Instant expiresAt) {
+        String claims = userId + ":" + expiresAt.getEpochSecond() + ":" + UUID.randomUUID();
+        String payload = ENCODER.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        String signingInput = VERSION + "." + payload;
+        return signingInput + "." + ENCODER.encodeToString(signature(signingInput));
+    }
+
+    /**
+     * Comprueba la firma de un token y extrae sus datos. No comprueba la caducidad
+     *
+     * @param token El token
+     * @return Los datos del token o {@code null} si no tiene el formato esperado o la firma no coincide
+     */
+    public Claims verify(String token) {
+        if (token == null || !token.startsWith(VERSION + ".")) {
+            return null;
+        }
+        int separator = token.lastIndexOf('.');
+        if (separator <= VERSION.length()) {
+            return null;
+        }
+        String signingInput = token.substring(0, separator);
+        try {
+            byte[] expected = signature(signingInput);
+            byte[] actual = DECODER.decode(token.substring(separator + 1));
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return null;
+            }
+            String claims = new String(DECODER.decode(signingInput.substring(VERSION.length() + 1)), StandardCharsets.UTF_8);
+            String[] parts = claims.split(":", 4);
+            if (parts.length < 3) {
+                return null;
+            }
+            return new Claims(Long.parseLong(parts[0]), Instant.ofEpochSecond(Long.parseLong(parts[1])));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] signature(String signingInput) {
+        return mac.get().doFinal(signingInput.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(new SecretKeySpec(secret.length == 0 ? new byte[1] : secret, ALGORITHM));
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se puede inicializar " + ALGORITHM, e);
+        }
+    }
+}
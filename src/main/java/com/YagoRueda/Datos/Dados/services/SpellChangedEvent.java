@@ -0,0 +1,18 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+
+/**
+ * Evento publicado por {@link SpellService} cada vez que se crea, modifica o elimina un hechizo, para que los
+ * índices en memoria se mantengan al día. Los índices lo reciben al confirmarse la transacción del cambio, o en el
+ * momento si se publica fuera de una
+ *
+ * @param spellId Id del hechizo
+ * @param spell   Estado del hechizo tras el cambio, {@code null} si se ha eliminado
+ */
+public record SpellChangedEvent(long spellId, SpellDto spell) {
+
+    public boolean deleted() {
+        return spell == null;
+    }
+}
@@ -0,0 +1,71 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Convierte las posiciones de paginación por clave (nombre normalizado, id) en cursores opacos para los clientes y viceversa
+ */
+final class SpellCursorCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SpellCursorCodec() {
+    }
+
+    /**
+     * Codifica la posición a partir de la cual empieza la siguiente página
+     *
+     * @param position Posición devuelta por el repositorio
+     * @return Cursor opaco
+     */
+    static String encode(ScrollPosition position) {
+        if (!(position instanceof KeysetScrollPosition keyset)) {
+            throw new IllegalArgumentException("Solo se admite paginación por clave");
+        }
+        Map<String, Object> keys = keyset.getKeys();
+        try {
+            Map<String, Object> cursor = new LinkedHashMap<>();
+            cursor.put("n", keys.get("nameFolded"));
+            cursor.put("i", keys.get("id"));
+            byte[] json = MAPPER.writeValueAsBytes(cursor);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodifica un cursor recibido de un cliente
+     *
+     * @param cursor Cursor opaco, puede ser nulo o vacío para empezar desde el principio
+     * @return La posición de scroll correspondiente
+     * @throws InvalidInputDataException Si el cursor no es válido
+     */
+    static ScrollPosition decode(String cursor) throws InvalidInputDataException {
+        if (cursor == null || cursor.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            JsonNode node = MAPPER.readTree(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if (node == null || !node.hasNonNull("n") || !node.hasNonNull("i")) {
+                throw new InvalidInputDataException("Cursor no válido");
+            }
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("nameFolded", node.get("n").asText());
+            keys.put("id", node.get("i").asLong());
+            return ScrollPosition.forward(keys);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw new InvalidInputDataException("Cursor no válido");
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.SpellSearchView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Índice de mapas de bits para filtrar hechizos por nivel, escuela, tipo de daño, concentración y ritual.
+ * <p>
+ * Cada hechizo ocupa una posición y cada valor de cada faceta guarda un {@link BitSet} con las posiciones de los
+ * hechizos que lo tienen. Un filtro es un OR de los valores pedidos dentro de cada faceta y un AND entre facetas y con
+ * el conjunto visible, de modo que combinar filtros no recorre los hechizos. Los recuentos de cada faceta se calculan
+ * aplicando el resto de filtros, para que el cliente sepa cuántos resultados obtendría al cambiar esa faceta. Se
+ * construye al arrancar y se mantiene con cada {@link SpellChangedEvent}, igual que {@link SpellSearchIndex}.
+ * <p>
+ * Solo se enteran de los cambios hechos en este nodo, así que sus resultados son candidatos: quien los usa comprueba
+ * en bd que cada hechizo sigue dentro del ámbito y corrige con {@link #reload(Collection)} los que no.
+ */
+@Component
+public class SpellFacetIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SpellFacetIndex.class);
+
+    public static final String LEVEL = "level";
+    public static final String SCHOOL = "school";
+    public static final String DAMAGE_TYPE = "damageType";
+    public static final String CONCENTRATION = "concentration";
+    public static final String RITUAL = "ritual";
+
+    private static final String[] FACETS = {LEVEL, SCHOOL, DAMAGE_TYPE, CONCENTRATION, RITUAL};
+
+    /**
+     * Filtro pedido por el cliente. Las facetas nulas o vacías no filtran
+     *
+     * @param levels        Niveles admitidos
+     * @param schools       Escuelas admitidas, sin distinguir mayúsculas ni tildes
+     * @param damageTypes   Tipos de daño admitidos
+     * @param concentration Si el hechizo requiere concentración
+     * @param ritual        Si el hechizo se puede lanzar como ritual
+     */
+    public record Filter(Set<Integer> levels, Set<String> schools, Set<SpellDamageType> damageTypes,
+                         Boolean concentration, Boolean ritual) {
+
+        public static final Filter NONE = new Filter(null, null, null, null, null);
+
+        /**
+         * Claves pedidas de cada faceta en el mismo formato que las del índice, {@code null} si no se filtra por ella
+         */
+        private Set<String> selected(int facet) {
+            return switch (FACETS[facet]) {
+                case LEVEL -> keys(levels, String::valueOf);
+                case SCHOOL -> keys(schools, SpellFacetIndex::schoolKey);
+                case DAMAGE_TYPE -> keys(damageTypes, SpellDamageType::name);
+                case CONCENTRATION -> concentration == null ? null : Set.of(concentration.toString());
+                default -> ritual == null ? null : Set.of(ritual.toString());
+            };
+        }
+
+        private static <T> Set<String> keys(Set<T> values, Function<T, String> key) {
+            return values == null || values.isEmpty() ? null : values.stream().map(key).collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * Hechizo de una página de resultados
+     *
+     * @param spellId Id del hechizo
+     * @param folded  Nombre normalizado, para construir el cursor de la página siguiente
+     */
+    public record Match(long spellId, String folded) {
+    }
+
+    /**
+     * Resultado de un filtrado
+     *
+     * @param page    Hechizos de la página ordenados por nombre normalizado e id
+     * @param hasNext Si quedan más hechizos después de la página
+     * @param total   Número total de hechizos que cumplen el filtro
+     * @param facets  Recuento por faceta y valor aplicando los filtros del resto de facetas
+     */
+    public record Result(List<Match> page, boolean hasNext, int total, Map<String, Map<String, Integer>> facets) {
+    }
+
+    /**
+     * Hechizo indexado, con las claves de cada faceta en el orden de {@link #FACETS} para poder sacarlo del índice
+     */
+    private record Entry(long spellId, long userId, boolean publicVisible, boolean official, String folded,
+                         String[] values) {
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::folded).thenComparingLong(Entry::spellId);
+
+    private final SpellRepository spellRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private List<Entry> entries = new ArrayList<>();
+    private Map<Long, Integer> slotsById = new HashMap<>();
+    private Deque<Integer> freeSlots = new ArrayDeque<>();
+    private List<Map<String, BitSet>> facets = emptyFacets();
+    // Hechizos públicos de usuarios, sin los oficiales
+    private BitSet publicScope = new BitSet();
+    private Map<Long, BitSet> ownerScopes = new HashMap<>();
+
+    private volatile boolean rebuilding;
+    private final Queue<SpellChangedEvent> changesDuringRebuild = new ConcurrentLinkedQueue<>();
+
+    public SpellFacetIndex(SpellRepository spellRepository) {
+        this.spellRepository = spellRepository;
+    }
+
+    /**
+     * Construye el índice desde cero leyendo todos los hechizos de bd. Se repite cuando la carga de los hechizos
+     * oficiales termina después del arranque, y dos reconstrucciones no se solapan
+     */
+    @EventListener({ApplicationReadyEvent.class, OfficialSpellsLoadedEvent.class})
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        SpellFacetIndex fresh = new SpellFacetIndex(spellRepository);
+        try (Stream<SpellSearchView> views = spellRepository.streamSearchViews()) {
+            views.forEach(spell -> fresh.put(entry(spell)));
+        }
+        lock.writeLock().lock();
+        try {
+            entries = fresh.entries;
+            slotsById = fresh.slotsById;
+            freeSlots = fresh.freeSlots;
+            facets = fresh.facets;
+            publicScope = fresh.publicScope;
+            ownerScopes = fresh.ownerScopes;
+            // Los cambios confirmados durante la reconstrucción se aplican antes de que se pueda leer el índice nuevo
+            SpellChangedEvent change;
+            while ((change = changesDuringRebuild.poll()) != null) {
+                apply(change);
+            }
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Índice de facetas construido con {} hechizos en {} ms", size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Actualiza el índice con un hechizo creado, modificado o eliminado. Si el cambio se hace en una transacción se
+     * aplica al confirmarla, para que el índice nunca muestre cambios que se han deshecho
+     *
+     * @param event El cambio
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSpellChanged(SpellChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            // Con el cerrojo con el que termina rebuild(), para no encolar un cambio cuando ya se ha vaciado la cola
+            if (rebuilding) {
+                changesDuringRebuild.add(event);
+            } else {
+                apply(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(SpellChangedEvent event) {
+        if (event.deleted()) {
+            remove(event.spellId());
+            return;
+        }
+        SpellDto spell = event.spell();
+        // Los cambios llegan desde la API, que no puede cambiar si un hechizo es oficial
+        Integer slot = slotsById.get(event.spellId());
+        boolean official = slot != null && entries.get(slot).official();
+        put(new Entry(event.spellId(), spell.getUserId() == null ? 0 : spell.getUserId(), spell.isPublicVisible(),
+                official, SpellTextNormalizer.fold(spell.getName()),
+                values(spell.getLevel(), spell.getSchool(), spell.getDamageType(), spell.isConcentration(),
+                        spell.isRitual())));
+    }
+
+    /**
+     * Vuelve a leer de bd los hechizos indicados y los actualiza en el índice, o los saca si ya no existen. Corrige las
+     * entradas de las que el índice no se enteró, por ejemplo cambios hechos desde otro nodo
+     *
+     * @param spellIds ids de los hechizos
+     */
+    @Transactional(readOnly = true)
+    public void reload(Collection<Long> spellIds) {
+        List<SpellSearchView> stored = spellRepository.findSearchViewsByIdIn(spellIds);
+        Set<Long> missing = new HashSet<>(spellIds);
+        lock.writeLock().lock();
+        try {
+            for (SpellSearchView spell : stored) {
+                put(entry(spell));
+                missing.remove(spell.getId());
+            }
+            missing.forEach(this::remove);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Filtra los hechizos de un usuario
+     *
+     * @param userId    Dueño de los hechizos
+     * @param prefix    Prefijo del nombre normalizado, vacío o nulo no filtra
+     * @param filter    Filtro por facetas
+     * @param afterName Nombre normalizado del último hechizo de la página anterior, nulo para la primera página
+     * @param afterId   Id del último hechizo de la página anterior
+     * @param limit     Tamaño de página
+     * @return La página de resultados con los recuentos de cada faceta
+     */
+    public Result filterOwnedBy(long userId, String prefix, Filter filter, String afterName, long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            return filter(ownerScopes.getOrDefault(userId, new BitSet()), prefix, filter, afterName, afterId, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Filtra los hechizos públicos de los usuarios, sin los oficiales
+     *
+     * @see #filterOwnedBy(long, String, Filter, String, long, int)
+     */
+    public Result filterPublic(String prefix, Filter filter, String afterName, long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            return filter(publicScope, prefix, filter, afterName, afterId, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Número de hechizos indexados
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Result filter(BitSet scope, String prefix, Filter filter, String afterName, long afterId, int limit) {
+        BitSet base = (BitSet) scope.clone();
+        if (prefix != null && !prefix.isEmpty()) {
+            for (int slot = base.nextSetBit(0); slot >= 0; slot = base.nextSetBit(slot + 1)) {
+                if (!entries.get(slot).folded().startsWith(prefix)) {
+                    base.clear(slot);
+                }
+            }
+        }
+
+        // OR de los valores pedidos de cada faceta, null si no se filtra por ella
+        BitSet[] selections = new BitSet[FACETS.length];
+        for (int facet = 0; facet < FACETS.length; facet++) {
+            Set<String> selected = filter.selected(facet);
+            if (selected != null) {
+                BitSet union = new BitSet();
+                for (String key : selected) {
+                    BitSet bits = facets.get(facet).get(key);
+                    if (bits != null) {
+                        union.or(bits);
+                    }
+                }
+                selections[facet] = union;
+            }
+        }
+
+        BitSet matches = (BitSet) base.clone();
+        for (BitSet selection : selections) {
+            if (selection != null) {
+                matches.and(selection);
+            }
+        }
+
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (int facet = 0; facet < FACETS.length; facet++) {
+            BitSet others = matches;
+            if (selections[facet] != null) {
+                others = (BitSet) base.clone();
+                for (int other = 0; other < FACETS.length; other++) {
+                    if (other != facet && selections[other] != null) {
+                        others.and(selections[other]);
+                    }
+                }
+            }
+            Map<String, Integer> values = new TreeMap<>();
+            for (Map.Entry<String, BitSet> value : facets.get(facet).entrySet()) {
+                BitSet bits = (BitSet) value.getValue().clone();
+                bits.and(others);
+                int count = bits.cardinality();
+                if (count > 0) {
+                    values.put(value.getKey(), count);
+                }
+            }
+            counts.put(FACETS[facet], values);
+        }
+
+        // Montículo con los primeros de la página, el último en la cabeza para descartarlo al llegar uno anterior
+        PriorityQueue<Entry> first = new PriorityQueue<>(limit + 2, ORDER.reversed());
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            Entry entry = entries.get(slot);
+            if (afterName != null && !isAfter(entry, afterName, afterId)) {
+                continue;
+            }
+            first.add(entry);
+            // Se guarda uno más para saber si hay página siguiente
+            if (first.size() > limit + 1) {
+                first.poll();
+            }
+        }
+        List<Entry> page = new ArrayList<>(first);
+        page.sort(ORDER);
+        boolean hasNext = page.size() > limit;
+        List<Match> items = page.stream().limit(limit).map(entry -> new Match(entry.spellId(), entry.folded())).toList();
+        return new Result(items, hasNext, matches.cardinality(), counts);
+    }
+
+    private static boolean isAfter(Entry entry, String afterName, long afterId) {
+        int compared = entry.folded().compareTo(afterName);
+        return compared > 0 || compared == 0 && entry.spellId() > afterId;
+    }
+
+    private void put(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            remove(entry.spellId());
+            int slot;
+            if (freeSlots.isEmpty()) {
+                slot = entries.size();
+                entries.add(entry);
+            } else {
+                slot = freeSlots.pop();
+                entries.set(slot, entry);
+            }
+            slotsById.put(entry.spellId(), slot);
+            for (int facet = 0; facet < FACETS.length; facet++) {
+                if (entry.values()[facet] != null) {
+                    facets.get(facet).computeIfAbsent(entry.values()[facet], key -> new BitSet()).set(slot);
+                }
+            }
+            ownerScopes.computeIfAbsent(entry.userId(), user -> new BitSet()).set(slot);
+            if (entry.publicVisible() && !entry.official()) {
+                publicScope.set(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long spellId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotsById.remove(spellId);
+            if (slot == null) {
+                return;
+            }
+            Entry entry = entries.get(slot);
+            for (int facet = 0; facet < FACETS.length; facet++) {
+                String key = entry.values()[facet];
+                if (key != null) {
+                    BitSet bits = facets.get(facet).get(key);
+                    bits.clear(slot);
+                    if (bits.isEmpty()) {
+                        facets.get(facet).remove(key);
+                    }
+                }
+            }
+            BitSet owned = ownerScopes.get(entry.userId());
+            owned.clear(slot);
+            if (owned.isEmpty()) {
+                ownerScopes.remove(entry.userId());
+            }
+            publicScope.clear(slot);
+            entries.set(slot, null);
+            freeSlots.push(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Entry entry(SpellSearchView spell) {
+        return new Entry(spell.getId(), spell.getUserId(), Boolean.TRUE.equals(spell.getPublicVisible()),
+                Boolean.TRUE.equals(spell.getOfficial()), SpellTextNormalizer.fold(spell.getName()),
+                values(spell.getLevel(), spell.getSchool(), spell.getDamageType(),
+                        Boolean.TRUE.equals(spell.getConcentration()), Boolean.TRUE.equals(spell.getRitual())));
+    }
+
+    private static String[] values(Integer level, String school, SpellDamageType damageType, boolean concentration,
+                                   boolean ritual) {
+        return new String[]{
+                level == null ? null : level.toString(),
+                school == null || school.isBlank() ? null : schoolKey(school),
+                damageType == null ? null : damageType.name(),
+                Boolean.toString(concentration),
+                Boolean.toString(ritual)
+        };
+    }
+
+    private static String schoolKey(String school) {
+        return SpellTextNormalizer.fold(school).strip();
+    }
+
+    private static List<Map<String, BitSet>> emptyFacets() {
+        List<Map<String, BitSet>> empty = new ArrayList<>(FACETS.length);
+        for (int i = 0; i < FACETS.length; i++) {
+            empty.add(new HashMap<>());
+        }
+        return empty;
+    }
+}
@@ -0,0 +1,189 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellImportResultDto;
+import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Importación masiva de hechizos de un usuario desde NDJSON (un hechizo por línea, con el mismo formato que
+ * {@link SpellDto}).
+ * <p>
+ * Las líneas se leen y validan según llegan y se guardan por bloques, cada uno en su propia transacción con las
+ * inserciones agrupadas en lotes JDBC. Tras cada bloque se vacía el contexto de persistencia, así que la memoria no
+ * depende del número de líneas. Una línea que no es válida o que la bd rechaza se anota como error con su número y no
+ * impide guardar las demás: si falla un bloque se repite fila a fila para aislar las culpables.
+ */
+@Service
+public class SpellImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(SpellImportService.class);
+
+    private record Row(long line, SpellDto dto) {
+    }
+
+    private final SpellRepository spellRepository;
+    private final SpellScopeVersions scopeVersions;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader reader;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SpellImportService(SpellRepository spellRepository, SpellScopeVersions scopeVersions,
+                              ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper,
+                              @Value("${datosdados.spells.import.chunk-size:500}") int chunkSize,
+                              @Value("${datosdados.spells.import.max-reported-errors:1000}") int maxReportedErrors) {
+        this.spellRepository = spellRepository;
+        this.scopeVersions = scopeVersions;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reader = objectMapper.readerFor(SpellDto.class);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Importa los hechizos de un NDJSON como hechizos nuevos del usuario. Se ignoran el id y el usuario de cada línea
+     * y las líneas en blanco
+     *
+     * @param user   Usuario al que pertenecerán los hechizos
+     * @param ndjson Contenido, se lee hasta el final
+     * @return Número de hechizos importados y errores por línea
+     * @throws IOException Si falla la lectura del contenido
+     */
+    public SpellImportResultDto importSpells(UserEntity user, Reader ndjson) throws IOException {
+        long start = System.currentTimeMillis();
+        SpellImportResultDto result = new SpellImportResultDto();
+        BufferedReader lines = ndjson instanceof BufferedReader buffered ? buffered : new BufferedReader(ndjson);
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                SpellDto dto = reader.readValue(line);
+                // Se valida ya para informar del error aunque el bloque no se guarde hasta más tarde
+                dto.toEntity(user);
+                chunk.add(new Row(lineNumber, dto));
+            } catch (JsonProcessingException e) {
+                reportError(result, lineNumber, "JSON no válido: " + e.getOriginalMessage());
+            } catch (InvalidInputDataException e) {
+                reportError(result, lineNumber, e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                saveChunk(user, chunk, result);
+            }
+        }
+        saveChunk(user, chunk, result);
+        log.info("Importados {} hechizos del usuario {} con {} errores en {} ms", result.getImported(), user.getId(),
+                result.getFailed(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void saveChunk(UserEntity user, List<Row> chunk, SpellImportResultDto result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<SpellChangedEvent> events;
+        try {
+            events = transactionTemplate.execute(status -> insert(user, chunk));
+        } catch (RuntimeException e) {
+            // Algún hechizo del bloque no se puede guardar, se repite fila a fila para saber cuál
+            events = new ArrayList<>(chunk.size());
+            for (Row row : chunk) {
+                try {
+                    events.addAll(transactionTemplate.execute(status -> insert(user, List.of(row))));
+                } catch (RuntimeException rowError) {
+                    String message = NestedExceptionUtils.getMostSpecificCause(rowError).getMessage();
+                    reportError(result, row.line(), firstLine(message));
+                }
+            }
+        }
+        chunk.clear();
+        result.setImported(result.getImported() + events.size());
+
+        Set<String> scopes = new LinkedHashSet<>();
+        scopes.add(SpellScopeVersions.user(user.getId()));
+        for (SpellChangedEvent event : events) {
+            if (event.spell().isPublicVisible()) {
+                scopes.add(SpellScopeVersions.PUBLIC);
+            }
+            eventPublisher.publishEvent(event);
+        }
+        if (!events.isEmpty()) {
+            scopeVersions.bump(scopes);
+        }
+    }
+
+    /**
+     * Inserta las filas en la transacción actual y vacía el contexto de persistencia
+     *
+     * @return Eventos de los hechizos creados, a publicar cuando la transacción se confirme
+     */
+    private List<SpellChangedEvent> insert(UserEntity user, List<Row> rows) {
+        List<SpellEntity> spells = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            // Entidades nuevas en cada intento, las de un intento que ha fallado ya tienen id
+            spells.add(row.dto().toEntity(user));
+        }
+        spellRepository.saveAll(spells);
+        spellRepository.flush();
+        List<SpellChangedEvent> events = new ArrayList<>(spells.size());
+        for (SpellEntity spell : spells) {
+            events.add(new SpellChangedEvent(spell.getId(), spell.toDTO()));
+        }
+        entityManager.clear();
+        return events;
+    }
+
+    /**
+     * Los mensajes de la bd suelen incluir la sentencia SQL en las líneas siguientes
+     */
+    private static String firstLine(String message) {
+        if (message == null) {
+            return "Error al guardar el hechizo";
+        }
+        int end = message.indexOf('\n');
+        return end < 0 ? message : message.substring(0, end).trim();
+    }
+
+    private void reportError(SpellImportResultDto result, long line, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < maxReportedErrors) {
+            result.getErrors().add(new SpellImportResultDto.RowError(line, message));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.SpellScopeVersionEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellScopeVersionRepository;
+import com.YagoRueda.Datos.Dados.repositories.SpellScopeVersionView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versiones de los listados de hechizos, con las que se construyen los {@code ETag} y {@code Last-Modified} de las
+ * respuestas. Un hechizo suelto no necesita ninguna: su versión es la de la propia entidad, {@link Version#of(long)}.
+ * <p>
+ * Cada listado (los hechizos de un usuario, los públicos y los oficiales) tiene un contador en bd que se incrementa con
+ * cada cambio que le afecta. El incremento se hace al confirmar el cambio en una transacción propia y corta, para que
+ * las escrituras de distintos usuarios no esperen unas a otras por la fila de los públicos u oficiales hasta que
+ * confirman; mientras tanto, un cliente puede recibir los datos nuevos con la versión anterior, lo que solo le cuesta
+ * una descarga más al cambiar la versión.
+ * <p>
+ * Cada nodo guarda además una copia en memoria: se carga entera al arrancar, se actualiza con los cambios propios y se
+ * recarga periódicamente con los de otros nodos, así que comprobar si un cliente tiene la última versión no necesita
+ * bd. Los cambios hechos en otro nodo se ven aquí con el retraso del intervalo de recarga.
+ */
+@Component
+public class SpellScopeVersions {
+
+    public static final String PUBLIC = "public";
+    public static final String OFFICIAL = "official";
+
+    private static final Logger log = LoggerFactory.getLogger(SpellScopeVersions.class);
+
+    /**
+     * Versión de un ámbito
+     *
+     * @param version    Contador de cambios, 0 si el ámbito no ha cambiado nunca
+     * @param modifiedAt Momento del último cambio, {@code null} si no ha cambiado nunca
+     */
+    public record Version(long version, Instant modifiedAt) {
+
+        static final Version INITIAL = new Version(0, null);
+
+        /**
+         * Valor de la cabecera {@code ETag}. Incluye la fecha, si se conoce, para no repetirse si se reinician los
+         * contadores y el formato de la respuesta, porque JSON, CBOR y Smile son representaciones distintas. Es débil porque la misma
+         * respuesta puede ir o no comprimida con gzip según el cliente y su tamaño
+         *
+         * @param representation Formato de la respuesta, por ejemplo {@code json} o {@code cbor}
+         * @return El valor
+         */
+        public String etag(String representation) {
+            String value = modifiedAt == null ? String.valueOf(version) : version + "-" + modifiedAt.toEpochMilli();
+            return "W/\"" + value + "-" + representation + "\"";
+        }
+
+        /**
+         * @return Fecha para la cabecera {@code Last-Modified} en milisegundos, -1 si no se conoce
+         */
+        public long lastModified() {
+            return modifiedAt == null ? -1 : modifiedAt.toEpochMilli();
+        }
+
+        /**
+         * Versión de un hechizo suelto a partir del contador de bloqueo optimista de la entidad, que cambia con cada
+         * modificación. No tiene fecha
+         *
+         * @param spellVersion {@code SpellEntity.version}
+         * @return La versión
+         */
+        public static Version of(long spellVersion) {
+            return new Version(spellVersion, null);
+        }
+
+        static Version of(SpellScopeVersionView view) {
+            return view.getVersion() > 0 ? new Version(view.getVersion(), view.getModifiedAt()) : INITIAL;
+        }
+    }
+
+    private final SpellScopeVersionRepository repository;
+    private final TransactionTemplate ownTransaction;
+    private final Duration refreshOverlap;
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+    /**
+     * Inicio de la última recarga, {@code null} hasta que se cargan todas las versiones por primera vez
+     */
+    private volatile Instant loadedAt;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public SpellScopeVersions(SpellScopeVersionRepository repository, PlatformTransactionManager transactionManager,
+                              @Value("${datosdados.spells.versions.refresh-overlap:1m}") Duration refreshOverlap) {
+        this.repository = repository;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.refreshOverlap = refreshOverlap;
+    }
+
+    public static String user(long userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * Listados en los que aparece un hechizo
+     *
+     * @param spell El hechizo
+     * @return Los de su dueño y los públicos u oficiales si es uno de ellos
+     */
+    public static Set<String> scopesOf(SpellEntity spell) {
+        Set<String> scopes = new LinkedHashSet<>();
+        scopes.add(user(spell.getUser().getId()));
+        if (spell.isOfficial()) {
+            scopes.add(OFFICIAL);
+        } else if (spell.isPublicVisible()) {
+            scopes.add(PUBLIC);
+        }
+        return scopes;
+    }
+
+    /**
+     * Devuelve la versión actual de un ámbito, de memoria o de bd si aún no se han cargado
+     *
+     * @param scope El ámbito
+     * @return Su versión, la inicial si nunca ha cambiado
+     */
+    public Version current(String scope) {
+        return cached(scope).orElseGet(() -> stored(scope));
+    }
+
+    /**
+     * Lee la versión de un ámbito directamente de bd
+     *
+     * @param scope El ámbito
+     * @return Su versión, la inicial si nunca ha cambiado
+     */
+    public Version stored(String scope) {
+        return repository.findVersion(scope).map(Version::of).orElse(Version.INITIAL);
+    }
+
+    /**
+     * Devuelve la versión de un ámbito solo si está en memoria, sin acceder nunca a bd
+     *
+     * @param scope El ámbito
+     * @return Su versión, la inicial si nunca ha cambiado, o vacío si aún no se han cargado las versiones
+     */
+    public Optional<Version> cached(String scope) {
+        if (loadedAt == null) {
+            return Optional.empty();
+        }
+        return Optional.of(versions.getOrDefault(scope, Version.INITIAL));
+    }
+
+    /**
+     * Carga en memoria las versiones que han cambiado desde la recarga anterior, todas la primera vez. Repasa además
+     * un margen hacia atrás, porque la fecha de un cambio se fija antes de confirmarlo y puede aparecer en bd más tarde
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${datosdados.spells.versions.refresh-interval:5s}",
+            initialDelayString = "${datosdados.spells.versions.refresh-interval:5s}")
+    public void refresh() {
+        Instant started = Instant.now();
+        Instant previous = loadedAt;
+        List<SpellScopeVersionView> changed = previous == null
+                ? repository.findVersionsModifiedSince(Instant.EPOCH)
+                : repository.findVersionsModifiedSince(previous.minus(refreshOverlap));
+        remember(changed);
+        loadedAt = started;
+        log.debug("Versiones de hechizos recargadas: {} cambios, {} en memoria", changed.size(), versions.size());
+    }
+
+    /**
+     * Incrementa la versión de los ámbitos afectados por un cambio. Si hay una transacción en curso se hace al
+     * confirmarla, para que quien lea la versión nueva lea también los datos nuevos, y nunca si se deshace. Los
+     * ámbitos de todos los cambios de la transacción se incrementan juntos, una vez cada uno.
+     * <p>
+     * El incremento y la lectura de las versiones resultantes van en una sola transacción propia. Los ámbitos que aún
+     * no existen se crean aparte, cada uno en la suya, para que si otro nodo los crea a la vez el error de clave
+     * duplicada no deshaga el resto. Si falla el cambio ya está confirmado: se registra y la versión queda sin
+     * incrementar hasta el siguiente cambio del ámbito
+     *
+     * @param scopes Los ámbitos
+     */
+    public void bump(Collection<String> scopes) {
+        if (scopes.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            increment(new LinkedHashSet<>(scopes));
+            return;
+        }
+        // Todos los cambios de la transacción se acumulan en un solo incremento
+        @SuppressWarnings("unchecked")
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Set<String> changed = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, changed);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(SpellScopeVersions.this);
+                    if (status == STATUS_COMMITTED) {
+                        increment(changed);
+                    }
+                }
+            });
+            pending = changed;
+        }
+        pending.addAll(scopes);
+    }
+
+    private void increment(Set<String> scopes) {
+        // Misma precisión con la que se construye el ETag
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        try {
+            List<SpellScopeVersionView> bumped = new ArrayList<>(incrementExisting(scopes, now));
+            Set<String> missing = new LinkedHashSet<>(scopes);
+            bumped.forEach(view -> missing.remove(view.getScope()));
+            if (!missing.isEmpty()) {
+                missing.forEach(scope -> create(scope, now));
+                bumped.addAll(incrementExisting(missing, now));
+            }
+            remember(bumped);
+        } catch (DataAccessException e) {
+            log.warn("No se han podido incrementar las versiones de {}", scopes, e);
+        }
+    }
+
+    private List<SpellScopeVersionView> incrementExisting(Set<String> scopes, Instant now) {
+        return ownTransaction.execute(status -> {
+            repository.increment(scopes, now);
+            return repository.findVersions(scopes);
+        });
+    }
+
+    /**
+     * Guarda versiones en memoria sin retroceder nunca, las recargas pueden traer versiones más antiguas que las que
+     * ya ha guardado este nodo al confirmar sus cambios
+     */
+    private void remember(Collection<SpellScopeVersionView> found) {
+        for (SpellScopeVersionView view : found) {
+            Version version = Version.of(view);
+            versions.merge(view.getScope(), version,
+                    (known, loaded) -> loaded.version() > known.version() ? loaded : known);
+        }
+    }
+
+    /**
+     * Crea un ámbito con la versión 0 y lo confirma en bd, si ya existe no hace nada
+     */
+    private void create(String scope, Instant now) {
+        try {
+            ownTransaction.executeWithoutResult(status -> {
+                SpellScopeVersionEntity version = new SpellScopeVersionEntity();
+                version.setScope(scope);
+                version.setVersion(0);
+                version.setModifiedAt(now);
+                // persist y no save, que con id asignado haría un merge y podría pisar la versión de otro nodo. El
+                // insert se lanza al confirmar, donde el error de clave duplicada se traduce a la excepción de Spring
+                entityManager.persist(version);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Otro nodo lo ha creado a la vez
+        }
+    }
+}
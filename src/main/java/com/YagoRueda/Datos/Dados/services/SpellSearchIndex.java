@@ -0,0 +1,254 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.SpellSearchView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Índice invertido en memoria sobre el nombre y la descripción de los hechizos.
+ * <p>
+ * Cada palabra normalizada con {@link SpellTextNormalizer} apunta a los hechizos que la contienen y al peso con el
+ * que aparece en cada uno, contando más las del nombre que las de la descripción. Las búsquedas exigen que aparezcan
+ * todas las palabras pedidas y ordenan los resultados con BM25. El índice se construye completo al arrancar y después
+ * se actualiza hechizo a hechizo con cada {@link SpellChangedEvent}.
+ */
+@Component
+public class SpellSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SpellSearchIndex.class);
+
+    private static final int NAME_WEIGHT = 3;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * Datos de un hechizo indexado
+     *
+     * @param userId        Dueño del hechizo
+     * @param publicVisible Si lo pueden ver otros usuarios
+     * @param length        Número de palabras ponderado
+     * @param terms         Palabras distintas del hechizo, para poder sacarlo del índice
+     */
+    private record Document(long userId, boolean publicVisible, int length, Set<String> terms) {
+    }
+
+    /**
+     * Resultado de una búsqueda
+     *
+     * @param spellId Id del hechizo
+     * @param score   Relevancia, mayor es mejor
+     */
+    public record Hit(long spellId, double score) {
+    }
+
+    private final SpellRepository spellRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    // Cambios recibidos mientras se reconstruye el índice, se aplican al terminar
+    private volatile boolean rebuilding;
+    private final Queue<SpellChangedEvent> changesDuringRebuild = new ConcurrentLinkedQueue<>();
+
+    public SpellSearchIndex(SpellRepository spellRepository) {
+        this.spellRepository = spellRepository;
+    }
+
+    /**
+     * Construye el índice desde cero leyendo todos los hechizos de bd. Se repite cuando la carga de los hechizos
+     * oficiales termina después del arranque, y dos reconstrucciones no se solapan
+     */
+    @EventListener({ApplicationReadyEvent.class, OfficialSpellsLoadedEvent.class})
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        SpellSearchIndex fresh = new SpellSearchIndex(spellRepository);
+        try (Stream<SpellSearchView> spells = spellRepository.streamSearchViews()) {
+            spells.forEach(spell -> fresh.put(spell.getId(), spell.getUserId(),
+                    Boolean.TRUE.equals(spell.getPublicVisible()), spell.getName(), spell.getDescription()));
+        }
+        lock.writeLock().lock();
+        try {
+            postings = fresh.postings;
+            documents = fresh.documents;
+            totalLength = fresh.totalLength;
+            // Los cambios confirmados durante la reconstrucción se aplican antes de que se pueda leer el índice nuevo
+            SpellChangedEvent change;
+            while ((change = changesDuringRebuild.poll()) != null) {
+                apply(change);
+            }
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Índice de búsqueda construido con {} hechizos y {} palabras en {} ms",
+                size(), fresh.postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Actualiza el índice con un hechizo creado, modificado o eliminado. Si el cambio se hace en una transacción se
+     * aplica al confirmarla, para que el índice nunca muestre cambios que se han deshecho
+     *
+     * @param event El cambio
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSpellChanged(SpellChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            // Con el cerrojo con el que termina rebuild(), para no encolar un cambio cuando ya se ha vaciado la cola
+            if (rebuilding) {
+                changesDuringRebuild.add(event);
+            } else {
+                apply(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(SpellChangedEvent event) {
+        SpellDto spell = event.spell();
+        if (event.deleted()) {
+            remove(event.spellId());
+        } else {
+            put(event.spellId(), spell.getUserId() == null ? 0 : spell.getUserId(), spell.isPublicVisible(),
+                    spell.getName(), spell.getDescription());
+        }
+    }
+
+    /**
+     * Busca los hechizos que contienen todas las palabras de la consulta y que el usuario puede ver: los públicos,
+     * que incluyen los oficiales, y los suyos
+     *
+     * @param query  Texto de búsqueda
+     * @param userId Usuario que busca
+     * @param limit  Número máximo de resultados
+     * @return Resultados ordenados de más a menos relevante
+     */
+    public List<Hit> search(String query, long userId, int limit) {
+        Set<String> terms = new LinkedHashSet<>(SpellTextNormalizer.tokenize(query));
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            List<Map<Long, Integer>> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Map<Long, Integer> list = postings.get(term);
+                if (list == null) {
+                    return List.of();
+                }
+                lists.add(list);
+            }
+            // Se recorre la lista más corta y se comprueba el resto
+            lists.sort(Comparator.comparingInt(Map::size));
+            double averageLength = documents.isEmpty() ? 1 : (double) totalLength / documents.size();
+
+            List<Hit> hits = new ArrayList<>();
+            for (Map.Entry<Long, Integer> candidate : lists.get(0).entrySet()) {
+                long spellId = candidate.getKey();
+                Document document = documents.get(spellId);
+                if (!document.publicVisible() && document.userId() != userId) {
+                    continue;
+                }
+                double score = 0;
+                for (Map<Long, Integer> list : lists) {
+                    Integer frequency = list.get(spellId);
+                    if (frequency == null) {
+                        score = -1;
+                        break;
+                    }
+                    score += bm25(frequency, list.size(), document.length(), averageLength);
+                }
+                if (score >= 0) {
+                    hits.add(new Hit(spellId, score));
+                }
+            }
+            hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparingLong(Hit::spellId));
+            return hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double bm25(int frequency, int documentFrequency, int length, double averageLength) {
+        double idf = Math.log(1 + (documents.size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private void put(long spellId, long userId, boolean publicVisible, String name, String description) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : SpellTextNormalizer.tokenize(name)) {
+            frequencies.merge(token, NAME_WEIGHT, Integer::sum);
+        }
+        for (String token : SpellTextNormalizer.tokenize(description)) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+
+        lock.writeLock().lock();
+        try {
+            remove(spellId);
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new HashMap<>()).put(spellId, frequency));
+            documents.put(spellId, new Document(userId, publicVisible, length, new HashSet<>(frequencies.keySet())));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long spellId) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.remove(spellId);
+            if (document == null) {
+                return;
+            }
+            for (String term : document.terms()) {
+                Map<Long, Integer> list = postings.get(term);
+                list.remove(spellId);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+            totalLength -= document.length();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,23 +1,111 @@
 package com.YagoRueda.Datos.Dados.services;
 
+import com.YagoRueda.Datos.Dados.Dtos.SpellBatchItemDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellBulkResultDto;
 import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellFacetPageDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellPageDto;
+import com.YagoRueda.Datos.Dados.exceptions.ConflictException;
 import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
 import com.YagoRueda.Datos.Dados.exceptions.UnauthorizedException;
 import com.YagoRueda.Datos.Dados.models.SpellEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
 import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.SpellVisibilityView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class SpellService {
 
+    // Lector de los parches: un campo desconocido o un null en un booleano es un error, no se ignora
+    private static final ObjectMapper PATCH_MAPPER = new ObjectMapper()
+            .enable(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES);
+    // Veces que se filtra una página por facetas corrigiendo el índice antes de servirla tal cual
+    private static final int FACET_PAGE_ATTEMPTS = 3;
+
     private final SpellRepository spellRepository;
+    private final OfficialSpellCatalog officialSpellCatalog;
+    private final SpellSearchIndex spellSearchIndex;
+    private final SpellSuggestIndex spellSuggestIndex;
+    private final SpellFacetIndex spellFacetIndex;
+    private final SpellScopeVersions scopeVersions;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int streamClearInterval;
+    private final int defaultSuggestSize;
+    private final int maxSuggestSize;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean connectionlessReads;
+    private final int maxBulkIds;
+    private final int maxBatchIds;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
-    public SpellService(SpellRepository spellRepository) {
+    public SpellService(SpellRepository spellRepository, OfficialSpellCatalog officialSpellCatalog,
+                        SpellSearchIndex spellSearchIndex, SpellSuggestIndex spellSuggestIndex,
+                        SpellFacetIndex spellFacetIndex, SpellScopeVersions scopeVersions,
+                        ApplicationEventPublisher eventPublisher,
+                        @Value("${datosdados.spells.page.default-size:50}") int defaultPageSize,
+                        @Value("${datosdados.spells.page.max-size:100}") int maxPageSize,
+                        @Value("${datosdados.spells.stream.clear-interval:100}") int streamClearInterval,
+                        @Value("${datosdados.spells.suggest.default-size:10}") int defaultSuggestSize,
+                        @Value("${datosdados.spells.suggest.max-size:25}") int maxSuggestSize,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${datosdados.spells.cache.connectionless-reads:true}") boolean connectionlessReads,
+                        @Value("${datosdados.spells.bulk.max-ids:1000}") int maxBulkIds,
+                        @Value("${datosdados.spells.batch.max-ids:100}") int maxBatchIds) {
         this.spellRepository = spellRepository;
+        this.officialSpellCatalog = officialSpellCatalog;
+        this.spellSearchIndex = spellSearchIndex;
+        this.spellSuggestIndex = spellSuggestIndex;
+        this.spellFacetIndex = spellFacetIndex;
+        this.scopeVersions = scopeVersions;
+        this.eventPublisher = eventPublisher;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.streamClearInterval = streamClearInterval;
+        this.defaultSuggestSize = defaultSuggestSize;
+        this.maxSuggestSize = maxSuggestSize;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.connectionlessReads = connectionlessReads;
+        this.maxBulkIds = maxBulkIds;
+        this.maxBatchIds = maxBatchIds;
     }
 
     /**
@@ -29,8 +117,10 @@ public class SpellService {
      */
     public SpellEntity createSpell(UserEntity user, SpellDto dto) {
         try {
-            SpellEntity spell = dto.toEntity(user);
-            return spellRepository.save(spell);
+            SpellEntity spell = spellRepository.save(dto.toEntity(user));
+            scopeVersions.bump(SpellScopeVersions.scopesOf(spell));
+            eventPublisher.publishEvent(new SpellChangedEvent(spell.getId(), spell.toDTO()));
+            return spell;
         } catch (InvalidInputDataException e) {
             throw new InvalidInputDataException(e.getMessage());
         }
@@ -38,56 +128,282 @@ public class SpellService {
     }
 
     /**
-     * Modifica los datos de un spell existente
+     * Modifica los datos de un spell existente. Solo se actualizan las columnas y los niveles de daño que cambian
      *
      * @param user {@code UserEntity} que representa al usuario que crea el hechizo
      * @param dto  {@code SpellDto} que representa el hechizo creado
      * @return {@code SpellEntity } que representa el hechizo modificado
      * @throws InvalidInputDataException En caso de que el id del hechizo no exista en bd
      * @throws UnauthorizedException     En caso que un usuario sin permisos intente modificar un hechizo
+     * @throws ConflictException         Si el DTO trae una versión y el hechizo ya no está en ella
      */
+    @Transactional
     public SpellEntity modifySpell(UserEntity user, SpellDto dto) throws InvalidInputDataException, UnauthorizedException {
-        SpellEntity existing = spellRepository.findById(dto.getId())
-                .orElseThrow(() -> new InvalidInputDataException("Hechizo no encontrado"));
-
-        if (!existing.getUser().equals(user)) {
-            throw new UnauthorizedException("No tienes permiso para modificar este hechizo");
-        }
+        SpellEntity existing = findOwnSpell(user, dto.getId());
+        checkVersion(existing, dto.getVersion());
+        // Si cambia la visibilidad el hechizo sale de un ámbito y entra en otro, cambian los dos
+        Set<String> scopes = new LinkedHashSet<>(SpellScopeVersions.scopesOf(existing));
         //En el caso de las modificaciones no se puede utilizar la función toEntity
         //Para la modificación de entidades JPA necesita que la referencia del objeto que sobre el que se hacen modificaciones
         //se obtenga haciendo una busqueda en el repositorio
-        existing.setName(dto.getName());
-        existing.setLevel(dto.getLevel());
-        existing.setSchool(dto.getSchool());
-        existing.setCastTime(dto.getCastTime());
-        existing.setCastRange(dto.getCastRange());
-        existing.setComponents(dto.getComponents());
-        existing.setDuration(dto.getDuration());
-        existing.setDescription(dto.getDescription());
-        existing.setConcentration(dto.isConcentration());
-        existing.setRitual(dto.isRitual());
-        existing.setPublicVisible(dto.isPublicVisible());
-        existing.setDamageByLevel(dto.getDamageByLevel());
-        existing.setDamageType(dto.getDamageType());
-        return spellRepository.save(existing);
+        copyFields(dto, existing);
+        syncDamage(existing, dto.getDamageByLevel());
+        return saveModified(existing, scopes);
+    }
+
+    /**
+     * Modifica parcialmente un hechizo con un JSON Merge Patch (RFC 7396): se cambian solo los campos presentes en el
+     * parche, y en {@code damageByLevel} un nivel con valor {@code null} se elimina y {@code null} en lugar del objeto
+     * elimina todos. Si el parche trae {@code version} tiene que ser la versión actual del hechizo
+     *
+     * @param user  Usuario que modifica el hechizo, tiene que ser su dueño
+     * @param id    Id del hechizo
+     * @param patch Parche, un objeto JSON con los campos de {@link SpellDto} a cambiar
+     * @return El hechizo modificado
+     * @throws InvalidInputDataException Si el hechizo no existe o el parche no es válido
+     * @throws UnauthorizedException     Si el usuario no es el dueño del hechizo
+     * @throws ConflictException         Si el hechizo ya no está en la versión del parche
+     */
+    @Transactional
+    public SpellEntity patchSpell(UserEntity user, long id, JsonNode patch) {
+        if (!patch.isObject()) {
+            throw new InvalidInputDataException("El parche debe ser un objeto JSON");
+        }
+        SpellEntity existing = findOwnSpell(user, id);
+        ObjectNode fields = (ObjectNode) patch.deepCopy();
+        JsonNode version = fields.remove("version");
+        if (version != null && !version.isNull()) {
+            if (!version.canConvertToLong()) {
+                throw new InvalidInputDataException("La versión debe ser un número");
+            }
+            checkVersion(existing, version.asLong());
+        }
+        if (changes(fields.remove("id"), existing.getId()) || changes(fields.remove("userId"), existing.getUser().getId())) {
+            throw new InvalidInputDataException("No se puede cambiar el id ni el dueño de un hechizo");
+        }
+        JsonNode damage = fields.remove("damageByLevel");
+
+        Set<String> scopes = new LinkedHashSet<>(SpellScopeVersions.scopesOf(existing));
+        SpellDto patched;
+        try {
+            patched = PATCH_MAPPER.readerForUpdating(existing.toDTO()).readValue(fields);
+        } catch (IOException e) {
+            throw new InvalidInputDataException("Parche no válido: " + (e instanceof JsonProcessingException json
+                    ? json.getOriginalMessage() : e.getMessage()));
+        }
+        copyFields(patched, existing);
+        if (damage != null) {
+            patchDamage(existing, damage);
+        }
+        return saveModified(existing, scopes);
+    }
+
+    private SpellEntity findOwnSpell(UserEntity user, Long id) {
+        SpellEntity existing = spellRepository.findById(id)
+                .orElseThrow(() -> new InvalidInputDataException("Hechizo no encontrado"));
+        if (existing.getUser().getId() != user.getId()) {
+            throw new UnauthorizedException("No tienes permiso para modificar este hechizo");
+        }
+        return existing;
+    }
+
+    private static void checkVersion(SpellEntity spell, Long expected) {
+        if (expected != null && expected != spell.getVersion()) {
+            throw new ConflictException("El hechizo ha sido modificado desde la versión " + expected
+                    + ", la actual es la " + spell.getVersion());
+        }
+    }
+
+    private static boolean changes(JsonNode value, long current) {
+        return value != null && !value.isNull() && value.asLong() != current;
+    }
+
+    /**
+     * Copia los campos del DTO salvo el daño por nivel. Hibernate compara con el estado cargado y, con
+     * {@code @DynamicUpdate}, el UPDATE solo lleva las columnas que han cambiado. Antes valida el DTO, que en un parche
+     * ya lleva los cambios aplicados
+     */
+    private static void copyFields(SpellDto dto, SpellEntity spell) {
+        dto.validate();
+        spell.setName(dto.getName());
+        spell.setLevel(dto.getLevel());
+        spell.setSchool(dto.getSchool());
+        spell.setCastTime(dto.getCastTime());
+        spell.setCastRange(dto.getCastRange());
+        spell.setComponents(dto.getComponents());
+        spell.setDuration(dto.getDuration());
+        spell.setDescription(dto.getDescription());
+        spell.setConcentration(dto.isConcentration());
+        spell.setRitual(dto.isRitual());
+        spell.setPublicVisible(dto.isPublicVisible());
+        spell.setDamageType(dto.getDamageType());
+    }
+
+    /**
+     * Deja el daño por nivel igual que el indicado tocando solo los niveles distintos, para que Hibernate actualice esas
+     * filas en lugar de borrar y volver a insertar la colección entera
+     */
+    private static void syncDamage(SpellEntity spell, Map<Integer, String> wanted) {
+        Map<Integer, String> current = spell.getDamageByLevel();
+        Map<Integer, String> target = wanted == null ? Map.of() : wanted;
+        current.keySet().retainAll(target.keySet());
+        target.forEach((level, damage) -> {
+            if (!Objects.equals(current.get(level), damage)) {
+                current.put(level, damage);
+            }
+        });
+    }
+
+    private static void patchDamage(SpellEntity spell, JsonNode patch) {
+        Map<Integer, String> current = spell.getDamageByLevel();
+        if (patch.isNull()) {
+            current.clear();
+            return;
+        }
+        if (!patch.isObject()) {
+            throw new InvalidInputDataException("El daño por nivel debe ser un objeto");
+        }
+        for (Map.Entry<String, JsonNode> entry : patch.properties()) {
+            int level;
+            try {
+                level = Integer.parseInt(entry.getKey());
+            } catch (NumberFormatException e) {
+                throw new InvalidInputDataException("Nivel de daño no válido: " + entry.getKey());
+            }
+            JsonNode damage = entry.getValue();
+            if (damage.isNull()) {
+                current.remove(level);
+            } else if (!damage.isTextual()) {
+                throw new InvalidInputDataException("El daño del nivel " + level + " debe ser un texto");
+            } else if (!damage.asText().equals(current.get(level))) {
+                current.put(level, damage.asText());
+            }
+        }
+    }
+
+    /**
+     * Escribe ya los cambios, para que un conflicto de versión salte antes de avisar a los índices
+     */
+    private SpellEntity saveModified(SpellEntity spell, Set<String> scopes) {
+        SpellEntity saved = spellRepository.saveAndFlush(spell);
+        scopes.addAll(SpellScopeVersions.scopesOf(saved));
+        scopeVersions.bump(scopes);
+        eventPublisher.publishEvent(new SpellChangedEvent(saved.getId(), saved.toDTO()));
+        return saved;
     }
 
     /**
      * Elimina un hechizo de la base de datos
      *
+     * @param user    Usuario que elimina el hechizo, tiene que ser su dueño
      * @param spellID Id del hechizo que se eliminara
-     * @return {@code SpellEntity } que representa el hechizo eliminado
      * @throws InvalidInputDataException En caso de que el id del hechizo no exista en bd
+     * @throws UnauthorizedException     En caso que un usuario sin permisos intente eliminar el hechizo
      */
-    public void deleteSpell(long spellID) throws InvalidInputDataException {
+    public void deleteSpell(UserEntity user, long spellID) throws InvalidInputDataException, UnauthorizedException {
         Optional<SpellEntity> deleteSpell = spellRepository.findById(spellID);
         if (deleteSpell.isEmpty()) {
             throw new InvalidInputDataException("Hechizo no encontrado");
         }
+        if (deleteSpell.get().getUser().getId() != user.getId()) {
+            throw new UnauthorizedException("No tienes permiso para eliminar este hechizo");
+        }
         spellRepository.delete(deleteSpell.get());
+        scopeVersions.bump(SpellScopeVersions.scopesOf(deleteSpell.get()));
+        eventPublisher.publishEvent(new SpellChangedEvent(spellID, null));
 
     }
 
+    /**
+     * Elimina de una vez los hechizos indicados que son del usuario, con una sola sentencia. Los que no existen o son de
+     * otro usuario se ignoran y se devuelven como no afectados, sin distinguir entre los dos casos
+     *
+     * @param user Dueño de los hechizos
+     * @param ids  ids de los hechizos, como mucho {@code datosdados.spells.bulk.max-ids}
+     * @return ids eliminados e ids ignorados
+     * @throws InvalidInputDataException Si no hay ids o hay demasiados
+     */
+    @Transactional
+    public SpellBulkResultDto bulkDeleteSpells(UserEntity user, List<Long> ids) {
+        Set<Long> requested = bulkIds(ids);
+        List<SpellVisibilityView> owned = spellRepository.findOwnedVisibility(user, requested);
+        if (!owned.isEmpty()) {
+            spellRepository.deleteOwned(user, requested);
+        }
+        List<Long> affected = owned.stream().map(SpellVisibilityView::getId).sorted().toList();
+        bumpBulkScopes(user, owned, false);
+        affected.forEach(id -> eventPublisher.publishEvent(new SpellChangedEvent(id, null)));
+        return bulkResult(requested, affected);
+    }
+
+    /**
+     * Cambia de una vez la visibilidad de los hechizos indicados que son del usuario, con una sola sentencia que solo
+     * toca los que no la tienen ya
+     *
+     * @param user          Dueño de los hechizos
+     * @param ids           ids de los hechizos, como mucho {@code datosdados.spells.bulk.max-ids}
+     * @param publicVisible Visibilidad nueva
+     * @return ids modificados e ids ignorados porque no existen, son de otro usuario o ya tenían esa visibilidad
+     * @throws InvalidInputDataException Si no hay ids o hay demasiados
+     */
+    @Transactional
+    public SpellBulkResultDto bulkSetVisibility(UserEntity user, List<Long> ids, boolean publicVisible) {
+        Set<Long> requested = bulkIds(ids);
+        List<SpellVisibilityView> changing = spellRepository.findOwnedVisibility(user, requested).stream()
+                .filter(view -> view.getPublicVisible() != publicVisible)
+                .toList();
+        List<Long> affected = changing.stream().map(SpellVisibilityView::getId).sorted().toList();
+        if (!affected.isEmpty()) {
+            spellRepository.updateOwnedVisibility(user, affected, publicVisible);
+            // Los índices necesitan el hechizo completo
+            spellRepository.findWithDamageByIdIn(affected).forEach(spell ->
+                    eventPublisher.publishEvent(new SpellChangedEvent(spell.getId(), spell.toDTO())));
+        }
+        bumpBulkScopes(user, changing, true);
+        return bulkResult(requested, affected);
+    }
+
+    private Set<Long> bulkIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new InvalidInputDataException("Indica al menos un id de hechizo");
+        }
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        requested.remove(null);
+        if (requested.isEmpty()) {
+            throw new InvalidInputDataException("Indica al menos un id de hechizo");
+        }
+        if (requested.size() > maxBulkIds) {
+            throw new InvalidInputDataException("Como mucho se pueden indicar " + maxBulkIds + " hechizos a la vez");
+        }
+        return requested;
+    }
+
+    /**
+     * Aumenta las versiones de los listados de los hechizos tocados. Al cambiar la visibilidad un hechizo que no es
+     * oficial entra o sale de los públicos, así que ese ámbito cambia siempre
+     */
+    private void bumpBulkScopes(UserEntity user, List<SpellVisibilityView> spells, boolean visibilityChanged) {
+        if (spells.isEmpty()) {
+            return;
+        }
+        Set<String> scopes = new LinkedHashSet<>();
+        scopes.add(SpellScopeVersions.user(user.getId()));
+        for (SpellVisibilityView spell : spells) {
+            if (spell.getOfficial()) {
+                scopes.add(SpellScopeVersions.OFFICIAL);
+            } else if (visibilityChanged || spell.getPublicVisible()) {
+                scopes.add(SpellScopeVersions.PUBLIC);
+            }
+        }
+        scopeVersions.bump(scopes);
+    }
+
+    private static SpellBulkResultDto bulkResult(Set<Long> requested, List<Long> affected) {
+        Set<Long> skipped = new LinkedHashSet<>(requested);
+        affected.forEach(skipped::remove);
+        return new SpellBulkResultDto(affected, new ArrayList<>(skipped));
+    }
+
 
     /**
      * Devuelve una lista de hechizos con todos los hechizos de un usuario, se puede filtrar los hechizos devueltos por nombre utilizando el parametro search
@@ -100,27 +416,355 @@ public class SpellService {
         if (search == null || search.isEmpty()) {
             return spellRepository.findByUser(user).stream().map(SpellEntity::toDTO).toList();
         } else {
-            return spellRepository.findByUserAndNameStartingWithIgnoreCase(user, search).stream().map(SpellEntity::toDTO).toList();
+            return spellRepository.findByUserAndNameFoldedStartingWith(user, normalizeSearch(search)).stream().map(SpellEntity::toDTO).toList();
         }
     }
 
     /**
-     * Devuelve un hechizo específico con base en al ID que se le pase por parametro
+     * Devuelve un hechizo específico con base en al ID que se le pase por parametro. Si está en la caché de segundo
+     * nivel se sirve desde ella, sin consultas y, con {@code datosdados.spells.cache.connectionless-reads}, sin pedir
+     * conexión a la bd. Si no, se lee con su daño por nivel en una sola consulta, que lo deja en la caché
      *
      * @param id Id del hechizo que devolvera
      * @return DTO con la información del hechizo
      */
     public SpellDto getSpell(long id) {
-        Optional<SpellEntity> opt = spellRepository.findById(id);
-        return opt.map(SpellEntity::toDTO).orElse(null);
+        EntityManagerFactory entityManagerFactory = entityManager.getEntityManagerFactory();
+        if (!entityManagerFactory.getCache().contains(SpellEntity.class, id)) {
+            Optional<SpellEntity> opt = spellRepository.findWithDamageById(id);
+            return opt.map(SpellEntity::toDTO).orElse(null);
+        }
+        if (!connectionlessReads) {
+            return readOnlyTransaction.execute(status -> cachedSpell(entityManager, id));
+        }
+        // Sin transacción Hibernate solo pide conexión si tiene que lanzar una consulta. Se usa la sesión de la
+        // transacción o de la petición si la hay, para ver sus cambios aún sin confirmar
+        EntityManager current = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        if (current != null) {
+            return cachedSpell(current, id);
+        }
+        try (EntityManager own = entityManagerFactory.createEntityManager()) {
+            return cachedSpell(own, id);
+        }
     }
 
+    /**
+     * Lee un hechizo por id, que pasa por la caché de segundo nivel, e inicializa su daño por nivel al copiarlo al DTO
+     */
+    private static SpellDto cachedSpell(EntityManager em, long id) {
+        SpellEntity spell = em.find(SpellEntity.class, id);
+        return spell == null ? null : spell.toDTO();
+    }
+
+    /**
+     * Devuelve los hechizos oficiales cuyo nombre empieza por el filtro. Se sirven desde {@link OfficialSpellCatalog}
+     * sin acceder a bd, salvo si el catálogo aún no se ha cargado
+     *
+     * @param search Filtro por el que empieza el nombre del hechizo, puede ser vacío o nulo
+     * @return lista de DTO's con la información de los hechizos
+     */
     public List<SpellDto> getWOTSpells(String search){
-        return spellRepository.findWOTSpells(search).stream().map(SpellEntity::toDTO).toList();
+        if (officialSpellCatalog.isLoaded()) {
+            return officialSpellCatalog.search(search);
+        }
+        return spellRepository.findWOTSpells(normalizeSearch(search)).stream().map(SpellEntity::toDTO).toList();
     }
 
     public List<SpellDto> getPublicSpells(String search){
-        return spellRepository.findPublicSpells(search).stream().map(SpellEntity::toDTO).toList();
+        return spellRepository.findPublicSpells(normalizeSearch(search)).stream().map(SpellEntity::toDTO).toList();
+    }
+
+    /**
+     * Busca por nombre y descripción entre los hechizos públicos, que incluyen los oficiales, y los del propio usuario
+     * usando {@link SpellSearchIndex}
+     *
+     * @param userId Id del usuario que busca
+     * @param query  Palabras a buscar, deben aparecer todas
+     * @param limit  Número máximo de resultados, se limita al máximo configurado
+     * @return lista de DTO's ordenada de más a menos relevante
+     * @throws InvalidInputDataException Si la búsqueda no contiene ninguna palabra o el límite no es válido
+     */
+    public List<SpellDto> searchSpells(long userId, String query, Integer limit) throws InvalidInputDataException {
+        if (SpellTextNormalizer.tokenize(query).isEmpty()) {
+            throw new InvalidInputDataException("La búsqueda debe contener alguna palabra");
+        }
+        List<Long> ids = spellSearchIndex.search(query, userId, pageLimit(limit).max()).stream()
+                .map(SpellSearchIndex.Hit::spellId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // El índice solo elige candidatos: si no se enteró de un cambio hecho desde otro nodo, la bd descarta los que
+        // el usuario ya no puede ver
+        Map<Long, SpellDto> found = new HashMap<>();
+        spellRepository.findVisibleWithDamageByIdIn(ids, userId).forEach(spell -> found.put(spell.getId(), spell.toDTO()));
+        // Se conserva el orden de relevancia del índice
+        return ids.stream().map(found::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Devuelve varios hechizos por id en una sola consulta, con su daño por nivel. Solo se devuelven los que puede ver
+     * el usuario: los suyos, los públicos y los oficiales; el resto se marcan como no encontrados igual que los que no
+     * existen
+     *
+     * @param userId Id del usuario que los pide
+     * @param ids    ids de los hechizos, como mucho {@code datosdados.spells.batch.max-ids}
+     * @return Un resultado por id distinto, en el orden pedido
+     * @throws InvalidInputDataException Si no hay ids o hay demasiados
+     */
+    @Transactional(readOnly = true)
+    public List<SpellBatchItemDto> getSpells(long userId, List<Long> ids) throws InvalidInputDataException {
+        if (ids == null || ids.isEmpty()) {
+            throw new InvalidInputDataException("Indica al menos un id de hechizo");
+        }
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        requested.remove(null);
+        if (requested.size() > maxBatchIds) {
+            throw new InvalidInputDataException("Como mucho se pueden pedir " + maxBatchIds + " hechizos a la vez");
+        }
+        Map<Long, SpellDto> found = new HashMap<>();
+        if (!requested.isEmpty()) {
+            spellRepository.findVisibleWithDamageByIdIn(requested, userId)
+                    .forEach(spell -> found.put(spell.getId(), spell.toDTO()));
+        }
+        List<SpellBatchItemDto> items = new ArrayList<>(requested.size());
+        for (Long id : requested) {
+            SpellDto spell = found.get(id);
+            items.add(new SpellBatchItemDto(id, spell != null, spell));
+        }
+        return items;
+    }
+
+    /**
+     * Sugiere nombres de hechizos para autocompletar a partir de un texto incompleto o mal escrito, entre los públicos,
+     * que incluyen los oficiales, y los del propio usuario. Se resuelve en memoria con {@link SpellSuggestIndex}
+     *
+     * @param userId Id del usuario que escribe
+     * @param query  Texto escrito hasta el momento
+     * @param limit  Número máximo de sugerencias, se limita al máximo configurado
+     * @return Nombres de hechizos de más a menos parecido
+     * @throws InvalidInputDataException Si el límite no es válido
+     */
+    public List<String> suggestSpellNames(long userId, String query, Integer limit) throws InvalidInputDataException {
+        if (limit != null && limit <= 0) {
+            throw new InvalidInputDataException("El número de sugerencias debe ser mayor que 0");
+        }
+        int size = limit == null ? defaultSuggestSize : Math.min(limit, maxSuggestSize);
+        return spellSuggestIndex.suggest(query, userId, size);
+    }
+
+    /**
+     * Devuelve una página de los hechizos de un usuario ordenados por nombre e id
+     *
+     * @param user   El usuario al que le pertenecen los hechizos
+     * @param search Filtro por el que empieza el nombre del hechizo, puede ser vacío o nulo
+     * @param cursor Cursor devuelto en la página anterior, nulo para la primera página
+     * @param limit  Tamaño de página pedido, se limita al máximo configurado
+     * @return La página de hechizos
+     * @throws InvalidInputDataException Si el cursor no es válido
+     */
+    public SpellPageDto getListSpellsPage(UserEntity user, String search, String cursor, Integer limit) throws InvalidInputDataException {
+        return toPage(spellRepository.findByUserAndNameFoldedStartingWithOrderByNameFoldedAscIdAsc(
+                user, normalizeSearch(search), SpellCursorCodec.decode(cursor), pageLimit(limit)));
+    }
+
+    /**
+     * Devuelve una página de los hechizos oficiales ordenados por nombre e id
+     *
+     * @see #getListSpellsPage(UserEntity, String, String, Integer)
+     */
+    public SpellPageDto getWOTSpellsPage(String search, String cursor, Integer limit) throws InvalidInputDataException {
+        return toPage(spellRepository.findByOfficialTrueAndNameFoldedStartingWithOrderByNameFoldedAscIdAsc(
+                normalizeSearch(search), SpellCursorCodec.decode(cursor), pageLimit(limit)));
+    }
+
+    /**
+     * Devuelve una página de los hechizos públicos de otros usuarios ordenados por nombre e id
+     *
+     * @see #getListSpellsPage(UserEntity, String, String, Integer)
+     */
+    public SpellPageDto getPublicSpellsPage(String search, String cursor, Integer limit) throws InvalidInputDataException {
+        return toPage(spellRepository.findByPublicVisibleTrueAndOfficialFalseAndNameFoldedStartingWithOrderByNameFoldedAscIdAsc(
+                normalizeSearch(search), SpellCursorCodec.decode(cursor), pageLimit(limit)));
+    }
+
+    /**
+     * Devuelve una página de los hechizos de un usuario filtrados por facetas y ordenados por nombre e id, junto con
+     * los recuentos de cada faceta. El filtrado se resuelve en memoria con {@link SpellFacetIndex} y solo se leen de bd
+     * los hechizos de la página
+     *
+     * @param userId Id del usuario al que le pertenecen los hechizos
+     * @param search Filtro por el que empieza el nombre del hechizo, puede ser vacío o nulo
+     * @param filter Filtro por nivel, escuela, tipo de daño, concentración y ritual
+     * @param cursor Cursor devuelto en la página anterior, nulo para la primera página
+     * @param limit  Tamaño de página pedido, se limita al máximo configurado
+     * @return La página de hechizos con los recuentos
+     * @throws InvalidInputDataException Si el cursor o el tamaño de página no son válidos
+     */
+    public SpellFacetPageDto getListSpellsFaceted(long userId, String search, SpellFacetIndex.Filter filter, String cursor,
+                                                  Integer limit) throws InvalidInputDataException {
+        Map<String, Object> after = cursorKeys(cursor);
+        String prefix = normalizeSearch(search);
+        int size = pageLimit(limit).max();
+        return facetPage(() -> spellFacetIndex.filterOwnedBy(userId, prefix, filter, (String) after.get("nameFolded"),
+                afterId(after), size), ids -> spellRepository.findOwnedWithDamageByIdIn(ids, userId));
+    }
+
+    /**
+     * Devuelve una página de los hechizos públicos de otros usuarios filtrados por facetas
+     *
+     * @see #getListSpellsFaceted(long, String, SpellFacetIndex.Filter, String, Integer)
+     */
+    public SpellFacetPageDto getPublicSpellsFaceted(String search, SpellFacetIndex.Filter filter, String cursor,
+                                                    Integer limit) throws InvalidInputDataException {
+        Map<String, Object> after = cursorKeys(cursor);
+        String prefix = normalizeSearch(search);
+        int size = pageLimit(limit).max();
+        return facetPage(() -> spellFacetIndex.filterPublic(prefix, filter, (String) after.get("nameFolded"),
+                afterId(after), size), spellRepository::findPublicWithDamageByIdIn);
+    }
+
+    /**
+     * Recorre los hechizos oficiales entregándolos uno a uno según se leen de bd, de forma que la memoria usada no
+     * depende del número de resultados. Si el catálogo oficial ya está cargado se recorre este en su lugar
+     *
+     * @param search   Filtro por el que empieza el nombre del hechizo, puede ser vacío o nulo
+     * @param consumer Receptor de cada hechizo
+     */
+    @Transactional(readOnly = true)
+    public void streamWOTSpells(String search, Consumer<SpellDto> consumer) {
+        if (officialSpellCatalog.isLoaded()) {
+            officialSpellCatalog.search(search).forEach(consumer);
+            return;
+        }
+        try (Stream<SpellEntity> spells = spellRepository.streamWOTSpells(normalizeSearch(search))) {
+            forEachClearing(spells, consumer);
+        }
+    }
+
+    /**
+     * Recorre los hechizos de un usuario entregándolos uno a uno según se leen de bd, para exportarlos
+     *
+     * @param user     El usuario al que le pertenecen los hechizos
+     * @param consumer Receptor de cada hechizo
+     * @see #streamWOTSpells(String, Consumer)
+     */
+    @Transactional(readOnly = true)
+    public void streamListSpells(UserEntity user, Consumer<SpellDto> consumer) {
+        try (Stream<SpellEntity> spells = spellRepository.streamByUser(user)) {
+            forEachClearing(spells, consumer);
+        }
+    }
+
+    /**
+     * Recorre los hechizos públicos de otros usuarios entregándolos uno a uno según se leen de bd
+     *
+     * @see #streamWOTSpells(String, Consumer)
+     */
+    @Transactional(readOnly = true)
+    public void streamPublicSpells(String search, Consumer<SpellDto> consumer) {
+        try (Stream<SpellEntity> spells = spellRepository.streamPublicSpells(normalizeSearch(search))) {
+            forEachClearing(spells, consumer);
+        }
+    }
+
+    /**
+     * Entrega los hechizos al consumidor por bloques y vacía el contexto de persistencia tras cada bloque para que no
+     * acumule todas las entidades leídas. Los daños por nivel de un bloque se cargan juntos gracias al batch fetch, en
+     * lugar de una consulta por hechizo
+     */
+    private void forEachClearing(Stream<SpellEntity> spells, Consumer<SpellDto> consumer) {
+        List<SpellEntity> chunk = new ArrayList<>(streamClearInterval);
+        spells.forEach(spell -> {
+            chunk.add(spell);
+            if (chunk.size() == streamClearInterval) {
+                flushChunk(chunk, consumer);
+            }
+        });
+        flushChunk(chunk, consumer);
+    }
+
+    private void flushChunk(List<SpellEntity> chunk, Consumer<SpellDto> consumer) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        chunk.forEach(spell -> consumer.accept(spell.toDTO()));
+        chunk.clear();
+        entityManager.clear();
+    }
+
+    private Limit pageLimit(Integer limit) throws InvalidInputDataException {
+        if (limit == null) {
+            return Limit.of(defaultPageSize);
+        }
+        if (limit <= 0) {
+            throw new InvalidInputDataException("El tamaño de página debe ser mayor que 0");
+        }
+        return Limit.of(Math.min(limit, maxPageSize));
+    }
+
+    /**
+     * Normaliza el filtro igual que {@code SpellEntity.nameFolded} para que la búsqueda use sus índices
+     */
+    private static String normalizeSearch(String search) {
+        return SpellTextNormalizer.fold(search);
+    }
+
+    /**
+     * Filtra con {@link SpellFacetIndex} y carga la página con una consulta que vuelve a comprobar el ámbito, de modo
+     * que el índice solo elige candidatos y nunca decide qué puede ver el usuario. Si la bd no devuelve algún hechizo
+     * de la página el índice estaba desactualizado: se corrigen esas entradas y se repite el filtrado para que tampoco
+     * cuenten en el total ni en las facetas
+     *
+     * @param filter  Filtrado en el índice
+     * @param visible Consulta que devuelve, de los ids indicados, los que siguen dentro del ámbito
+     */
+    private SpellFacetPageDto facetPage(Supplier<SpellFacetIndex.Result> filter,
+                                        Function<List<Long>, List<SpellEntity>> visible) {
+        for (int attempt = 1; ; attempt++) {
+            SpellFacetIndex.Result result = filter.get();
+            List<Long> ids = result.page().stream().map(SpellFacetIndex.Match::spellId).toList();
+            Map<Long, SpellDto> found = new HashMap<>();
+            if (!ids.isEmpty()) {
+                visible.apply(ids).forEach(spell -> found.put(spell.getId(), spell.toDTO()));
+            }
+            List<Long> stale = ids.stream().filter(id -> !found.containsKey(id)).toList();
+            if (stale.isEmpty() || attempt == FACET_PAGE_ATTEMPTS) {
+                return toFacetPage(result, ids, found, stale.size());
+            }
+            spellFacetIndex.reload(stale);
+        }
+    }
+
+    private static SpellFacetPageDto toFacetPage(SpellFacetIndex.Result result, List<Long> ids,
+                                                 Map<Long, SpellDto> found, int stale) {
+        List<SpellDto> items = ids.stream().map(found::get).filter(Objects::nonNull).toList();
+        String nextCursor = null;
+        if (result.hasNext()) {
+            SpellFacetIndex.Match last = result.page().get(result.page().size() - 1);
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("nameFolded", last.folded());
+            keys.put("id", last.spellId());
+            nextCursor = SpellCursorCodec.encode(ScrollPosition.forward(keys));
+        }
+        return new SpellFacetPageDto(items, nextCursor, result.total() - stale, result.facets());
+    }
+
+    private static Map<String, Object> cursorKeys(String cursor) throws InvalidInputDataException {
+        return ((KeysetScrollPosition) SpellCursorCodec.decode(cursor)).getKeys();
+    }
+
+    private static long afterId(Map<String, Object> keys) {
+        Object id = keys.get("id");
+        return id == null ? 0 : ((Number) id).longValue();
+    }
+
+    private static SpellPageDto toPage(Window<SpellEntity> window) {
+        List<SpellDto> items = window.getContent().stream().map(SpellEntity::toDTO).toList();
+        String nextCursor = window.hasNext() && !window.isEmpty()
+                ? SpellCursorCodec.encode(window.positionAt(window.size() - 1))
+                : null;
+        return new SpellPageDto(items, nextCursor);
     }
 
 }
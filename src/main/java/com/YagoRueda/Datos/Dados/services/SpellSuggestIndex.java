@@ -0,0 +1,347 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.SpellSearchView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Índice de trigramas sobre los nombres de los hechizos para autocompletar tolerando errores de escritura.
+ * <p>
+ * Cada nombre normalizado distinto se parte en trigramas, con dos espacios delante para que los primeros caracteres
+ * pesen como prefijo. Una consulta cuenta cuántos de sus trigramas comparte con cada nombre, de forma que "firbal"
+ * sigue encontrando "Fireball" aunque no sea un prefijo suyo. Los nombres ocupan posiciones consecutivas para que el
+ * recuento se haga sobre un array de enteros. Se construye al arrancar y se mantiene con cada
+ * {@link SpellChangedEvent}, igual que {@link SpellSearchIndex}.
+ */
+@Component
+public class SpellSuggestIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SpellSuggestIndex.class);
+
+    private static final String PADDING = "  ";
+    // Fracción mínima de los trigramas de la consulta que tiene que compartir un nombre para sugerirlo
+    private static final double MIN_MATCH = 0.4;
+
+    /**
+     * Nombre distinto indexado. Lo comparten todos los hechizos que se llaman igual
+     */
+    private static final class Name {
+        private final String display;
+        private final String folded;
+        private final String[] trigrams;
+        private int publicSpells;
+        // Hechizos privados con este nombre por dueño
+        private final Map<Long, Integer> privateSpells = new HashMap<>();
+
+        private Name(String display, String folded, String[] trigrams) {
+            this.display = display;
+            this.folded = folded;
+            this.trigrams = trigrams;
+        }
+
+        private boolean visibleTo(long userId) {
+            return publicSpells > 0 || privateSpells.containsKey(userId);
+        }
+
+        private boolean unused() {
+            return publicSpells == 0 && privateSpells.isEmpty();
+        }
+    }
+
+    /**
+     * Lo necesario para deshacer el alta de un hechizo
+     */
+    private record Spell(String folded, long userId, boolean publicVisible) {
+    }
+
+    private record Candidate(Name name, double recall, double jaccard) {
+    }
+
+    // Primero los que contienen más de la consulta, después los más parecidos en conjunto
+    private static final Comparator<Candidate> RANKING = Comparator.comparingDouble(Candidate::recall).reversed()
+            .thenComparing(Comparator.comparingDouble(Candidate::jaccard).reversed())
+            .thenComparing(candidate -> candidate.name().folded);
+
+    /**
+     * Lista de posiciones de nombres que contienen un trigrama
+     */
+    private static final class Posting {
+        private int[] slots = new int[4];
+        private int size;
+
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        private void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private final SpellRepository spellRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<String, Posting> postings = new HashMap<>();
+    private List<Name> names = new ArrayList<>();
+    private Map<String, Integer> slotsByName = new HashMap<>();
+    private Deque<Integer> freeSlots = new ArrayDeque<>();
+    private Map<Long, Spell> spells = new HashMap<>();
+
+    private volatile boolean rebuilding;
+    private final Queue<SpellChangedEvent> changesDuringRebuild = new ConcurrentLinkedQueue<>();
+
+    public SpellSuggestIndex(SpellRepository spellRepository) {
+        this.spellRepository = spellRepository;
+    }
+
+    /**
+     * Construye el índice desde cero leyendo los nombres de todos los hechizos de bd. Se repite cuando la carga de los hechizos
+     * oficiales termina después del arranque, y dos reconstrucciones no se solapan
+     */
+    @EventListener({ApplicationReadyEvent.class, OfficialSpellsLoadedEvent.class})
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        SpellSuggestIndex fresh = new SpellSuggestIndex(spellRepository);
+        try (Stream<SpellSearchView> views = spellRepository.streamSearchViews()) {
+            views.forEach(spell -> fresh.put(spell.getId(), spell.getName(), spell.getUserId(),
+                    Boolean.TRUE.equals(spell.getPublicVisible())));
+        }
+        lock.writeLock().lock();
+        try {
+            postings = fresh.postings;
+            names = fresh.names;
+            slotsByName = fresh.slotsByName;
+            freeSlots = fresh.freeSlots;
+            spells = fresh.spells;
+            // Los cambios confirmados durante la reconstrucción se aplican antes de que se pueda leer el índice nuevo
+            SpellChangedEvent change;
+            while ((change = changesDuringRebuild.poll()) != null) {
+                apply(change);
+            }
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Índice de sugerencias construido con {} hechizos en {} ms", size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Actualiza el índice con un hechizo creado, modificado o eliminado. Si el cambio se hace en una transacción se
+     * aplica al confirmarla, para que el índice nunca muestre cambios que se han deshecho
+     *
+     * @param event El cambio
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSpellChanged(SpellChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            // Con el cerrojo con el que termina rebuild(), para no encolar un cambio cuando ya se ha vaciado la cola
+            if (rebuilding) {
+                changesDuringRebuild.add(event);
+            } else {
+                apply(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(SpellChangedEvent event) {
+        SpellDto spell = event.spell();
+        if (event.deleted()) {
+            remove(event.spellId());
+        } else {
+            put(event.spellId(), spell.getName(), spell.getUserId() == null ? 0 : spell.getUserId(),
+                    spell.isPublicVisible());
+        }
+    }
+
+    /**
+     * Sugiere nombres de hechizos visibles para el usuario parecidos al texto escrito
+     *
+     * @param query  Texto escrito hasta el momento, puede estar incompleto o mal escrito
+     * @param userId Usuario que busca
+     * @param limit  Número máximo de sugerencias
+     * @return Nombres distintos ordenados de más a menos parecido
+     */
+    public List<String> suggest(String query, long userId, int limit) {
+        String folded = SpellTextNormalizer.fold(query).strip();
+        if (folded.isEmpty()) {
+            return List.of();
+        }
+        // La consulta no se rellena por detrás porque normalmente está a medio escribir
+        String[] queryTrigrams = trigrams(PADDING + folded);
+        int minShared = (int) Math.ceil(queryTrigrams.length * MIN_MATCH);
+
+        lock.readLock().lock();
+        try {
+            int[] shared = new int[names.size()];
+            int[] touched = new int[names.size()];
+            int touchedCount = 0;
+            for (String trigram : queryTrigrams) {
+                Posting posting = postings.get(trigram);
+                if (posting == null) {
+                    continue;
+                }
+                for (int i = 0; i < posting.size; i++) {
+                    int slot = posting.slots[i];
+                    if (shared[slot]++ == 0) {
+                        touched[touchedCount++] = slot;
+                    }
+                }
+            }
+
+            // Montículo con los mejores hasta el momento, el peor en la cabeza para descartarlo al llegar uno mejor
+            PriorityQueue<Candidate> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+            for (int i = 0; i < touchedCount; i++) {
+                int count = shared[touched[i]];
+                Name name = names.get(touched[i]);
+                if (count < minShared || !name.visibleTo(userId)) {
+                    continue;
+                }
+                double recall = (double) count / queryTrigrams.length;
+                double jaccard = (double) count / (queryTrigrams.length + name.trigrams.length - count);
+                best.add(new Candidate(name, recall, jaccard));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+            List<Candidate> top = new ArrayList<>(best);
+            top.sort(RANKING);
+            return top.stream().map(candidate -> candidate.name().display).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Número de hechizos indexados
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return spells.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(long spellId, String display, long userId, boolean publicVisible) {
+        String folded = SpellTextNormalizer.fold(display).strip();
+        lock.writeLock().lock();
+        try {
+            remove(spellId);
+            if (folded.isEmpty()) {
+                return;
+            }
+            Integer slot = slotsByName.get(folded);
+            if (slot == null) {
+                slot = addName(display, folded);
+            }
+            Name name = names.get(slot);
+            if (publicVisible) {
+                name.publicSpells++;
+            } else {
+                name.privateSpells.merge(userId, 1, Integer::sum);
+            }
+            spells.put(spellId, new Spell(folded, userId, publicVisible));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long spellId) {
+        lock.writeLock().lock();
+        try {
+            Spell spell = spells.remove(spellId);
+            if (spell == null) {
+                return;
+            }
+            int slot = slotsByName.get(spell.folded());
+            Name name = names.get(slot);
+            if (spell.publicVisible()) {
+                name.publicSpells--;
+            } else {
+                name.privateSpells.computeIfPresent(spell.userId(), (user, count) -> count == 1 ? null : count - 1);
+            }
+            if (name.unused()) {
+                removeName(slot, name);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int addName(String display, String folded) {
+        Name name = new Name(display, folded, trigrams(PADDING + folded + " "));
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = names.size();
+            names.add(name);
+        } else {
+            slot = freeSlots.pop();
+            names.set(slot, name);
+        }
+        slotsByName.put(folded, slot);
+        for (String trigram : name.trigrams) {
+            postings.computeIfAbsent(trigram, key -> new Posting()).add(slot);
+        }
+        return slot;
+    }
+
+    private void removeName(int slot, Name name) {
+        for (String trigram : name.trigrams) {
+            Posting posting = postings.get(trigram);
+            posting.remove(slot);
+            if (posting.size == 0) {
+                postings.remove(trigram);
+            }
+        }
+        slotsByName.remove(name.folded);
+        // La posición queda libre para el siguiente nombre nuevo, sin trigramas apunta a ella
+        freeSlots.push(slot);
+    }
+
+    private static String[] trigrams(String text) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + 3));
+        }
+        return trigrams.toArray(String[]::new);
+    }
+}
@@ -0,0 +1,50 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalización de textos de hechizos para las búsquedas: minúsculas y sin tildes ni diéresis, de forma que
+ * "Conjuración" y "conjuracion" se tratan igual
+ */
+public final class SpellTextNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SpellTextNormalizer() {
+    }
+
+    /**
+     * Pasa un texto a minúsculas y le quita los acentos
+     *
+     * @param text Texto original, puede ser nulo
+     * @return Texto normalizado, vacío si el original es nulo
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Divide un texto en palabras normalizadas, descartando signos de puntuación y palabras de una sola letra
+     *
+     * @param text Texto original, puede ser nulo
+     * @return Palabras en el orden en el que aparecen, con repeticiones
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(fold(text))) {
+            if (token.length() > 1) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,89 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Borra periódicamente los tokens caducados y revocados.
+ * <p>
+ * Un token se borra cuando su caducidad queda más atrás que el tiempo de retención configurado. Los tokens revocados
+ * dejan de renovarse, así que también acaban cumpliendo esa condición. El borrado se hace por bloques de ids, cada uno
+ * en su propia transacción, para no mantener bloqueos largos sobre la tabla.
+ */
+@Component
+public class TokenReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenReaper.class);
+
+    private final TokenRepository tokenRepository;
+    private final Duration retention;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    private volatile long lastRunPurged;
+    private volatile long lastRunMillis;
+    private volatile long totalPurged;
+
+    public TokenReaper(TokenRepository tokenRepository,
+                       @Value("${datosdados.token.reaper.retention:1h}") Duration retention,
+                       @Value("${datosdados.token.reaper.batch-size:500}") int batchSize,
+                       @Value("${datosdados.token.reaper.max-batches-per-run:200}") int maxBatchesPerRun) {
+        this.tokenRepository = tokenRepository;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    /**
+     * Borra los tokens purgables por bloques
+     *
+     * @return Número de tokens borrados
+     */
+    @Scheduled(fixedDelayString = "${datosdados.token.reaper.interval:15m}",
+            initialDelayString = "${datosdados.token.reaper.initial-delay:1m}")
+    public long purge() {
+        long start = System.nanoTime();
+        Instant cutoff = Instant.now().minus(retention);
+        long purged = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<Long> ids = tokenRepository.findPurgeableIds(cutoff, PageRequest.ofSize(batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            purged += tokenRepository.deleteAllByIdIn(ids);
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+        lastRunPurged = purged;
+        lastRunMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        totalPurged += purged;
+        if (purged > 0) {
+            log.info("Tokens purgados: {} en {} ms", purged, lastRunMillis);
+        } else {
+            log.debug("Ningún token que purgar ({} ms)", lastRunMillis);
+        }
+        return purged;
+    }
+
+    public long getLastRunPurged() {
+        return lastRunPurged;
+    }
+
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    public long getTotalPurged() {
+        return totalPurged;
+    }
+}
@@ -0,0 +1,132 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agrupa las renovaciones de caducidad de los tokens para no escribir en bd en cada petición autenticada.
+ * <p>
+ * En modo {@code write-behind} las renovaciones se guardan en memoria y se vuelcan periódicamente con un UPDATE por
+ * caducidad distinta y bloque de tokens. Las caducidades que pide {@link TokenService} van truncadas a segundos, así que
+ * en un volcado hay pocas distintas. Si el proceso se cae antes del volcado esas renovaciones se pierden y las sesiones
+ * afectadas caducan según la última fecha escrita, como mucho un intervalo de volcado antes de lo esperado. En modo
+ * {@code write-through} cada renovación se escribe al momento.
+ */
+@Component
+public class TokenRenewalBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRenewalBuffer.class);
+    private static final int FLUSH_CHUNK_SIZE = 500;
+
+    public enum Mode {
+        WRITE_BEHIND,
+        WRITE_THROUGH
+    }
+
+    private final TokenRepository tokenRepository;
+    private final Mode mode;
+    private final double threshold;
+    private final boolean flushOnShutdown;
+
+    private final Map<String, Instant> pending = new ConcurrentHashMap<>();
+
+    public TokenRenewalBuffer(TokenRepository tokenRepository,
+                              @Value("${datosdados.token.renewal.mode:write-behind}") String mode,
+                              @Value("${datosdados.token.renewal.threshold:0.5}") double threshold,
+                              @Value("${datosdados.token.renewal.flush-on-shutdown:true}") boolean flushOnShutdown) {
+        this.tokenRepository = tokenRepository;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase().replace('-', '_'));
+        this.threshold = threshold;
+        this.flushOnShutdown = flushOnShutdown;
+    }
+
+    /**
+     * Indica si un token necesita renovarse. Solo se renueva cuando le queda menos de la fracción configurada de su
+     * vida útil
+     *
+     * @param expiresAt Caducidad actual del token
+     * @param now       Momento actual
+     * @param lifetime  Vida útil de un token recién renovado
+     * @return {@code True} si hay que renovarlo
+     */
+    public boolean isRenewalDue(Instant expiresAt, Instant now, Duration lifetime) {
+        Duration remaining = Duration.between(now, expiresAt);
+        return remaining.toMillis() < lifetime.toMillis() * threshold;
+    }
+
+    /**
+     * Registra la renovación de un token
+     *
+     * @param tokenId   El token
+     * @param expiresAt Nueva fecha de caducidad
+     * @return {@code False} solo en modo {@code write-through} si el token ya no existe o está revocado en bd
+     */
+    public boolean renew(String tokenId, Instant expiresAt) {
+        if (mode == Mode.WRITE_THROUGH) {
+            return tokenRepository.renewExpiration(tokenId, expiresAt) == 1;
+        }
+        pending.merge(tokenId, expiresAt, (current, requested) -> requested.isAfter(current) ? requested : current);
+        return true;
+    }
+
+    /**
+     * Devuelve la caducidad pendiente de volcar para un token
+     *
+     * @param tokenId El token
+     * @return La caducidad pendiente o {@code null} si no hay ninguna
+     */
+    public Instant pendingExpiration(String tokenId) {
+        return pending.get(tokenId);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Vuelca las renovaciones pendientes. Cada token recibe su propia caducidad: los tokens se agrupan por caducidad
+     * para escribir cada grupo con un solo UPDATE, sin alargar ninguna sesión más allá de lo que se le prometió
+     */
+    @Scheduled(fixedDelayString = "${datosdados.token.renewal.flush-interval:5s}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Instant> snapshot = new HashMap<>(pending);
+        Map<Instant, List<String>> byExpiration = new HashMap<>();
+        snapshot.forEach((tokenId, expiresAt) ->
+                byExpiration.computeIfAbsent(expiresAt, key -> new ArrayList<>()).add(tokenId));
+
+        int updated = 0;
+        for (Map.Entry<Instant, List<String>> group : byExpiration.entrySet()) {
+            List<String> tokenIds = group.getValue();
+            for (int from = 0; from < tokenIds.size(); from += FLUSH_CHUNK_SIZE) {
+                List<String> chunk = tokenIds.subList(from, Math.min(from + FLUSH_CHUNK_SIZE, tokenIds.size()));
+                updated += tokenRepository.renewExpirations(chunk, group.getKey());
+            }
+        }
+        // Solo se quitan las entradas que no han cambiado mientras se volcaba
+        snapshot.forEach(pending::remove);
+        log.debug("Renovaciones de token volcadas: {} pendientes, {} filas actualizadas", snapshot.size(), updated);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (flushOnShutdown) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.models.TokenEntity;
+import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conjunto en memoria de los tokens firmados revocados que todavía no han caducado.
+ * <p>
+ * Solo se usa en el modo de tokens firmados. Se reconstruye desde bd al arrancar y periódicamente, para ver las
+ * revocaciones hechas en otros nodos, y las entradas se descartan en cuanto caduca su token.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private final TokenRepository tokenRepository;
+    private final boolean enabled;
+    private final Map<String, Instant> revoked = new ConcurrentHashMap<>();
+
+    public TokenRevocationList(TokenRepository tokenRepository,
+                               @Value("${datosdados.token.mode:database}") String mode) {
+        this.tokenRepository = tokenRepository;
+        this.enabled = "signed".equalsIgnoreCase(mode.trim());
+    }
+
+    /**
+     * Añade un token revocado
+     *
+     * @param tokenId   El token
+     * @param expiresAt Caducidad del token, a partir de la cual ya no hace falta recordarlo
+     */
+    public void revoke(String tokenId, Instant expiresAt) {
+        if (expiresAt.isAfter(Instant.now())) {
+            revoked.put(tokenId, expiresAt);
+        }
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return revoked.containsKey(tokenId);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Recarga desde bd los tokens revocados sin caducar y descarta los que ya han caducado
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${datosdados.token.revocation.refresh-interval:30s}",
+            initialDelayString = "${datosdados.token.revocation.refresh-interval:30s}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        for (TokenEntity token : tokenRepository.findByRevokedTrueAndExpiresAtAfter(now)) {
+            revoked.put(token.getTokenId(), token.getExpiresAt());
+        }
+        revoked.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+        log.debug("Lista de revocación recargada: {} tokens", revoked.size());
+    }
+}
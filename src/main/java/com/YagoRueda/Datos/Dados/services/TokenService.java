@@ -1,8 +1,12 @@
 package com.YagoRueda.Datos.Dados.services;
 
+import com.YagoRueda.Datos.Dados.Dtos.AuthenticatedUser;
 import com.YagoRueda.Datos.Dados.models.TokenEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
 import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
@@ -14,55 +18,182 @@ import java.util.UUID;
 @Service
 public class TokenService {
 
+    private static final Duration TOKEN_LIFETIME = Duration.of(30, ChronoUnit.MINUTES);
+
     private final TokenRepository tokenRepository;
+    private final UserRepository userRepository;
+    private final SessionCache sessionCache;
+    private final TokenRenewalBuffer renewalBuffer;
+    private final SignedTokenCodec signedTokenCodec;
+    private final TokenRevocationList revocationList;
+    private final boolean signedMode;
 
-    public TokenService(TokenRepository tokenRepository) {
+    public TokenService(TokenRepository tokenRepository, UserRepository userRepository, SessionCache sessionCache,
+                        TokenRenewalBuffer renewalBuffer, SignedTokenCodec signedTokenCodec,
+                        TokenRevocationList revocationList, @Value("${datosdados.token.mode:database}") String mode) {
         this.tokenRepository = tokenRepository;
+        this.userRepository = userRepository;
+        this.sessionCache = sessionCache;
+        this.renewalBuffer = renewalBuffer;
+        this.signedTokenCodec = signedTokenCodec;
+        this.revocationList = revocationList;
+        this.signedMode = "signed".equalsIgnoreCase(mode.trim());
+        if (signedMode && !signedTokenCodec.isConfigured()) {
+            throw new IllegalStateException("El modo de tokens firmados necesita datosdados.token.signed.secret de al menos 32 bytes");
+        }
     }
 
     /**
-     * Crear un token y lo asigna a un usuario
+     * Crear un token y lo asigna a un usuario. En modo firmado el token es autocontenido, pero se guarda igualmente
+     * en bd para poder revocarlo
      * @param user El usuario al que se le asignara el token
      * @return El tokenEntity generado
      */
     public TokenEntity createToken(UserEntity user) {
         TokenEntity token = new TokenEntity();
-        token.setTokenId(UUID.randomUUID().toString());
+        if (signedMode) {
+            Instant expiresAt = Instant.now().plus(signedTokenCodec.getLifetime());
+            token.setTokenId(signedTokenCodec.sign(user.getId(), expiresAt));
+            token.setExpiresAt(expiresAt);
+        } else {
+            token.setTokenId(UUID.randomUUID().toString());
+            token.setExpiresAt(Instant.now().plus(TOKEN_LIFETIME));
+        }
         token.setUser(user);
         token.setCreatedAt(Instant.now());
-        token.setExpiresAt(Instant.now().plus(30, ChronoUnit.MINUTES));
         token.setExpired(false);
         token.setRevoked(false);
         return tokenRepository.save(token);
     }
 
-
-    // Validar y renovar token si aún no ha caducado
+    /**
+     * Revoca un token y lo saca de la caché de sesiones
+     * @param token El token a revocar
+     */
+    public void revokeToken(TokenEntity token) {
+        token.setRevoked(true);
+        tokenRepository.save(token);
+        sessionCache.invalidate(token.getTokenId());
+        if (signedMode) {
+            revocationList.revoke(token.getTokenId(), token.getExpiresAt());
+        }
+    }
 
     /**
      * Válida el token, en caso de que sea válido lo renueva, en caso de que haya caducado se marca como caducado
      * @param tokenId El token
      * @return {@code True} en caso de que el token sea válido {@code False} en caso contrario
      */
+    @Timed(value = "datosdados.token.validation", histogram = true, description = "Validación y renovación de tokens")
     public boolean validateAndRenewToken(String tokenId) {
-        Optional<TokenEntity> optionalToken = tokenRepository.findByTokenId(tokenId);
+        return resolveSession(tokenId) != null;
+    }
+
+    /**
+     * Válida y renueva el token igual que {@link #validateAndRenewToken(String)} y devuelve el usuario autenticado.
+     * <p>
+     * Como mucho se lanza una consulta: ninguna si la sesión está en caché y una con join al usuario si no lo está
+     * @param tokenId El token
+     * @return El usuario autenticado o vacío si el token no es válido
+     */
+    @Timed(value = "datosdados.token.validation", histogram = true, description = "Validación y renovación de tokens")
+    public Optional<AuthenticatedUser> authenticate(String tokenId) {
+        SessionCache.Session session = resolveSession(tokenId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new AuthenticatedUser(session.userId(), tokenId));
+    }
+
+    /**
+     * Resuelve la sesión de un token renovándolo si hace falta.
+     * <p>
+     * La renovación solo se hace cuando al token le queda poca vida y se delega en {@link TokenRenewalBuffer}, por lo
+     * que la caducidad efectiva es la mayor entre la de bd y la renovación pendiente de volcar
+     * @param tokenId El token
+     * @return La sesión o {@code null} si el token no existe, está revocado o ha caducado
+     */
+    private SessionCache.Session resolveSession(String tokenId) {
+        if (tokenId == null || tokenId.isEmpty()) {
+            return null;
+        }
+        if (signedMode) {
+            return resolveSignedSession(tokenId);
+        }
+        Instant now = Instant.now();
+        SessionCache.Session cached = sessionCache.get(tokenId);
+        if (cached != null) {
+            if (cached.revoked()) {
+                return null;
+            }
+            if (cached.expiresAt().isAfter(now)) {
+                Instant expiresAt = renewIfDue(tokenId, cached.expiresAt(), now);
+                // Si la renovación falla el token se ha revocado desde otro nodo, se resuelve contra bd
+                if (expiresAt != null) {
+                    SessionCache.Session renewed = cached.withExpiresAt(expiresAt);
+                    sessionCache.put(tokenId, renewed);
+                    return renewed;
+                }
+            }
+            sessionCache.invalidate(tokenId);
+        }
+
+        Optional<TokenEntity> optionalToken = tokenRepository.findWithUserByTokenId(tokenId);
         if (optionalToken.isPresent()) {
             TokenEntity token = optionalToken.get();
 
             if (token.isRevoked()) {
-                return false;
+                sessionCache.put(tokenId, toSession(token, token.getExpiresAt()));
+                return null;
             }
-            if (token.getExpiresAt().isAfter(Instant.now())) {
-                token.setExpiresAt(Instant.now().plus(30, ChronoUnit.MINUTES)); // Renovación
-                tokenRepository.save(token);
-                return true;
+            Instant expiresAt = effectiveExpiration(token);
+            if (expiresAt.isAfter(now)) {
+                Instant renewed = renewIfDue(tokenId, expiresAt, now);
+                if (renewed == null) {
+                    return null;
+                }
+                SessionCache.Session session = toSession(token, renewed);
+                sessionCache.put(tokenId, session);
+                return session;
             } else {
-                token.setExpired(true);
-                tokenRepository.save(token);
-                return false;
+                tokenRepository.markExpired(tokenId);
+                return null;
             }
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Resuelve un token firmado comprobando solo la firma, la caducidad y la lista de revocados, sin acceder a bd: la
+     * sesión solo necesita el id del usuario, que va en el token. Estos tokens no se renuevan
+     */
+    private SessionCache.Session resolveSignedSession(String tokenId) {
+        SignedTokenCodec.Claims claims = signedTokenCodec.verify(tokenId);
+        if (claims == null || !claims.expiresAt().isAfter(Instant.now()) || revocationList.isRevoked(tokenId)) {
+            return null;
+        }
+        return new SessionCache.Session(claims.userId(), claims.expiresAt(), false);
+    }
+
+    /**
+     * Renueva el token si le queda menos vida de la configurada
+     * @return La caducidad resultante o {@code null} si el token ya no se puede renovar
+     */
+    private Instant renewIfDue(String tokenId, Instant expiresAt, Instant now) {
+        if (!renewalBuffer.isRenewalDue(expiresAt, now, TOKEN_LIFETIME)) {
+            return expiresAt;
+        }
+        // Renovación, en segundos para que TokenRenewalBuffer pueda agrupar las de un mismo volcado
+        Instant renewed = now.plus(TOKEN_LIFETIME).truncatedTo(ChronoUnit.SECONDS);
+        return renewalBuffer.renew(tokenId, renewed) ? renewed : null;
+    }
+
+    private Instant effectiveExpiration(TokenEntity token) {
+        Instant pendingExpiration = renewalBuffer.pendingExpiration(token.getTokenId());
+        if (pendingExpiration != null && pendingExpiration.isAfter(token.getExpiresAt())) {
+            return pendingExpiration;
+        }
+        return token.getExpiresAt();
     }
 
     /**
@@ -71,7 +202,12 @@ public class TokenService {
      * @return {@code UserEntity} asociada a ese usuario
      */
     public UserEntity getUser(String tokenId) {
-        Optional<TokenEntity> optionalToken = tokenRepository.findByTokenId(tokenId);
+        SessionCache.Session cached = sessionCache.get(tokenId);
+        if (cached != null) {
+            // Referencia sin consulta, solo se carga el usuario si se accede a algo distinto del id
+            return userRepository.getReferenceById(cached.userId());
+        }
+        Optional<TokenEntity> optionalToken = tokenRepository.findWithUserByTokenId(tokenId);
         if (optionalToken.isPresent()) {
             TokenEntity token = optionalToken.get();
             return token.getUser();
@@ -81,4 +217,18 @@ public class TokenService {
         }
     }
 
+    /**
+     * Devuelve el usuario autenticado como entidad, sin consultar la bd
+     * @param principal El usuario autenticado
+     * @return Referencia a la {@code UserEntity} del usuario
+     */
+    public UserEntity getUser(AuthenticatedUser principal) {
+        return userRepository.getReferenceById(principal.userId());
+    }
+
+    private SessionCache.Session toSession(TokenEntity token, Instant expiresAt) {
+        UserEntity user = token.getUser();
+        return new SessionCache.Session(user.getId(), expiresAt, token.isRevoked());
+    }
+
 }
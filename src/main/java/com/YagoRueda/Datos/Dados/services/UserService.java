@@ -8,75 +8,110 @@ import com.YagoRueda.Datos.Dados.models.TokenEntity;
 import com.YagoRueda.Datos.Dados.models.UserEntity;
 import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
 import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Service
 public class UserService {
 
-    private MessageDigest hash;
     private final UserRepository userRepository;
     private final TokenRepository tokenRepository;
     private final TokenService tokenService;
+    private final PasswordHashingService passwordHashingService;
+    private final TransactionTemplate transactionTemplate;
+    // Ejecuta lo que viene después del hash, que accede a bd, para no ocupar los hilos del pool de contraseñas
+    private final Executor completionExecutor;
 
-    public UserService(UserRepository userRepository, TokenRepository tokenRepository, TokenService tokenService) {
+    public UserService(UserRepository userRepository, TokenRepository tokenRepository, TokenService tokenService,
+                       PasswordHashingService passwordHashingService, PlatformTransactionManager transactionManager,
+                       @Qualifier("applicationTaskExecutor") Executor completionExecutor) {
         this.userRepository = userRepository;
         this.tokenRepository = tokenRepository;
         this.tokenService = tokenService;
-        try {
-            this.hash = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private String hashString(String prehash) {
-        hash.reset();
-        hash.update(prehash.getBytes());
-        byte[] hashed_password = this.hash.digest();
-        return new String(hashed_password, StandardCharsets.UTF_8);
+        this.passwordHashingService = passwordHashingService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.completionExecutor = completionExecutor;
     }
 
-    public UserEntity signup(UserDto dto) throws InvalidInputDataException {
+    /**
+     * Registra un usuario. El hash de la contraseña se calcula en el pool de {@link PasswordHashingService} y el
+     * usuario se guarda al terminar en el ejecutor de tareas de la aplicación, sin ocupar el hilo de la petición ni el
+     * del hash mientras tanto
+     *
+     * @param dto Datos del usuario
+     * @return El usuario guardado cuando termine
+     * @throws InvalidInputDataException Si el nombre ya existe o las contraseñas no coinciden
+     */
+    public CompletableFuture<UserEntity> signup(UserDto dto) throws InvalidInputDataException {
         if (userRepository.existsByUsername(dto.getUsername())) {
             throw new InvalidInputDataException("El nombre de usuario ya existe, utiliza otro nombre porfavor.");
         }
         if (!dto.getPassword().equals(dto.getPasswordRepeat())) {
             throw new InvalidInputDataException("las contraseñas no coinciden");
         }
-        UserEntity entity = new UserEntity();
-        entity.setUsername(dto.getUsername());
-        entity.setPassword(hashString(dto.getPassword()));
-        entity.setSignup_date(Instant.now());
-        return userRepository.save(entity);
+        return passwordHashingService.hashAsync(dto.getPassword()).thenApplyAsync(hash -> {
+            UserEntity entity = new UserEntity();
+            entity.setUsername(dto.getUsername());
+            entity.setPassword(hash);
+            entity.setSignup_date(Instant.now());
+            return userRepository.save(entity);
+        }, completionExecutor);
     }
 
-    public String login(UserDto dto) throws InvalidInputDataException{
+    /**
+     * Inicia sesión. La contraseña se verifica en el pool de {@link PasswordHashingService} y la sesión se abre al
+     * terminar con {@link #openSession(UserEntity, String)} en el ejecutor de tareas de la aplicación, sin ocupar el
+     * hilo de la petición ni el del hash mientras tanto
+     *
+     * @param dto Credenciales del usuario
+     * @return El token cuando termine, o un fallo con {@link InvalidInputDataException} si la contraseña no coincide
+     * @throws InvalidInputDataException Si el usuario no existe
+     */
+    public CompletableFuture<String> login(UserDto dto) throws InvalidInputDataException{
         if (!userRepository.existsByUsername(dto.getUsername())) {
             throw new InvalidInputDataException("El usuario no existe");
         }
 
         UserEntity user = userRepository.findByUsername(dto.getUsername());
-        String hashedPassword = hashString(dto.getPassword());
-        if (!user.getPassword().equals(hashedPassword)) {
-            throw new InvalidInputDataException("La contraseña es incorrecta");
-        }
+        return passwordHashingService.verifyAsync(dto.getPassword(), user.getPassword()).thenApplyAsync(verification -> {
+            if (!verification.matches()) {
+                throw new CompletionException(new InvalidInputDataException("La contraseña es incorrecta"));
+            }
+            return openSession(user, verification.rehashed());
+        }, completionExecutor);
+    }
 
-        List<TokenEntity> livetokens = tokenRepository.getLiveTokens(user);
-        livetokens.forEach(token -> {
-            token.setRevoked(true);
-            tokenRepository.save(token);
-        });
+    /**
+     * Revoca las sesiones abiertas del usuario y crea un token nuevo en una sola transacción, de forma que un fallo a
+     * mitad no deja al usuario sin ningún token válido
+     *
+     * @param user     Usuario que inicia sesión
+     * @param rehashed Nuevo hash de la contraseña si el guardado estaba obsoleto, {@code null} en otro caso
+     * @return El id del token nuevo
+     */
+    private String openSession(UserEntity user, String rehashed) {
+        return transactionTemplate.execute(status -> {
+            // Los hashes antiguos o con menos iteraciones de las configuradas se actualizan al entrar
+            if (rehashed != null) {
+                user.setPassword(rehashed);
+                userRepository.save(user);
+            }
 
-        TokenEntity token = tokenService.createToken(user);
-        return token.getTokenId();
+            List<TokenEntity> livetokens = tokenRepository.getLiveTokens(user);
+            livetokens.forEach(tokenService::revokeToken);
 
+            TokenEntity token = tokenService.createToken(user);
+            return token.getTokenId();
+        });
     }
 
     public UserEntity logout(String token) throws InvalidInputDataException, UnauthorizedException {
@@ -89,8 +124,7 @@ public class UserService {
             throw new UnauthorizedException("Token caducado o revocado");
         }
         UserEntity user = userToken.getUser();
-        userToken.setRevoked(true);
-        tokenRepository.save(userToken);
+        tokenService.revokeToken(userToken);
         return user;
     }
 }
@@ -0,0 +1,44 @@
+package db.migration.common;
+
+import com.YagoRueda.Datos.Dados.services.SpellTextNormalizer;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Rellena {@code spell_entity.name_folded} con la misma normalización que usa la aplicación, quitando las tildes que
+ * el {@code lower()} de V2 no puede quitar de forma portable entre bases de datos
+ */
+public class V3__Fold_spell_names extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement select = context.getConnection().createStatement();
+             ResultSet rows = select.executeQuery("select id, name, name_folded from spell_entity");
+             PreparedStatement update = context.getConnection()
+                     .prepareStatement("update spell_entity set name_folded = ? where id = ?")) {
+            int pending = 0;
+            while (rows.next()) {
+                String folded = SpellTextNormalizer.fold(rows.getString("name"));
+                if (folded.equals(rows.getString("name_folded"))) {
+                    continue;
+                }
+                update.setString(1, folded);
+                update.setLong(2, rows.getLong("id"));
+                update.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    update.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+        }
+    }
+}
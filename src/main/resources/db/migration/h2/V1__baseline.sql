@@ -0,0 +1,59 @@
+-- Esquema tal y como lo generaba Hibernate con ddl-auto=update. En bases de datos existentes no se ejecuta:
+-- spring.flyway.baseline-on-migrate las marca directamente en esta versión
+
+create sequence user_entity_seq start with 1 increment by 50;
+
+create table user_entity (
+    id bigint not null,
+    signup_date timestamp(6) with time zone,
+    password varchar(255),
+    username varchar(255) unique,
+    primary key (id)
+);
+
+create table spell_entity (
+    concentration boolean not null,
+    damage_type tinyint check (damage_type between 0 and 12),
+    level integer,
+    public_visible boolean not null,
+    ritual boolean not null,
+    id bigint generated by default as identity,
+    user_id bigint not null,
+    cast_range varchar(255),
+    cast_time varchar(255),
+    components varchar(255),
+    duration varchar(255),
+    name varchar(255),
+    school varchar(255),
+    description clob,
+    primary key (id)
+);
+
+create table spell_damage_by_level (
+    nivel integer not null,
+    spell_id bigint not null,
+    dado_de_ataque varchar(255),
+    primary key (nivel, spell_id)
+);
+
+create table token_entity (
+    expired boolean not null,
+    revoked boolean not null,
+    created_at timestamp(6) with time zone not null,
+    expires_at timestamp(6) with time zone not null,
+    id bigint generated by default as identity,
+    user_id bigint not null,
+    token_id varchar(255) not null unique,
+    primary key (id)
+);
+
+create index idx_token_expires_at on token_entity (expires_at);
+
+alter table spell_damage_by_level
+    add constraint FKj0jgy2mqmtn0oukxqa2c5y2vb foreign key (spell_id) references spell_entity (id);
+
+alter table spell_entity
+    add constraint FKkooac399m4o7g70h9k1lj88tw foreign key (user_id) references user_entity (id);
+
+alter table token_entity
+    add constraint FKchycpasyr16kt66k09e6ompve foreign key (user_id) references user_entity (id);
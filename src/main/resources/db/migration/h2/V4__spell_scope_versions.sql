@@ -0,0 +1,9 @@
+-- Versión de cada ámbito de lectura de hechizos (un hechizo, los de un usuario, los públicos y los oficiales) para
+-- responder a las peticiones condicionales con ETag y Last-Modified sin leer los hechizos
+
+create table spell_scope_version_entity (
+    scope varchar(255) not null,
+    version bigint not null,
+    modified_at timestamp(6) with time zone not null,
+    primary key (scope)
+);
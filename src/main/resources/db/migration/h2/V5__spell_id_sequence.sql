@@ -0,0 +1,4 @@
+-- Los ids de los hechizos pasan de IDENTITY a una secuencia que reserva bloques de 50, para que Hibernate pueda
+-- agrupar las inserciones en lotes. La secuencia empieza después del mayor id existente
+
+create sequence spell_entity_seq start with (select coalesce(max(id), 0) + 50 from spell_entity) increment by 50;
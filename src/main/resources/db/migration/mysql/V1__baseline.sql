@@ -0,0 +1,67 @@
+-- Esquema tal y como lo generaba Hibernate con ddl-auto=update. En bases de datos existentes no se ejecuta:
+-- spring.flyway.baseline-on-migrate las marca directamente en esta versión
+
+create table user_entity_seq (
+    next_val bigint
+) engine=InnoDB;
+
+insert into user_entity_seq values (1);
+
+create table user_entity (
+    id bigint not null,
+    signup_date datetime(6),
+    password varchar(255),
+    username varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table spell_entity (
+    concentration bit not null,
+    damage_type tinyint,
+    level integer,
+    public_visible bit not null,
+    ritual bit not null,
+    id bigint not null auto_increment,
+    user_id bigint not null,
+    cast_range varchar(255),
+    cast_time varchar(255),
+    components varchar(255),
+    duration varchar(255),
+    name varchar(255),
+    school varchar(255),
+    description TEXT,
+    primary key (id)
+) engine=InnoDB;
+
+create table spell_damage_by_level (
+    nivel integer not null,
+    spell_id bigint not null,
+    dado_de_ataque varchar(255),
+    primary key (nivel, spell_id)
+) engine=InnoDB;
+
+create table token_entity (
+    expired bit not null,
+    revoked bit not null,
+    created_at datetime(6) not null,
+    expires_at datetime(6) not null,
+    id bigint not null auto_increment,
+    user_id bigint not null,
+    token_id varchar(255) not null,
+    primary key (id)
+) engine=InnoDB;
+
+create index idx_token_expires_at on token_entity (expires_at);
+
+alter table token_entity add constraint UKylwjq6f67ndan94joekk8mkh unique (token_id);
+
+alter table user_entity add constraint UK2jsk4eakd0rmvybo409wgwxuw unique (username);
+
+alter table spell_damage_by_level
+    add constraint FKj0jgy2mqmtn0oukxqa2c5y2vb foreign key (spell_id) references spell_entity (id);
+
+alter table spell_entity
+    add constraint FKkooac399m4o7g70h9k1lj88tw foreign key (user_id) references user_entity (id);
+
+alter table token_entity
+    add constraint FKchycpasyr16kt66k09e6ompve foreign key (user_id) references user_entity (id);
@@ -0,0 +1,20 @@
+-- Nombre normalizado y marca de hechizo oficial para que las búsquedas por prefijo usen índices sin join con
+-- los usuarios. El nombre se pasa aquí a minúsculas y V3 le quita además las tildes
+
+alter table spell_entity
+    add column name_folded varchar(255),
+    add column official bit default 0 not null;
+
+update spell_entity set name_folded = lower(name);
+
+update spell_entity set official = true
+where user_id in (select u.id from user_entity u where lower(u.username) = 'admin');
+
+-- findByUser, countByUser y existsByUserAndName
+create index idx_spell_user_name on spell_entity (user_id, name);
+-- Listado y páginas de los hechizos de un usuario
+create index idx_spell_user_folded on spell_entity (user_id, name_folded, id);
+-- Hechizos oficiales: listado, páginas, streaming y catálogo
+create index idx_spell_official_folded on spell_entity (official, name_folded, id);
+-- Hechizos públicos de otros usuarios
+create index idx_spell_public_folded on spell_entity (public_visible, official, name_folded, id);
@@ -0,0 +1,9 @@
+-- Los ids de los hechizos pasan de IDENTITY a una secuencia que reserva bloques de 50, para que Hibernate pueda
+-- agrupar las inserciones en lotes. MySQL no tiene secuencias y Hibernate la emula con una tabla, igual que
+-- user_entity_seq. La secuencia empieza después del mayor id existente
+
+create table spell_entity_seq (
+    next_val bigint
+) engine=InnoDB;
+
+insert into spell_entity_seq select coalesce(max(id), 0) + 50 from spell_entity;
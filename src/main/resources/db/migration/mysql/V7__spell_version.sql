@@ -0,0 +1,4 @@
+-- Versión de cada hechizo para el bloqueo optimista: una modificación sobre una versión que ya no es la actual se
+-- rechaza en lugar de pisar la otra. Las filas existentes empiezan en 0
+
+alter table spell_entity add column version bigint not null default 0;
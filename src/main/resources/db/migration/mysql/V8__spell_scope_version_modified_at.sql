@@ -0,0 +1,4 @@
+-- Cada nodo guarda las versiones de los ámbitos en memoria y recarga periódicamente solo las que han cambiado desde
+-- la última vez, filtrando por la fecha de modificación
+
+create index idx_spell_scope_version_modified_at on spell_scope_version_entity (modified_at);
@@ -0,0 +1,4 @@
+-- La versión de un hechizo suelto es ahora la de la propia entidad (spell_entity.version), así que solo quedan en la
+-- tabla los listados: los de cada usuario, los públicos y los oficiales
+
+delete from spell_scope_version_entity where scope like 'spell:%';
@@ -0,0 +1,6 @@
+-- Los ids de los hechizos pasan de IDENTITY a una secuencia que reserva bloques de 50, para que Hibernate pueda
+-- agrupar las inserciones en lotes. La secuencia empieza después del mayor id existente
+
+create sequence spell_entity_seq start with 1 increment by 50;
+
+select setval('spell_entity_seq', (select coalesce(max(id), 0) + 50 from spell_entity), false);
@@ -0,0 +1,4 @@
+-- Huella del contenido de cada hechizo oficial para que la sincronización con la instantánea del catálogo solo
+-- escriba los que han cambiado. Las filas existentes quedan sin huella y se reescriben en la primera sincronización
+
+alter table spell_entity add column content_hash varchar(64);
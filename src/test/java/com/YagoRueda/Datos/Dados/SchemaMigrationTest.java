@@ -0,0 +1,68 @@
+package com.YagoRueda.Datos.Dados;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Aplica las migraciones sobre una H2 embebida con datos creados con el esquema inicial y comprueba el resultado
+ */
+class SchemaMigrationTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void existingSpellsAreBackfilledAndIndexed() {
+        flyway("1").migrate();
+        jdbc.update("insert into user_entity (id, username) values (1, 'Admin'), (2, 'player')");
+        jdbc.update("insert into spell_entity (id, user_id, name, public_visible, concentration, ritual) values "
+                + "(1, 1, 'Fireball', true, false, false), "
+                + "(2, 2, 'Conjuración Ígnea', true, false, false)");
+
+        flyway(null).migrate();
+
+        assertThat(jdbc.queryForList("select name_folded from spell_entity order by id", String.class))
+                .containsExactly("fireball", "conjuracion ignea");
+        assertThat(jdbc.queryForList("select official from spell_entity order by id", Boolean.class))
+                .containsExactly(true, false);
+        List<String> indexes = jdbc.queryForList(
+                "select index_name from information_schema.indexes where table_name = 'SPELL_ENTITY'", String.class);
+        assertThat(indexes).contains("IDX_SPELL_USER_NAME", "IDX_SPELL_USER_FOLDED", "IDX_SPELL_OFFICIAL_FOLDED",
+                "IDX_SPELL_PUBLIC_FOLDED");
+    }
+
+    @Test
+    void emptyDatabaseReachesTheLatestVersion() {
+        Flyway flyway = flyway(null);
+
+        flyway.migrate();
+
+        assertThat(flyway.info().pending()).isEmpty();
+        assertThat(flyway.info().current().getVersion().getVersion()).isEqualTo("9");
+    }
+
+    private Flyway flyway(String target) {
+        var configuration = Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/h2", "classpath:db/migration/common");
+        if (target != null) {
+            configuration.target(target);
+        }
+        return configuration.load();
+    }
+}
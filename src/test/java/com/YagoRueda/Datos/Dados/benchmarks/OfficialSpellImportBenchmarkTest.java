@@ -0,0 +1,92 @@
+package com.YagoRueda.Datos.Dados.benchmarks;
+
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellImporter;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellLoadProgress;
+import com.YagoRueda.Datos.Dados.services.SpellApiStub;
+import com.YagoRueda.Datos.Dados.services.SpellScopeVersions;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara la importación de hechizos oficiales de uno en uno, como se hacía antes, con la importación en paralelo y
+ * por lotes, contra una API local con la latencia de una petición real, y con la sincronización desde una instantánea
+ * sin red. Se ejecuta con {@code mvn test -Pbenchmark}
+ */
+@Tag("benchmark")
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(SpellScopeVersions.class)
+class OfficialSpellImportBenchmarkTest {
+
+    // Tamaño aproximado de la lista de la API
+    private static final int SPELLS = 319;
+    private static final long LATENCY_MILLIS = 20;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellRepository spellRepository;
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void compareSequentialAndParallelImport() throws IOException {
+        try (SpellApiStub api = new SpellApiStub(SPELLS, LATENCY_MILLIS)) {
+            OfficialSpellImporter.Result sequential = run(api, "sequential", 1, 1);
+            OfficialSpellImporter.Result parallel = run(api, "parallel", 8, 50);
+            List<JsonNode> snapshot = importer(api, 8, 50).fetchAll().spells();
+            OfficialSpellImporter.Result fromSnapshot = importer(api, 8, 50).sync(admin("snapshot"), snapshot);
+            OfficialSpellImporter.Result resync = importer(api, 8, 50).sync(admin("snapshot"), snapshot);
+
+            System.out.printf("Importación de %d hechizos con %d ms de latencia por petición%n", SPELLS, LATENCY_MILLIS);
+            System.out.printf("De uno en uno:        %,6d ms%n", sequential.elapsedMillis());
+            System.out.printf("8 hilos, lotes de 50: %,6d ms%n", parallel.elapsedMillis());
+            System.out.printf("Instantánea:          %,6d ms%n", fromSnapshot.elapsedMillis());
+            System.out.printf("Instantánea sin cambios: %,3d ms%n", resync.elapsedMillis());
+            assertThat(sequential.imported()).isEqualTo(SPELLS);
+            assertThat(parallel.imported()).isEqualTo(SPELLS);
+            assertThat(fromSnapshot.imported()).isEqualTo(SPELLS);
+            assertThat(resync.skipped()).isEqualTo(SPELLS);
+        }
+    }
+
+    private OfficialSpellImporter.Result run(SpellApiStub api, String username, int concurrency, int batchSize) {
+        return importer(api, concurrency, batchSize).importMissing(admin(username));
+    }
+
+    private OfficialSpellImporter importer(SpellApiStub api, int concurrency, int batchSize) {
+        return new OfficialSpellImporter(spellRepository, scopeVersions, new OfficialSpellLoadProgress(),
+                transactionManager, api.baseUrl(), concurrency, 3, Duration.ofMillis(50), Duration.ofSeconds(10), batchSize);
+    }
+
+    private UserEntity admin(String username) {
+        UserEntity existing = entityManager.getEntityManager()
+                .createQuery("SELECT u FROM UserEntity u WHERE u.username = :username", UserEntity.class)
+                .setParameter("username", username).getResultStream().findFirst().orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+        UserEntity admin = new UserEntity();
+        admin.setUsername(username);
+        admin.setSignup_date(Instant.now());
+        return entityManager.persistAndFlush(admin);
+    }
+}
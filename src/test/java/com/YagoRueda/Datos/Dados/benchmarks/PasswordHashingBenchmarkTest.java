@@ -0,0 +1,71 @@
+package com.YagoRueda.Datos.Dados.benchmarks;
+
+import com.YagoRueda.Datos.Dados.services.PasswordHashingService;
+import com.YagoRueda.Datos.Dados.services.Pbkdf2PasswordHasher;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mide los logins por segundo que soporta la verificación de contraseñas según el número de hilos del pool de hash,
+ * con las iteraciones por defecto. Se ejecuta con {@code mvn test -Pbenchmark}
+ */
+@Tag("benchmark")
+class PasswordHashingBenchmarkTest {
+
+    private static final int ITERATIONS = 310000;
+    private static final int CALLERS = 32;
+    private static final Duration MEASUREMENT = Duration.ofSeconds(5);
+
+    @Test
+    void loginsPerSecondByPoolSize() throws Exception {
+        Pbkdf2PasswordHasher hasher = new Pbkdf2PasswordHasher(ITERATIONS);
+        String encoded = hasher.hash("secreto");
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        TreeSet<Integer> poolSizes = new TreeSet<>(List.of(1, 2, 4, cores));
+        for (int threads : poolSizes) {
+            PasswordHashingService service =
+                    new PasswordHashingService(hasher, threads, CALLERS, Duration.ofMinutes(1));
+            try {
+                long logins = run(service, encoded);
+                System.out.printf("%2d hilos (%d nucleos): %,8.1f logins/s%n", threads, cores,
+                        logins / (double) MEASUREMENT.toSeconds());
+            } finally {
+                service.shutdown();
+            }
+        }
+    }
+
+    private long run(PasswordHashingService service, String encoded) throws Exception {
+        AtomicLong logins = new AtomicLong();
+        long deadline = System.nanoTime() + MEASUREMENT.toNanos();
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(callers.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        if (service.verify("secreto", encoded).matches()) {
+                            logins.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        return logins.get();
+    }
+}
@@ -0,0 +1,133 @@
+package com.YagoRueda.Datos.Dados.benchmarks;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellImportResultDto;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellCatalog;
+import com.YagoRueda.Datos.Dados.services.SpellFacetIndex;
+import com.YagoRueda.Datos.Dados.services.SpellImportService;
+import com.YagoRueda.Datos.Dados.services.SpellScopeVersions;
+import com.YagoRueda.Datos.Dados.services.SpellSearchIndex;
+import com.YagoRueda.Datos.Dados.services.SpellService;
+import com.YagoRueda.Datos.Dados.services.SpellSuggestIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Instant;
+
+import static com.YagoRueda.Datos.Dados.services.TestUsers.newUser;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara dar de alta hechizos uno a uno, cada uno en su transacción como {@code POST /spell}, con la importación
+ * masiva en NDJSON, y muestra la memoria ocupada durante la importación. Se ejecuta con {@code mvn test -Pbenchmark}
+ */
+@Tag("benchmark")
+@DataJpaTest
+@ActiveProfiles("test")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class, SpellImportService.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SpellBulkImportBenchmarkTest {
+
+    private static final int ONE_BY_ONE = 5_000;
+    private static final int BULK = 30_000;
+
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private SpellImportService spellImportService;
+    @Autowired
+    private SpellRepository spellRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void compareOneByOneAndBulkImport() throws IOException {
+        UserEntity single = userRepository.saveAndFlush(newUser("single"));
+        long start = System.nanoTime();
+        for (int i = 0; i < ONE_BY_ONE; i++) {
+            spellService.createSpell(single, objectMapper.readValue(line(i), SpellDto.class));
+        }
+        double oneByOne = (System.nanoTime() - start) / 1e6;
+
+        UserEntity bulk = userRepository.saveAndFlush(newUser("bulk"));
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long[] maxHeap = {heapBefore};
+        start = System.nanoTime();
+        SpellImportResultDto result = spellImportService.importSpells(bulk, new GeneratedNdjson(BULK, () ->
+                maxHeap[0] = Math.max(maxHeap[0], runtime.totalMemory() - runtime.freeMemory())));
+        double bulkMillis = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("Uno a uno: %,d hechizos en %,.0f ms (%,.0f hechizos/s)%n", ONE_BY_ONE, oneByOne,
+                ONE_BY_ONE / oneByOne * 1000);
+        System.out.printf("NDJSON:    %,d hechizos en %,.0f ms (%,.0f hechizos/s), memoria máxima +%,d KB%n", BULK,
+                bulkMillis, BULK / bulkMillis * 1000, (maxHeap[0] - heapBefore) / 1024);
+        assertThat(result.getImported()).isEqualTo(BULK);
+        assertThat(spellRepository.countByUser(bulk)).isEqualTo(BULK);
+    }
+
+    private static String line(int i) {
+        return "{\"name\":\"Spell " + i + "\",\"level\":" + (i % 10) + ",\"publicVisible\":" + (i % 3 == 0)
+                + ",\"school\":\"Evocation\",\"castTime\":\"1 action\",\"castRange\":\"60 feet\",\"components\":\"V, S\""
+                + ",\"duration\":\"Instantaneous\",\"description\":\"" + "Lorem ipsum dolor sit amet. ".repeat(10)
+                + "\",\"damageByLevel\":{\"1\":\"1d6\",\"2\":\"2d6\"}}\n";
+    }
+
+    /**
+     * NDJSON generado según se lee, sin tenerlo entero en memoria
+     */
+    private static class GeneratedNdjson extends Reader {
+
+        private final int lines;
+        private final Runnable onLine;
+        private int next;
+        private String current = "";
+        private int position;
+
+        GeneratedNdjson(int lines, Runnable onLine) {
+            this.lines = lines;
+            this.onLine = onLine;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == current.length()) {
+                if (next == lines) {
+                    return -1;
+                }
+                if (next % 1000 == 0) {
+                    onLine.run();
+                }
+                current = line(next++);
+                position = 0;
+            }
+            int count = Math.min(length, current.length() - position);
+            current.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.YagoRueda.Datos.Dados.benchmarks;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.services.SpellChangedEvent;
+import com.YagoRueda.Datos.Dados.services.SpellSuggestIndex;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Mide la latencia del autocompletado sobre un catálogo sintético con consultas incompletas y con erratas, y muestra
+ * los percentiles. Se ejecuta con {@code mvn test -Pbenchmark}
+ */
+@Tag("benchmark")
+class SpellSuggestBenchmarkTest {
+
+    private static final int SPELLS = 50_000;
+    private static final int WARMUP_QUERIES = 10_000;
+    private static final int MEASURED_QUERIES = 20_000;
+    private static final String[] SYLLABLES = {"fi", "re", "ball", "bolt", "cure", "wo", "und", "sh", "ield", "ma",
+            "gic", "mis", "sile", "ice", "storm", "light", "ning", "ray", "frost", "acid", "arrow", "word", "heal"};
+
+    @Test
+    void measureSuggestLatency() {
+        Random random = new Random(42);
+        SpellSuggestIndex index = new SpellSuggestIndex(mock(SpellRepository.class));
+        List<String> names = new ArrayList<>(SPELLS);
+        for (int i = 0; i < SPELLS; i++) {
+            String name = name(random);
+            names.add(name);
+            SpellDto dto = new SpellDto();
+            dto.setId((long) i);
+            dto.setUserId((long) (i % 100));
+            dto.setPublicVisible(i % 3 != 0);
+            dto.setName(name);
+            index.onSpellChanged(new SpellChangedEvent(i, dto));
+        }
+
+        for (int i = 0; i < WARMUP_QUERIES; i++) {
+            index.suggest(query(names, random), 7, 10);
+        }
+        long[] latencies = new long[MEASURED_QUERIES];
+        for (int i = 0; i < MEASURED_QUERIES; i++) {
+            String query = query(names, random);
+            long start = System.nanoTime();
+            List<String> suggestions = index.suggest(query, 7, 10);
+            latencies[i] = System.nanoTime() - start;
+            assertThat(suggestions).hasSizeLessThanOrEqualTo(10);
+        }
+        Arrays.sort(latencies);
+        System.out.printf("Autocompletado sobre %,d hechizos: p50 %.3f ms, p95 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                SPELLS, percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static String name(Random random) {
+        StringBuilder name = new StringBuilder();
+        int words = 1 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                name.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * Prefijo de un nombre existente, con una letra borrada la mitad de las veces para simular una errata
+     */
+    private static String query(List<String> names, Random random) {
+        String name = names.get(random.nextInt(names.size()));
+        String prefix = name.substring(0, Math.min(name.length(), 3 + random.nextInt(6)));
+        if (random.nextBoolean() && prefix.length() > 3) {
+            int typo = 1 + random.nextInt(prefix.length() - 1);
+            prefix = prefix.substring(0, typo) + prefix.substring(typo + 1);
+        }
+        return prefix;
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        return sorted[(int) Math.ceil(percentile / 100.0 * sorted.length) - 1] / 1e6;
+    }
+}
@@ -0,0 +1,85 @@
+package com.YagoRueda.Datos.Dados.benchmarks;
+
+import com.YagoRueda.Datos.Dados.models.TokenEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import com.YagoRueda.Datos.Dados.services.SessionCache;
+import com.YagoRueda.Datos.Dados.services.SignedTokenCodec;
+import com.YagoRueda.Datos.Dados.services.TokenRenewalBuffer;
+import com.YagoRueda.Datos.Dados.services.TokenRevocationList;
+import com.YagoRueda.Datos.Dados.services.TokenService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara el rendimiento de validación de tokens entre el modo con bd (con y sin caché de sesiones) y el modo de
+ * tokens firmados. Se ejecuta con {@code mvn test -Pbenchmark}
+ */
+@Tag("benchmark")
+@DataJpaTest
+@ActiveProfiles("test")
+class TokenValidationBenchmarkTest {
+
+    private static final Duration WARMUP = Duration.ofSeconds(2);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(5);
+
+    @Autowired
+    private TokenRepository tokenRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void compareValidationThroughput() {
+        UserEntity user = new UserEntity();
+        user.setUsername("bench");
+        user.setSignup_date(Instant.now());
+        userRepository.save(user);
+
+        TokenService uncached = databaseService(new SessionCache(0, Duration.ZERO));
+        TokenService cached = databaseService(new SessionCache(10_000, Duration.ofMinutes(1)));
+        TokenService signed = signedService();
+
+        report("database (sin cache)", uncached, uncached.createToken(user));
+        report("database (con cache)", cached, cached.createToken(user));
+        report("signed", signed, signed.createToken(user));
+    }
+
+    private void report(String mode, TokenService service, TokenEntity token) {
+        run(service, token.getTokenId(), WARMUP);
+        long operations = run(service, token.getTokenId(), MEASUREMENT);
+        System.out.printf("%-22s %,12.0f validaciones/s%n", mode, operations / (double) MEASUREMENT.toSeconds());
+    }
+
+    private long run(TokenService service, String tokenId, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        long operations = 0;
+        while (System.nanoTime() < deadline) {
+            assertThat(service.validateAndRenewToken(tokenId)).isTrue();
+            operations++;
+        }
+        return operations;
+    }
+
+    private TokenService databaseService(SessionCache sessionCache) {
+        return new TokenService(tokenRepository, userRepository, sessionCache,
+                new TokenRenewalBuffer(tokenRepository, "write-behind", 0.5, false),
+                new SignedTokenCodec("", Duration.ofHours(8)), new TokenRevocationList(tokenRepository, "database"),
+                "database");
+    }
+
+    private TokenService signedService() {
+        return new TokenService(tokenRepository, userRepository, new SessionCache(0, Duration.ZERO),
+                new TokenRenewalBuffer(tokenRepository, "write-behind", 0.5, false),
+                new SignedTokenCodec("benchmark-secret-benchmark-secret-32", Duration.ofHours(8)),
+                new TokenRevocationList(tokenRepository, "signed"), "signed");
+    }
+}
@@ -0,0 +1,129 @@
+package com.YagoRueda.Datos.Dados.benchmarks;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara el tamaño y el coste de serializar una lista de hechizos en JSON, CBOR y Smile, con y sin gzip. Se ejecuta
+ * con {@code mvn test -Pbenchmark}
+ */
+@Tag("benchmark")
+class WireFormatBenchmarkTest {
+
+    private static final int SPELLS = 500;
+    private static final int WARMUP_ROUNDS = 100;
+    private static final int MEASURED_ROUNDS = 200;
+    private static final String[] WORDS = {"a", "bright", "streak", "flashes", "from", "your", "pointing", "finger",
+            "to", "point", "you", "choose", "within", "range", "and", "then", "blossoms", "with", "low", "roar", "into",
+            "an", "explosion", "of", "flame", "each", "creature", "in", "sphere", "must", "make", "dexterity", "saving",
+            "throw", "target", "takes", "fire", "damage", "on", "failed", "save", "or", "half", "as", "much"};
+
+    @Test
+    void compareFormats() throws IOException {
+        List<SpellDto> spells = spells(new Random(42));
+        Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+        mappers.put("JSON", new ObjectMapper());
+        mappers.put("CBOR", new CBORMapper());
+        mappers.put("Smile", new SmileMapper());
+
+        System.out.printf("Lista de %,d hechizos%n", SPELLS);
+        System.out.printf("%-6s %12s %12s %16s %16s%n", "", "bytes", "gzip bytes", "serializar (ms)", "con gzip (ms)");
+        for (Map.Entry<String, ObjectMapper> format : mappers.entrySet()) {
+            ObjectMapper mapper = format.getValue();
+            byte[] raw = mapper.writeValueAsBytes(spells);
+            byte[] compressed = gzip(raw);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                gzip(mapper.writeValueAsBytes(spells));
+            }
+            double serialize = average(() -> mapper.writeValueAsBytes(spells));
+            double serializeAndCompress = average(() -> gzip(mapper.writeValueAsBytes(spells)));
+            System.out.printf("%-6s %,12d %,12d %16.3f %16.3f%n", format.getKey(), raw.length, compressed.length,
+                    serialize, serializeAndCompress);
+            assertThat(compressed.length).isLessThan(raw.length);
+        }
+    }
+
+    private interface Round {
+        Object run() throws IOException;
+    }
+
+    /**
+     * Media en milisegundos de una ronda
+     */
+    private static double average(Round round) throws IOException {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += round.run().hashCode();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+        assertThat(sink).isNotNull();
+        return elapsed;
+    }
+
+    private static List<SpellDto> spells(Random random) {
+        List<SpellDto> spells = new ArrayList<>(SPELLS);
+        SpellDamageType[] damageTypes = SpellDamageType.values();
+        for (int i = 0; i < SPELLS; i++) {
+            SpellDto spell = new SpellDto();
+            spell.setId((long) i);
+            spell.setUserId(1L);
+            spell.setPublicVisible(true);
+            spell.setName("Spell " + i);
+            spell.setLevel(i % 10);
+            spell.setSchool("Evocation");
+            spell.setCastTime("1 action");
+            spell.setCastRange("150 feet");
+            spell.setComponents("V, S, M");
+            spell.setDuration("Instantaneous");
+            spell.setDescription(description(random));
+            spell.setConcentration(i % 4 == 0);
+            spell.setRitual(i % 7 == 0);
+            spell.setDamageType(damageTypes[i % damageTypes.length]);
+            for (int level = spell.getLevel(); level < 10; level++) {
+                spell.getDamageByLevel().put(level, (level + 5) + "d6");
+            }
+            spells.add(spell);
+        }
+        return spells;
+    }
+
+    /**
+     * Descripción de entre 60 y 180 palabras, del tamaño de las del catálogo oficial
+     */
+    private static String description(Random random) {
+        StringBuilder description = new StringBuilder();
+        int words = 60 + random.nextInt(120);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                description.append(' ');
+            }
+            description.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return description.append('.').toString();
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(raw);
+        }
+        return compressed.toByteArray();
+    }
+}
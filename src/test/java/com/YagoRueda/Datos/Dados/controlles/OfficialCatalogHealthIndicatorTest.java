@@ -0,0 +1,60 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellCatalog;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellLoadProgress;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class OfficialCatalogHealthIndicatorTest {
+
+    private final OfficialSpellLoadProgress progress = new OfficialSpellLoadProgress();
+    private final OfficialCatalogHealthIndicator indicator =
+            new OfficialCatalogHealthIndicator(progress, new OfficialSpellCatalog(mock(SpellRepository.class)));
+
+    @Test
+    void outOfServiceWhileLoadingWithProgress() {
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        progress.start();
+        progress.phase("Sincronizando con la instantánea");
+        progress.expect(319);
+        progress.advance(100);
+        Health health = indicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(health.getDetails())
+                .containsEntry("state", OfficialSpellLoadProgress.State.LOADING)
+                .containsEntry("phase", "Sincronizando con la instantánea")
+                .containsEntry("processed", 100)
+                .containsEntry("total", 319)
+                .containsKey("startedAt");
+    }
+
+    @Test
+    void upOnceLoadedWithTheTimeSinceStartup() {
+        progress.start();
+        progress.finish();
+        Health health = indicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("state", OfficialSpellLoadProgress.State.READY);
+        assertThat((Long) health.getDetails().get("readyAfterStartMs")).isPositive();
+    }
+
+    @Test
+    void aFailedLoadStillServesWhatIsStored() {
+        progress.start();
+        progress.fail(new IllegalStateException("Sin conexión"));
+        Health health = indicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails())
+                .containsEntry("state", OfficialSpellLoadProgress.State.FAILED)
+                .containsEntry("error", "Sin conexión");
+    }
+}
@@ -0,0 +1,93 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.services.OfficialSpellCatalog;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OfficialSpellPayloadsTest {
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    private OfficialSpellCatalog catalog;
+    private OfficialSpellPayloads payloads;
+
+    @BeforeEach
+    void setUp() {
+        catalog = mock(OfficialSpellCatalog.class);
+        when(catalog.isLoaded()).thenReturn(true);
+        when(catalog.search(null)).thenReturn(spells(50));
+        payloads = new OfficialSpellPayloads(catalog, List.of(new MappingJackson2HttpMessageConverter(),
+                new MappingJackson2CborHttpMessageConverter(), new MappingJackson2SmileHttpMessageConverter()),
+                DataSize.ofBytes(512));
+    }
+
+    @Test
+    void formatIsNegotiatedFromTheAcceptHeader() {
+        assertThat(payloads.negotiate(null)).contains(MediaType.APPLICATION_JSON);
+        assertThat(payloads.negotiate("*/*")).contains(MediaType.APPLICATION_JSON);
+        assertThat(payloads.negotiate("application/cbor")).contains(CBOR);
+        assertThat(payloads.negotiate("application/json;q=0.5, application/x-jackson-smile")).contains(SMILE);
+        assertThat(payloads.negotiate("application/cbor;q=0.1, application/*;q=0.9")).contains(MediaType.APPLICATION_JSON);
+        assertThat(payloads.negotiate("text/html")).isEmpty();
+    }
+
+    @Test
+    void catalogIsSerializedAndCompressedOncePerSnapshot() throws IOException {
+        OfficialSpellPayloads.Payload cbor = payloads.officialCatalog(CBOR).orElseThrow();
+        assertThat(payloads.officialCatalog(CBOR)).containsSame(cbor);
+
+        List<SpellDto> decoded = new CBORMapper().readValue(gunzip(cbor.gzip()), new TypeReference<>() {
+        });
+        assertThat(decoded).hasSize(50).first().extracting(SpellDto::getName).isEqualTo("Spell 0");
+        assertThat(cbor.gzip().length).isLessThan(cbor.raw().length);
+
+        // Al recargar el catálogo la lista cambia de instancia y se vuelve a serializar
+        when(catalog.search(null)).thenReturn(spells(1));
+        OfficialSpellPayloads.Payload reloaded = payloads.officialCatalog(CBOR).orElseThrow();
+        assertThat(reloaded).isNotSameAs(cbor);
+        assertThat(reloaded.gzip()).as("por debajo del tamaño mínimo no se comprime").isNull();
+    }
+
+    @Test
+    void nothingIsServedBeforeTheCatalogLoads() {
+        when(catalog.isLoaded()).thenReturn(false);
+
+        assertThat(payloads.officialCatalog(MediaType.APPLICATION_JSON)).isEmpty();
+    }
+
+    private static List<SpellDto> spells(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            SpellDto spell = new SpellDto();
+            spell.setId((long) i);
+            spell.setName("Spell " + i);
+            spell.setLevel(i % 10);
+            spell.setDescription("A bright streak flashes from your pointing finger to a point you choose.");
+            return spell;
+        }).toList();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.YagoRueda.Datos.Dados.controlles;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Endpoints de hechizos sobre la aplicación completa con H2 y sin cargar el catálogo oficial
+ */
+@SpringBootTest(properties = {
+        "datosdados.password.iterations=1000",
+        "datosdados.official-spells.load-in-background=false",
+        "datosdados.official-spells.snapshot=classpath:none.json.gz",
+        "datosdados.official-spells.base-url=http://127.0.0.1:1",
+        "datosdados.official-spells.max-attempts=1"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Import(SpellControllerTest.ConnectionCounting.class)
+class SpellControllerTest {
+
+    /**
+     * Cuenta las conexiones que se piden al pool
+     */
+    @TestConfiguration
+    static class ConnectionCounting {
+
+        static final AtomicInteger CHECKOUTS = new AtomicInteger();
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource)) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            CHECKOUTS.incrementAndGet();
+                            return super.getConnection();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String token;
+    private long spellId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String username = "player" + System.nanoTime();
+        String credentials = "{\"username\":\"" + username + "\",\"password\":\"secret\",\"passwordRepeat\":\"secret\"}";
+        // El registro y el login responden de forma asíncrona
+        MvcResult signup = mvc.perform(post("/user/signup").contentType(MediaType.APPLICATION_JSON).content(credentials))
+                .andReturn();
+        mvc.perform(asyncDispatch(signup)).andExpect(status().isCreated());
+        MvcResult login = mvc.perform(post("/user/login").contentType(MediaType.APPLICATION_JSON).content(credentials))
+                .andReturn();
+        token = json(mvc.perform(asyncDispatch(login)).andExpect(status().isOk()).andReturn()).get("token").asText();
+        spellId = json(mvc.perform(post("/spell").param("token", token).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Fireball\",\"level\":3}"))
+                .andExpect(status().isOk()).andReturn()).get("id").asLong();
+    }
+
+    @Test
+    void etagDependsOnTheNegotiatedFormat() throws Exception {
+        MvcResult asJson = mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                .andReturn();
+        MvcResult asCbor = mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId))
+                        .accept(CBOR))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                .andReturn();
+        String jsonEtag = asJson.getResponse().getHeader(HttpHeaders.ETAG);
+        String cborEtag = asCbor.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(jsonEtag).startsWith("W/");
+        assertThat(cborEtag).startsWith("W/").isNotEqualTo(jsonEtag);
+
+        // La copia JSON sigue valiendo para JSON pero no para CBOR
+        mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId))
+                        .header(HttpHeaders.IF_NONE_MATCH, jsonEtag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"));
+        mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId))
+                        .accept(CBOR).header(HttpHeaders.IF_NONE_MATCH, jsonEtag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void cachedSpellIsServedWithoutAConnection() throws Exception {
+        // La primera lectura carga el hechizo en la caché de segundo nivel y la sesión en la caché de sesiones
+        MvcResult first = mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+        ConnectionCounting.CHECKOUTS.set(0);
+        mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId)))
+                .andExpect(status().isOk());
+        mvc.perform(get("/spell").param("token", token).param("id", String.valueOf(spellId))
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        assertThat(ConnectionCounting.CHECKOUTS).hasValue(0);
+        // Control: un listado sí consulta la bd
+        mvc.perform(get("/spell/list").param("token", token)).andExpect(status().isOk());
+        assertThat(ConnectionCounting.CHECKOUTS.get()).isPositive();
+    }
+
+    @Test
+    void listsAlsoVaryByFormat() throws Exception {
+        mvc.perform(get("/spell/list").param("token", token))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"))
+                .andExpect(header().exists(HttpHeaders.ETAG));
+        mvc.perform(get("/spell/public").param("token", token).accept(CBOR))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, "Accept, Accept-Encoding"));
+    }
+
+    private JsonNode json(MvcResult result) throws Exception {
+        return objectMapper.readTree(result.getResponse().getContentAsByteArray());
+    }
+}
@@ -0,0 +1,76 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OfficialSpellCatalogTest {
+
+    private SpellRepository spellRepository;
+    private OfficialSpellCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        spellRepository = mock(SpellRepository.class);
+        catalog = new OfficialSpellCatalog(spellRepository);
+    }
+
+    @Test
+    void prefixSearchIsCaseInsensitiveAndSortedByName() {
+        when(spellRepository.findByOfficialTrue())
+                .thenReturn(spells("Fireball", "Fire Bolt", "fire shield", "Feather Fall", "Wish"));
+        catalog.reload();
+
+        assertThat(names(catalog.search("FIRE"))).containsExactly("Fire Bolt", "fire shield", "Fireball");
+        assertThat(names(catalog.search("fireb"))).containsExactly("Fireball");
+        assertThat(names(catalog.search("f"))).containsExactly("Feather Fall", "Fire Bolt", "fire shield", "Fireball");
+        assertThat(catalog.search("x")).isEmpty();
+        assertThat(catalog.search("")).hasSize(5);
+        assertThat(catalog.search(null)).hasSize(5);
+        verify(spellRepository, times(1)).findByOfficialTrue();
+    }
+
+    @Test
+    void reloadReplacesTheWholeSnapshot() {
+        when(spellRepository.findByOfficialTrue())
+                .thenReturn(spells("Shield", "Sleep"))
+                .thenReturn(spells("Shield"));
+        assertThat(catalog.isLoaded()).isFalse();
+        assertThat(catalog.search("s")).isEmpty();
+
+        catalog.reload();
+        List<SpellDto> before = catalog.search("s");
+        catalog.reload();
+
+        assertThat(names(before)).containsExactly("Shield", "Sleep");
+        assertThat(names(catalog.search("s"))).containsExactly("Shield");
+        assertThat(catalog.size()).isEqualTo(1);
+    }
+
+    private static List<SpellEntity> spells(String... names) {
+        long[] id = {0};
+        return Arrays.stream(names).map(name -> {
+            SpellEntity spell = new SpellEntity();
+            ReflectionTestUtils.setField(spell, "id", ++id[0]);
+            spell.setName(name);
+            spell.setLevel(1);
+            return spell;
+        }).toList();
+    }
+
+    private static List<String> names(List<SpellDto> spells) {
+        return spells.stream().map(SpellDto::getName).toList();
+    }
+}
@@ -0,0 +1,170 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(SpellScopeVersions.class)
+class OfficialSpellImporterTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellRepository spellRepository;
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final OfficialSpellLoadProgress progress = new OfficialSpellLoadProgress();
+    private SpellApiStub api;
+    private UserEntity admin;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        api = new SpellApiStub(12, 0);
+        admin = new UserEntity();
+        admin.setUsername("Admin");
+        admin.setSignup_date(Instant.now());
+        entityManager.persistAndFlush(admin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        api.close();
+    }
+
+    private OfficialSpellImporter importer(int concurrency, int batchSize) {
+        return new OfficialSpellImporter(spellRepository, scopeVersions, progress, transactionManager, api.baseUrl(),
+                concurrency, 3, Duration.ofMillis(5), Duration.ofSeconds(5), batchSize);
+    }
+
+    @Test
+    void importsEverySpellMappedAsOfficial() {
+        OfficialSpellImporter.Result result = importer(4, 5).importMissing(admin);
+
+        assertThat(result.listed()).isEqualTo(12);
+        assertThat(result.imported()).isEqualTo(12);
+        assertThat(result.skipped()).isZero();
+        assertThat(result.failed()).isZero();
+        entityManager.clear();
+        List<SpellEntity> spells = spellRepository.findAll();
+        assertThat(spells).hasSize(12).allSatisfy(spell -> {
+            assertThat(spell.isOfficial()).isTrue();
+            assertThat(spell.isPublicVisible()).isTrue();
+            assertThat(spell.getUser().getId()).isEqualTo(admin.getId());
+        });
+        SpellEntity damaging = spells.stream().filter(spell -> spell.getName().equals("Spell 3")).findFirst().orElseThrow();
+        assertThat(damaging.getComponents()).isEqualTo("V, S, M");
+        assertThat(damaging.getDamageType()).isEqualTo(SpellDamageType.FIRE);
+        assertThat(damaging.getDamageByLevel()).isEqualTo(Map.of(3, "8d6", 4, "9d6"));
+    }
+
+    @Test
+    void onlyFetchesTheSpellsThatAreMissing() {
+        importer(4, 5).importMissing(admin);
+        entityManager.clear();
+        SpellEntity removed = spellRepository.findAll().stream()
+                .filter(spell -> spell.getName().equals("Spell 7")).findFirst().orElseThrow();
+        spellRepository.delete(removed);
+        int requestsBefore = api.detailRequests();
+
+        OfficialSpellImporter.Result result = importer(4, 5).importMissing(admin);
+
+        assertThat(result.skipped()).isEqualTo(11);
+        assertThat(result.imported()).isEqualTo(1);
+        assertThat(api.detailRequests() - requestsBefore).isEqualTo(1);
+        assertThat(spellRepository.countByUser(admin)).isEqualTo(12);
+    }
+
+    @Test
+    void retriesTransientErrorsAndCountsPermanentOnes() {
+        api.failDetail(2, 1);
+        api.failDetail(5, Integer.MAX_VALUE);
+
+        OfficialSpellImporter.Result result = importer(3, 4).importMissing(admin);
+
+        assertThat(result.imported()).isEqualTo(11);
+        assertThat(result.failed()).isEqualTo(1);
+        assertThat(spellRepository.countByUser(admin)).isEqualTo(11);
+        // Los que fallan también cuentan como procesados
+        assertThat(progress.status().processed()).isEqualTo(12);
+        assertThat(progress.status().total()).isEqualTo(12);
+        // 12 detalles, un reintento del que se recupera y dos del que falla siempre
+        assertThat(api.detailRequests()).isEqualTo(15);
+    }
+
+    @Test
+    void syncFromASnapshotOnlyWritesNewAndChangedSpells() throws Exception {
+        List<JsonNode> snapshot = snapshot(12);
+        OfficialSpellImporter.Result first = importer(4, 5).sync(admin, snapshot);
+        assertThat(first.imported()).isEqualTo(12);
+        assertThat(api.detailRequests()).isZero();
+
+        OfficialSpellImporter.Result unchanged = importer(4, 5).sync(admin, snapshot);
+        assertThat(unchanged.skipped()).isEqualTo(12);
+        assertThat(unchanged.imported() + unchanged.updated()).isZero();
+
+        entityManager.clear();
+        long changedId = spellRepository.findAll().stream()
+                .filter(spell -> spell.getName().equals("Spell 4")).findFirst().orElseThrow().getId();
+        long versionBefore = spellRepository.findById(changedId).orElseThrow().getVersion();
+        ((ObjectNode) snapshot.get(4)).put("level", 9);
+        snapshot.add(new ObjectMapper().readTree(SpellApiStub.detail(12)));
+
+        OfficialSpellImporter.Result changed = importer(4, 5).sync(admin, snapshot);
+
+        assertThat(changed.skipped()).isEqualTo(11);
+        assertThat(changed.updated()).isEqualTo(1);
+        assertThat(changed.imported()).isEqualTo(1);
+        entityManager.clear();
+        SpellEntity changedSpell = spellRepository.findById(changedId).orElseThrow();
+        assertThat(changedSpell.getLevel()).isEqualTo(9);
+        // El ETag del hechizo sale de su versión
+        assertThat(changedSpell.getVersion()).isGreaterThan(versionBefore);
+        assertThat(spellRepository.countByUser(admin)).isEqualTo(13);
+    }
+
+    @Test
+    void spellsImportedFromTheApiMatchTheSnapshotHashes() throws Exception {
+        importer(4, 5).importMissing(admin);
+
+        OfficialSpellImporter.Result result = importer(4, 5).sync(admin, snapshot(12));
+
+        assertThat(result.skipped()).isEqualTo(12);
+        assertThat(result.updated()).isZero();
+    }
+
+    private static List<JsonNode> snapshot(int spells) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<JsonNode> documents = new ArrayList<>();
+        for (int i = 0; i < spells; i++) {
+            documents.add(mapper.readTree(SpellApiStub.detail(i)));
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,41 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OfficialSpellLoadMetricsTest {
+
+    private final OfficialSpellLoadProgress progress = new OfficialSpellLoadProgress();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void gaugesFollowTheLoad() {
+        new OfficialSpellLoadMetrics(progress).bindTo(registry);
+        assertThat(state("PENDING")).isEqualTo(1);
+
+        progress.start();
+        progress.expect(319);
+        progress.advance(120);
+
+        assertThat(state("PENDING")).isZero();
+        assertThat(state("LOADING")).isEqualTo(1);
+        assertThat(registry.get("datosdados.official.spells.load.processed").gauge().value()).isEqualTo(120);
+        assertThat(registry.get("datosdados.official.spells.load.expected").gauge().value()).isEqualTo(319);
+        assertThat(registry.get("datosdados.official.spells.load.ready.after.start").timeGauge().value(TimeUnit.MILLISECONDS))
+                .isZero();
+
+        progress.finish();
+
+        assertThat(state("READY")).isEqualTo(1);
+        assertThat(registry.get("datosdados.official.spells.load.ready.after.start").timeGauge().value(TimeUnit.MILLISECONDS))
+                .isPositive();
+    }
+
+    private double state(String state) {
+        return registry.get("datosdados.official.spells.load.state").tag("state", state).gauge().value();
+    }
+}
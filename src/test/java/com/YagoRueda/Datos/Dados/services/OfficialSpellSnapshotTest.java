@@ -0,0 +1,62 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OfficialSpellSnapshotTest {
+
+    @TempDir
+    private Path directory;
+
+    private OfficialSpellSnapshot snapshotAt(Path file) {
+        return new OfficialSpellSnapshot(new DefaultResourceLoader(), file.toUri().toString());
+    }
+
+    @Test
+    void writtenSnapshotsReadBackTheSameSpells() throws Exception {
+        Path file = directory.resolve("nested/snapshot.json.gz");
+        JsonNode spell = new ObjectMapper().readTree(SpellApiStub.detail(3));
+        Instant generatedAt = Instant.parse("2026-01-02T03:04:05Z");
+        OfficialSpellSnapshot snapshot = snapshotAt(file);
+
+        snapshot.write(file, new OfficialSpellSnapshot.Snapshot(OfficialSpellSnapshot.FORMAT, generatedAt,
+                "https://www.dnd5eapi.co", List.of(spell)));
+        OfficialSpellSnapshot.Snapshot read = snapshot.read().orElseThrow();
+
+        assertThat(read.generatedAt()).isEqualTo(generatedAt);
+        assertThat(read.source()).isEqualTo("https://www.dnd5eapi.co");
+        assertThat(read.spells()).containsExactly(spell);
+        try (var files = Files.list(file.getParent())) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void missingSnapshotIsEmpty() {
+        assertThat(snapshotAt(directory.resolve("missing.json.gz")).read()).isEmpty();
+    }
+
+    @Test
+    void unknownFormatsAreRejected() throws Exception {
+        Path file = directory.resolve("snapshot.json.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("{\"format\":99,\"spells\":[]}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> snapshotAt(file).read()).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,126 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.exceptions.ServiceBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingServiceTest {
+
+    private final PasswordHashingService service =
+            new PasswordHashingService(new Pbkdf2PasswordHasher(1000), 4, 1000, Duration.ofSeconds(10));
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void legacyHashIsAcceptedAndRehashed() throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest("secreto".getBytes());
+        String legacy = new String(digest, StandardCharsets.UTF_8);
+
+        PasswordHashingService.Verification verification = service.verify("secreto", legacy);
+
+        assertThat(verification.matches()).isTrue();
+        assertThat(verification.rehashed()).startsWith("pbkdf2-sha256$1000$");
+        assertThat(service.verify("secreto", verification.rehashed()))
+                .isEqualTo(new PasswordHashingService.Verification(true, null));
+    }
+
+    @Test
+    void hashWithFewerIterationsIsRehashed() {
+        String weak = new Pbkdf2PasswordHasher(500).hash("secreto");
+
+        assertThat(service.verify("secreto", weak).rehashed()).startsWith("pbkdf2-sha256$1000$");
+        assertThat(service.verify("otro", weak).matches()).isFalse();
+    }
+
+    @Test
+    void concurrentVerificationsDoNotInterfere() throws Exception {
+        List<String> passwords = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            passwords.add("password-" + i);
+            hashes.add(service.hash("password-" + i));
+        }
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < passwords.size(); i++) {
+                    String password = passwords.get(i);
+                    String hash = hashes.get(i);
+                    String wrongHash = hashes.get((i + 1) % hashes.size());
+                    results.add(callers.submit(() -> service.verify(password, hash).matches()
+                            && !service.verify(password, wrongHash).matches()));
+                }
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void queuedOperationsDoNotBlockTheCallerAndExpireUnhashed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger hashed = new AtomicInteger();
+        PasswordHasher slow = new Pbkdf2PasswordHasher(1000) {
+            @Override
+            public String hash(String password) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                hashed.incrementAndGet();
+                return super.hash(password);
+            }
+        };
+        PasswordHashingService busy = new PasswordHashingService(slow, 1, 1, Duration.ofMillis(200));
+        try {
+            // El único hilo se queda ocupado y la segunda espera en la cola; ninguna bloquea a quien las pide
+            CompletableFuture<String> running = busy.hashAsync("uno");
+            CompletableFuture<String> queued = busy.hashAsync("dos");
+            assertThat(running).isNotDone();
+            assertThat(queued).isNotDone();
+            // Con la cola llena se rechaza en el momento
+            assertThat(busy.hashAsync("tres")).isCompletedExceptionally();
+
+            assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(ServiceBusyException.class);
+            release.countDown();
+            assertThatThrownBy(() -> running.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(ServiceBusyException.class);
+            // La que caducó en la cola no llega a calcularse: cuando termina la siguiente solo se han hecho dos
+            CompletableFuture<String> next = busy.hashAsync("cuatro");
+            for (int attempt = 0; next.isCompletedExceptionally() && attempt < 50; attempt++) {
+                // La cola sigue llena hasta que el hilo saca la operación caducada
+                Thread.sleep(20);
+                next = busy.hashAsync("cuatro");
+            }
+            assertThat(next.get(5, TimeUnit.SECONDS)).startsWith("pbkdf2-sha256$1000$");
+            assertThat(hashed).hasValue(2);
+        } finally {
+            release.countDown();
+            busy.shutdown();
+        }
+    }
+}
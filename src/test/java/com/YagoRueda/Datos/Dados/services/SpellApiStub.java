@@ -0,0 +1,125 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor HTTP local que imita la API de D&D 5e para probar la importación de hechizos oficiales sin red. Responde a
+ * {@code /api/spells} con la lista y a {@code /api/spells/{index}} con el detalle, con una latencia opcional por
+ * petición y errores programados por hechizo
+ */
+public class SpellApiStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int spells;
+    private final long latencyMillis;
+    private final Map<String, Integer> failuresLeft = new ConcurrentHashMap<>();
+    private final AtomicInteger detailRequests = new AtomicInteger();
+
+    /**
+     * @param spells        Número de hechizos de la lista, se llaman {@code Spell 0}, {@code Spell 1}...
+     * @param latencyMillis Espera antes de responder cada petición
+     */
+    public SpellApiStub(int spells, long latencyMillis) throws IOException {
+        this.spells = spells;
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/spells", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Hace que el detalle de un hechizo responda 503 las próximas veces
+     *
+     * @param index Posición del hechizo en la lista
+     * @param times Número de respuestas con error, {@link Integer#MAX_VALUE} para que falle siempre
+     */
+    public void failDetail(int index, int times) {
+        failuresLeft.put("spell-" + index, times);
+    }
+
+    /**
+     * @return Peticiones de detalle recibidas, incluidas las que han fallado
+     */
+    public int detailRequests() {
+        return detailRequests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/api/spells")) {
+                respond(exchange, 200, list());
+                return;
+            }
+            String index = path.substring(path.lastIndexOf('/') + 1);
+            detailRequests.incrementAndGet();
+            Integer left = failuresLeft.computeIfPresent(index, (key, times) -> times - 1);
+            if (left != null && left >= 0) {
+                respond(exchange, 503, "{}");
+                return;
+            }
+            respond(exchange, 200, detail(Integer.parseInt(index.substring("spell-".length()))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String list() {
+        StringBuilder json = new StringBuilder("{\"count\":").append(spells).append(",\"results\":[");
+        for (int i = 0; i < spells; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"index\":\"spell-").append(i).append("\",\"name\":\"Spell ").append(i)
+                    .append("\",\"url\":\"/api/spells/spell-").append(i).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * @param i Posición del hechizo en la lista
+     * @return Documento del hechizo tal como lo devuelve la API
+     */
+    public static String detail(int i) {
+        return "{\"index\":\"spell-" + i + "\",\"name\":\"Spell " + i + "\",\"level\":" + (i % 10)
+                + ",\"desc\":[\"Descripción del hechizo " + i + "\"],\"school\":{\"name\":\"Evocation\"}"
+                + ",\"components\":[\"V\",\"S\",\"M\"],\"casting_time\":\"1 action\",\"duration\":\"Instantaneous\""
+                + ",\"range\":\"150 feet\",\"concentration\":" + (i % 4 == 0) + ",\"ritual\":" + (i % 7 == 0)
+                + ",\"damage\":{\"damage_type\":{\"name\":\"Fire\"},\"damage_at_slot_level\":{\"3\":\"8d6\",\"4\":\"9d6\"}}}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
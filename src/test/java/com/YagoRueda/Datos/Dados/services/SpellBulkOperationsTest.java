@@ -0,0 +1,140 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellBulkResultDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.exceptions.UnauthorizedException;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.transaction.TestTransaction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.YagoRueda.Datos.Dados.services.TestUsers.newUser;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(properties = "datosdados.spells.bulk.max-ids=5")
+@ActiveProfiles("test")
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class})
+class SpellBulkOperationsTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private SpellSuggestIndex spellSuggestIndex;
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+
+    private UserEntity player;
+    private UserEntity other;
+    private SpellEntity fireball;
+    private SpellEntity shield;
+    private SpellEntity bless;
+    private SpellEntity othersSpell;
+
+    @BeforeEach
+    void setUp() {
+        player = entityManager.persist(newUser("player"));
+        other = entityManager.persist(newUser("other"));
+        fireball = spell(player, "Fireball", false);
+        shield = spell(player, "Shield", false);
+        bless = spell(player, "Bless", true);
+        othersSpell = spell(other, "Mage Hand", false);
+        entityManager.flush();
+        entityManager.clear();
+        // El índice no se deshace con la transacción de cada test, se reconstruye con los hechizos de este
+        spellSuggestIndex.rebuild();
+    }
+
+    @Test
+    void visibilityChangesOnlyOwnSpellsThatDiffer() {
+        long publicBefore = scopeVersions.stored(SpellScopeVersions.PUBLIC).version();
+
+        SpellBulkResultDto result = spellService.bulkSetVisibility(player,
+                List.of(shield.getId(), fireball.getId(), bless.getId(), othersSpell.getId(), 999_999L), true);
+
+        assertThat(result.getAffected()).containsExactly(fireball.getId(), shield.getId());
+        assertThat(result.getSkipped()).containsExactly(bless.getId(), othersSpell.getId(), 999_999L);
+        entityManager.clear();
+        SpellEntity stored = entityManager.find(SpellEntity.class, fireball.getId());
+        assertThat(stored.isPublicVisible()).isTrue();
+        assertThat(stored.getVersion()).isEqualTo(fireball.getVersion() + 1);
+        assertThat(entityManager.find(SpellEntity.class, bless.getId()).getVersion()).isEqualTo(bless.getVersion());
+        assertThat(entityManager.find(SpellEntity.class, othersSpell.getId()).isPublicVisible()).isFalse();
+        // Los demás usuarios lo encuentran en el autocompletado y el listado de públicos cambia de versión en cuanto
+        // se confirma, no antes
+        assertThat(spellSuggestIndex.suggest("fireb", other.getId(), 10)).doesNotContain("Fireball");
+        assertThat(scopeVersions.stored(SpellScopeVersions.PUBLIC).version()).isEqualTo(publicBefore);
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        assertThat(spellSuggestIndex.suggest("fireb", other.getId(), 10)).contains("Fireball");
+        assertThat(scopeVersions.stored(SpellScopeVersions.PUBLIC).version()).isEqualTo(publicBefore + 1);
+
+        TestTransaction.start();
+        spellService.bulkDeleteSpells(player, List.of(fireball.getId(), shield.getId(), bless.getId()));
+        spellService.bulkDeleteSpells(other, List.of(othersSpell.getId()));
+        entityManager.remove(entityManager.find(UserEntity.class, player.getId()));
+        entityManager.remove(entityManager.find(UserEntity.class, other.getId()));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+    }
+
+    @Test
+    void deleteRemovesOwnSpellsAndTheirDamageRows() {
+        SpellBulkResultDto result = spellService.bulkDeleteSpells(player,
+                List.of(fireball.getId(), bless.getId(), othersSpell.getId(), fireball.getId()));
+
+        assertThat(result.getAffected()).containsExactly(fireball.getId(), bless.getId());
+        assertThat(result.getSkipped()).containsExactly(othersSpell.getId());
+        assertThat(entityManager.find(SpellEntity.class, fireball.getId())).isNull();
+        assertThat(entityManager.find(SpellEntity.class, othersSpell.getId())).isNotNull();
+        assertThat(damageRows(fireball.getId())).isZero();
+        assertThat(damageRows(othersSpell.getId())).isEqualTo(2);
+        // Si el borrado se deshace el índice no llega a cambiar
+        TestTransaction.end();
+        assertThat(spellSuggestIndex.suggest("fireb", player.getId(), 10)).contains("Fireball");
+    }
+
+    @Test
+    void singleDeleteChecksTheOwner() {
+        assertThatThrownBy(() -> spellService.deleteSpell(player, othersSpell.getId()))
+                .isInstanceOf(UnauthorizedException.class);
+        assertThat(entityManager.find(SpellEntity.class, othersSpell.getId())).isNotNull();
+    }
+
+    @Test
+    void idListsMustBeNonEmptyAndBounded() {
+        assertThatThrownBy(() -> spellService.bulkDeleteSpells(player, List.of()))
+                .isInstanceOf(InvalidInputDataException.class);
+        assertThatThrownBy(() -> spellService.bulkSetVisibility(player, List.of(1L, 2L, 3L, 4L, 5L, 6L), true))
+                .isInstanceOf(InvalidInputDataException.class);
+    }
+
+    private long damageRows(long spellId) {
+        return ((Number) entityManager.getEntityManager()
+                .createNativeQuery("select count(*) from spell_damage_by_level where spell_id = " + spellId)
+                .getSingleResult()).longValue();
+    }
+
+    private SpellEntity spell(UserEntity owner, String name, boolean publicVisible) {
+        SpellDto dto = new SpellDto();
+        dto.setName(name);
+        dto.setLevel(1);
+        dto.setPublicVisible(publicVisible);
+        dto.setDamageByLevel(new TreeMap<>(Map.of(1, "1d6", 2, "2d6")));
+        return spellService.createSpell(owner, dto);
+    }
+}
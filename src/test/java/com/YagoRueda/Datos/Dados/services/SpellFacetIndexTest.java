@@ -0,0 +1,115 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class SpellFacetIndexTest {
+
+    private static final long OWNER = 1;
+    private static final long OTHER = 2;
+
+    private SpellFacetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SpellFacetIndex(mock(SpellRepository.class));
+        index.onSpellChanged(change(1, OWNER, "Fireball", 3, "Evocation", SpellDamageType.FIRE, false, false));
+        index.onSpellChanged(change(2, OWNER, "Fire Bolt", 0, "Evocación", SpellDamageType.FIRE, false, false));
+        index.onSpellChanged(change(3, OWNER, "Ray of Frost", 0, "Evocation", SpellDamageType.COLD, false, false));
+        index.onSpellChanged(change(4, OWNER, "Detect Magic", 1, "Divination", null, true, true));
+        index.onSpellChanged(change(5, OWNER, "Hold Person", 2, "Enchantment", null, true, false));
+        index.onSpellChanged(change(6, OTHER, "Cone of Cold", 5, "Evocation", SpellDamageType.COLD, false, false));
+    }
+
+    @Test
+    void valuesOfOneFacetAreCombinedWithOrAndFacetsWithAnd() {
+        SpellFacetIndex.Result result = index.filterOwnedBy(OWNER, null,
+                filter(Set.of(0, 3), Set.of("Evocation", "EVOCACION"), Set.of(SpellDamageType.FIRE), null, null), null, 0, 10);
+
+        assertThat(result.page()).extracting(SpellFacetIndex.Match::spellId).containsExactly(2L, 1L);
+        assertThat(result.total()).isEqualTo(2);
+        assertThat(result.hasNext()).isFalse();
+    }
+
+    @Test
+    void facetCountsIgnoreTheirOwnFilterButApplyTheOthers() {
+        SpellFacetIndex.Result result = index.filterOwnedBy(OWNER, null,
+                filter(Set.of(0), null, null, null, null), null, 0, 10);
+
+        // Los niveles se cuentan sin el filtro de nivel, el resto de facetas solo sobre los de nivel 0
+        assertThat(result.facets().get(SpellFacetIndex.LEVEL)).isEqualTo(Map.of("0", 2, "1", 1, "2", 1, "3", 1));
+        assertThat(result.facets().get(SpellFacetIndex.DAMAGE_TYPE)).isEqualTo(Map.of("FIRE", 1, "COLD", 1));
+        assertThat(result.facets().get(SpellFacetIndex.CONCENTRATION)).isEqualTo(Map.of("false", 2));
+    }
+
+    @Test
+    void booleanFacetsAndPrefixFilterTogether() {
+        SpellFacetIndex.Result concentration = index.filterOwnedBy(OWNER, null,
+                filter(null, null, null, true, null), null, 0, 10);
+        assertThat(concentration.page()).extracting(SpellFacetIndex.Match::spellId).containsExactly(4L, 5L);
+
+        SpellFacetIndex.Result ritual = index.filterOwnedBy(OWNER, "det",
+                filter(null, null, null, true, true), null, 0, 10);
+        assertThat(ritual.page()).extracting(SpellFacetIndex.Match::spellId).containsExactly(4L);
+    }
+
+    @Test
+    void pagesFollowNameOrderFromTheCursor() {
+        SpellFacetIndex.Result first = index.filterOwnedBy(OWNER, null, SpellFacetIndex.Filter.NONE, null, 0, 2);
+        assertThat(first.page()).extracting(SpellFacetIndex.Match::folded).containsExactly("detect magic", "fire bolt");
+        assertThat(first.hasNext()).isTrue();
+
+        SpellFacetIndex.Match last = first.page().get(1);
+        SpellFacetIndex.Result second = index.filterOwnedBy(OWNER, null, SpellFacetIndex.Filter.NONE, last.folded(),
+                last.spellId(), 10);
+        assertThat(second.page()).extracting(SpellFacetIndex.Match::folded)
+                .containsExactly("fireball", "hold person", "ray of frost");
+        assertThat(second.hasNext()).isFalse();
+    }
+
+    @Test
+    void scopesFollowOwnershipVisibilityAndChanges() {
+        assertThat(index.filterPublic(null, SpellFacetIndex.Filter.NONE, null, 0, 10).page())
+                .extracting(SpellFacetIndex.Match::spellId).containsExactly(6L);
+        assertThat(index.filterOwnedBy(OTHER, null, SpellFacetIndex.Filter.NONE, null, 0, 10).total()).isEqualTo(1);
+
+        index.onSpellChanged(change(6, OTHER, "Cone of Cold", 5, "Evocation", SpellDamageType.COLD, true, false));
+        index.onSpellChanged(new SpellChangedEvent(1, null));
+
+        assertThat(index.filterOwnedBy(OTHER, null, filter(null, null, null, true, null), null, 0, 10).total())
+                .isEqualTo(1);
+        assertThat(index.filterOwnedBy(OWNER, null, filter(Set.of(3), null, null, null, null), null, 0, 10).total())
+                .isZero();
+        assertThat(index.size()).isEqualTo(5);
+    }
+
+    private static SpellFacetIndex.Filter filter(Set<Integer> levels, Set<String> schools,
+                                                 Set<SpellDamageType> damageTypes, Boolean concentration,
+                                                 Boolean ritual) {
+        return new SpellFacetIndex.Filter(levels, schools, damageTypes, concentration, ritual);
+    }
+
+    private static SpellChangedEvent change(long id, long userId, String name, int level, String school,
+                                            SpellDamageType damageType, boolean concentration, boolean ritual) {
+        SpellDto spell = new SpellDto();
+        spell.setId(id);
+        spell.setUserId(userId);
+        spell.setPublicVisible(userId == OTHER);
+        spell.setName(name);
+        spell.setLevel(level);
+        spell.setSchool(school);
+        spell.setDamageType(damageType);
+        spell.setConcentration(concentration);
+        spell.setRitual(ritual);
+        return new SpellChangedEvent(id, spell);
+    }
+}
@@ -0,0 +1,144 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellImportResultDto;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.YagoRueda.Datos.Dados.services.TestUsers.newUser;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "datosdados.spells.import.chunk-size=3")
+@ActiveProfiles("test")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class, SpellImportService.class})
+class SpellImportServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellImportService spellImportService;
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private SpellSuggestIndex spellSuggestIndex;
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+    @Autowired
+    private SpellRepository spellRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static String spell(String name, int level) {
+        return "{\"name\":\"" + name + "\",\"level\":" + level + ",\"publicVisible\":true,\"school\":\"Evocation\","
+                + "\"damageByLevel\":{\"1\":\"1d6\"}}";
+    }
+
+    @Test
+    void invalidLinesAreReportedWithoutStoppingTheImport() throws IOException {
+        UserEntity player = userRepository.saveAndFlush(newUser("player"));
+        String ndjson = String.join("\n",
+                spell("Fireball", 3),
+                "{not json",
+                "",
+                spell("Bless", 1),
+                spell("Broken", -1),
+                "{\"name\":\"Sin nivel\"}",
+                spell("Shield", 1),
+                spell("Aid", 2),
+                spell("Fly", 3));
+
+        SpellImportResultDto result = spellImportService.importSpells(player, new StringReader(ndjson));
+
+        assertThat(result.getImported()).isEqualTo(5);
+        assertThat(result.getFailed()).isEqualTo(3);
+        assertThat(result.getErrors()).extracting(SpellImportResultDto.RowError::getLine).containsExactly(2L, 5L, 6L);
+        assertThat(result.isErrorsTruncated()).isFalse();
+        assertThat(spellRepository.countByUser(player)).isEqualTo(5);
+        // Los índices se actualizan como con cada alta
+        assertThat(spellSuggestIndex.suggest("fireb", player.getId(), 10)).contains("Fireball");
+    }
+
+    @Test
+    void exportedSpellsCanBeImportedAgain() throws IOException {
+        UserEntity author = userRepository.saveAndFlush(newUser("author"));
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            ndjson.append(spell("Spell " + i, i % 10)).append('\n');
+        }
+        spellImportService.importSpells(author, new StringReader(ndjson.toString()));
+        entityManager.clear();
+
+        StringBuilder exported = new StringBuilder();
+        List<String> names = new ArrayList<>();
+        spellService.streamListSpells(author, dto -> {
+            names.add(dto.getName());
+            try {
+                exported.append(objectMapper.writeValueAsString(dto)).append('\n');
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        UserEntity copy = userRepository.saveAndFlush(newUser("copy"));
+        SpellImportResultDto result = spellImportService.importSpells(copy, new StringReader(exported.toString()));
+
+        assertThat(names).hasSize(10).startsWith("Spell 0", "Spell 1");
+        assertThat(result.getImported()).isEqualTo(10);
+        assertThat(result.getFailed()).isZero();
+        entityManager.clear();
+        List<SpellDto> copies = spellService.getListSpells(copy, null);
+        assertThat(copies).hasSize(10).allSatisfy(spell -> {
+            assertThat(spell.getUserId()).isEqualTo(copy.getId());
+            assertThat(spell.getDamageByLevel()).containsEntry(1, "1d6");
+        });
+    }
+
+    /**
+     * Sin la transacción del test, para que cada bloque se confirme o se deshaga por su cuenta
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void rowsRejectedByTheDatabaseOnlyFailThemselves() throws IOException {
+        UserEntity player = userRepository.saveAndFlush(newUser("rejected"));
+        try {
+            String ndjson = String.join("\n",
+                    spell("Fireball", 3),
+                    spell("x".repeat(300), 1),
+                    spell("Bless", 1),
+                    spell("Shield", 1));
+
+            SpellImportResultDto result = spellImportService.importSpells(player, new StringReader(ndjson));
+
+            assertThat(result.getImported()).isEqualTo(3);
+            assertThat(result.getFailed()).isEqualTo(1);
+            assertThat(result.getErrors()).singleElement().extracting(SpellImportResultDto.RowError::getLine).isEqualTo(2L);
+            assertThat(spellRepository.findNamesByUser(player)).containsExactlyInAnyOrder("Fireball", "Bless", "Shield");
+            // Las versiones de los listados cambian al confirmarse cada bloque
+            assertThat(scopeVersions.stored(SpellScopeVersions.user(player.getId())).version()).isPositive();
+            assertThat(scopeVersions.stored(SpellScopeVersions.PUBLIC).version()).isPositive();
+        } finally {
+            spellRepository.deleteAll(spellRepository.findByUser(player));
+            userRepository.delete(player);
+        }
+    }
+}
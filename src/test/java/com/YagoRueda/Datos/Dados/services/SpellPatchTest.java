@@ -0,0 +1,182 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.exceptions.ConflictException;
+import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.exceptions.UnauthorizedException;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.YagoRueda.Datos.Dados.services.TestUsers.newUser;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.YagoRueda.Datos.Dados.services.SpellPatchTest$RecordingInspector")
+@ActiveProfiles("test")
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class})
+class SpellPatchTest {
+
+    /**
+     * Guarda las sentencias que lanza Hibernate para comprobar qué columnas y filas se escriben
+     */
+    public static class RecordingInspector implements StatementInspector {
+
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql.toLowerCase());
+            return sql;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellService spellService;
+
+    private Statistics statistics;
+    private UserEntity player;
+    private SpellEntity fireball;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        player = entityManager.persist(newUser("player"));
+        SpellDto dto = new SpellDto();
+        dto.setName("Fireball");
+        dto.setLevel(3);
+        dto.setSchool("Evocation");
+        dto.setDescription("A bright streak flashes from your pointing finger");
+        dto.setDamageByLevel(new TreeMap<>(Map.of(3, "8d6", 4, "9d6", 5, "10d6")));
+        fireball = spellService.createSpell(player, dto);
+        entityManager.flush();
+        entityManager.clear();
+        RecordingInspector.statements.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void togglingVisibilityUpdatesOnlyThatColumn() throws Exception {
+        SpellEntity patched = spellService.patchSpell(player, fireball.getId(), json("{\"publicVisible\": true}"));
+
+        assertThat(patched.isPublicVisible()).isTrue();
+        assertThat(patched.getVersion()).isEqualTo(fireball.getVersion() + 1);
+        assertThat(patched.getDescription()).startsWith("A bright streak");
+        assertThat(spellWrites()).singleElement().satisfies(sql -> assertThat(sql)
+                .startsWith("update spell_entity set public_visible=?,version=? where id=? and version=?"));
+        assertThat(statistics.getCollectionRecreateCount()).isZero();
+        assertThat(statistics.getCollectionUpdateCount()).isZero();
+    }
+
+    @Test
+    void damageByLevelIsPatchedEntryByEntry() throws Exception {
+        SpellEntity patched = spellService.patchSpell(player, fireball.getId(),
+                json("{\"damageByLevel\": {\"4\": \"9d8\", \"5\": null, \"6\": \"11d6\"}}"));
+
+        assertThat(patched.getDamageByLevel()).containsExactly(Map.entry(3, "8d6"), Map.entry(4, "9d8"),
+                Map.entry(6, "11d6"));
+        List<String> damageWrites = RecordingInspector.statements.stream()
+                .filter(sql -> sql.contains("spell_damage_by_level") && !sql.startsWith("select")).toList();
+        assertThat(damageWrites).hasSize(3).noneMatch(sql -> sql.contains("where spell_id=?") && !sql.contains("nivel"));
+        assertThat(statistics.getCollectionRecreateCount()).isZero();
+    }
+
+    @Test
+    void putOnlyWritesWhatChanged() {
+        SpellDto dto = fireball.toDTO();
+        dto.setName("Fireball (Tasha)");
+        spellService.modifySpell(player, dto);
+
+        assertThat(spellWrites()).singleElement().satisfies(sql -> assertThat(sql)
+                .startsWith("update spell_entity set name=?,name_folded=?,version=?"));
+        assertThat(RecordingInspector.statements).noneMatch(sql -> sql.contains("spell_damage_by_level")
+                && !sql.startsWith("select"));
+    }
+
+    @Test
+    void staleVersionIsAConflict() throws Exception {
+        spellService.patchSpell(player, fireball.getId(), json("{\"name\": \"Fireball II\"}"));
+
+        assertThatThrownBy(() -> spellService.patchSpell(player, fireball.getId(),
+                json("{\"name\": \"Fireball III\", \"version\": " + fireball.getVersion() + "}")))
+                .isInstanceOf(ConflictException.class);
+    }
+
+    @Test
+    void concurrentWriteBetweenReadAndSaveIsAConflict() {
+        SpellEntity loaded = entityManager.find(SpellEntity.class, fireball.getId());
+        entityManager.getEntityManager()
+                .createNativeQuery("update spell_entity set version = version + 1 where id = " + loaded.getId())
+                .executeUpdate();
+
+        SpellDto dto = loaded.toDTO();
+        dto.setPublicVisible(true);
+        assertThatThrownBy(() -> spellService.modifySpell(player, dto))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+    }
+
+    @Test
+    void invalidPatchesAreRejected() {
+        long id = fireball.getId();
+        assertThatThrownBy(() -> spellService.patchSpell(player, id, json("{\"mana\": 3}")))
+                .isInstanceOf(InvalidInputDataException.class);
+        assertThatThrownBy(() -> spellService.patchSpell(player, id, json("{\"level\": null}")))
+                .isInstanceOf(InvalidInputDataException.class);
+        assertThatThrownBy(() -> spellService.patchSpell(player, id, json("{\"ritual\": null}")))
+                .isInstanceOf(InvalidInputDataException.class);
+        assertThatThrownBy(() -> spellService.patchSpell(player, id, json("{\"userId\": 999}")))
+                .isInstanceOf(InvalidInputDataException.class);
+        assertThatThrownBy(() -> spellService.patchSpell(player, id, json("{\"damageByLevel\": {\"x\": \"1d6\"}}")))
+                .isInstanceOf(InvalidInputDataException.class);
+        UserEntity other = entityManager.persist(newUser("other"));
+        assertThatThrownBy(() -> spellService.patchSpell(other, id, json("{\"publicVisible\": true}")))
+                .isInstanceOf(UnauthorizedException.class);
+    }
+
+    @Test
+    void negativeLevelsAreRejectedOnPatchAndPut() {
+        long id = fireball.getId();
+        assertThatThrownBy(() -> spellService.patchSpell(player, id, json("{\"level\": -3}")))
+                .isInstanceOf(InvalidInputDataException.class);
+        SpellDto dto = fireball.toDTO();
+        dto.setLevel(-3);
+        assertThatThrownBy(() -> spellService.modifySpell(player, dto))
+                .isInstanceOf(InvalidInputDataException.class);
+
+        entityManager.clear();
+        assertThat(entityManager.find(SpellEntity.class, id).getLevel()).isEqualTo(3);
+        assertThat(spellWrites()).isEmpty();
+    }
+
+    private List<String> spellWrites() {
+        return RecordingInspector.statements.stream().filter(sql -> sql.startsWith("update spell_entity ")).toList();
+    }
+
+    private JsonNode json(String content) throws Exception {
+        return objectMapper.readTree(content);
+    }
+}
@@ -0,0 +1,193 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellBatchItemDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.YagoRueda.Datos.Dados.services.TestUsers.newUser;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Comprueba que el número de sentencias SQL de los listados y del detalle de hechizos no crece con el número de
+ * hechizos devueltos
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class})
+class SpellQueryCountTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private OfficialSpellCatalog officialSpellCatalog;
+    @Autowired
+    private SpellSearchIndex spellSearchIndex;
+
+    private Statistics statistics;
+    private UserEntity admin;
+    private UserEntity player;
+    private UserEntity author;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        admin = entityManager.persist(newUser("admin"));
+        player = entityManager.persist(newUser("player"));
+        author = entityManager.persist(newUser("author"));
+        entityManager.flush();
+    }
+
+    @Test
+    void userListDoesNotGrowWithResultSize() {
+        assertConstantStatements(() -> spellService.getListSpells(player, null), player, false);
+        assertConstantStatements(() -> spellService.getListSpells(player, "Spell"), player, false);
+    }
+
+    @Test
+    void officialAndPublicListsDoNotGrowWithResultSize() {
+        assertConstantStatements(() -> spellService.getWOTSpells(""), admin, true);
+        assertConstantStatements(() -> spellService.getPublicSpells(""), author, true);
+    }
+
+    @Test
+    void pagesAndStreamsDoNotGrowWithResultSize() {
+        assertConstantStatements(() -> spellService.getListSpellsPage(player, null, null, 100).getItems(), player, false);
+        assertConstantStatements(() -> {
+            List<SpellDto> dtos = new ArrayList<>();
+            spellService.streamPublicSpells("", dtos::add);
+            return dtos;
+        }, author, true);
+    }
+
+    @Test
+    void officialListIsServedFromTheCatalogWithoutQueries() {
+        spells(admin, 60, true);
+        officialSpellCatalog.reload();
+        entityManager.clear();
+        statistics.clear();
+
+        assertThat(spellService.getWOTSpells("spell")).hasSize(60);
+        assertThat(spellService.getWOTSpells("SPELL ADMIN")).hasSize(60);
+        assertThat(spellService.getWOTSpells("zzz")).isEmpty();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void searchLoadsRankedResultsInOneQuery() {
+        spells(author, 60, true);
+        spellSearchIndex.rebuild();
+        entityManager.clear();
+        statistics.clear();
+
+        List<SpellDto> found = spellService.searchSpells(player.getId(), "spell author", 100);
+
+        assertThat(found).hasSize(60).allSatisfy(dto -> assertThat(dto.getDamageByLevel()).hasSize(3));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void searchDoesNotTrustAStaleIndexForVisibility() {
+        spells(author, 3, true);
+        spellSearchIndex.rebuild();
+        // Otro nodo los hace privados y este no recibe el evento
+        entityManager.getEntityManager()
+                .createQuery("UPDATE SpellEntity s SET s.publicVisible = false WHERE s.user.id = :author")
+                .setParameter("author", author.getId())
+                .executeUpdate();
+        entityManager.clear();
+
+        assertThat(spellService.searchSpells(player.getId(), "spell author", 100)).isEmpty();
+        assertThat(spellService.searchSpells(author.getId(), "spell author", 100)).hasSize(3);
+    }
+
+    @Test
+    void detailLoadsSpellAndDamageInOneQuery() {
+        long id = spells(player, 1, false).get(0).getId();
+        statistics.clear();
+
+        SpellDto dto = spellService.getSpell(id);
+
+        assertThat(dto.getDamageByLevel()).hasSize(3);
+        assertThat(dto.getUserId()).isEqualTo(player.getId());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void batchReadLoadsVisibleSpellsInOneQuery() {
+        List<Long> ids = new ArrayList<>();
+        spells(player, 40, false).forEach(spell -> ids.add(spell.getId()));
+        long authorPrivate = spells(author, 1, false).get(0).getId();
+        long official = spells(admin, 1, false).get(0).getId();
+        long authorPublic = spells(author, 1, true).get(0).getId();
+        ids.addAll(List.of(authorPrivate, official, 999_999L, authorPublic));
+        statistics.clear();
+
+        List<SpellBatchItemDto> items = spellService.getSpells(player.getId(), ids);
+
+        assertThat(items).extracting(SpellBatchItemDto::getId).containsExactlyElementsOf(ids);
+        assertThat(items.subList(0, 40)).allSatisfy(item -> assertThat(item.getSpell().getDamageByLevel()).hasSize(3));
+        // Los privados de otro usuario se marcan igual que los que no existen
+        assertThat(items.subList(40, 44)).extracting(SpellBatchItemDto::isFound).containsExactly(false, true, false, true);
+        assertThat(items.get(40).getSpell()).isNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    /**
+     * Ejecuta la operación con pocos hechizos y con muchos más y comprueba que lanza las mismas sentencias
+     */
+    private void assertConstantStatements(Supplier<List<SpellDto>> operation, UserEntity owner, boolean publicVisible) {
+        int before = operation.get().size();
+        entityManager.clear();
+        spells(owner, 3, publicVisible);
+        long few = countStatements(operation, before + 3);
+        spells(owner, 57, publicVisible);
+        long many = countStatements(operation, before + 60);
+        assertThat(many).isEqualTo(few);
+    }
+
+    private long countStatements(Supplier<List<SpellDto>> operation, int expectedSize) {
+        statistics.clear();
+        List<SpellDto> dtos = operation.get();
+        assertThat(dtos).hasSize(expectedSize);
+        assertThat(dtos).allSatisfy(dto -> assertThat(dto.getDamageByLevel()).hasSize(3));
+        long statements = statistics.getPrepareStatementCount();
+        entityManager.clear();
+        return statements;
+    }
+
+    private List<SpellEntity> spells(UserEntity owner, int count, boolean publicVisible) {
+        List<SpellEntity> spells = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SpellEntity spell = new SpellEntity();
+            spell.setUser(entityManager.getEntityManager().getReference(UserEntity.class, owner.getId()));
+            spell.setName("Spell " + owner.getUsername() + " " + System.nanoTime());
+            spell.setLevel(1);
+            spell.setPublicVisible(publicVisible);
+            spell.setOfficial(owner == admin);
+            spell.setDamageByLevel(Map.of(1, "1d6", 2, "2d6", 3, "3d6"));
+            spells.add(entityManager.persist(spell));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return spells;
+    }
+}
@@ -0,0 +1,68 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.repositories.SpellScopeVersionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Copia en memoria de las versiones: solo cambia al confirmar los cambios propios o al recargar los de otros nodos.
+ * Necesita transacciones reales, así que no se ejecuta dentro de la del test
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(SpellScopeVersions.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SpellScopeVersionsMemoryTest {
+
+    private static final String SCOPE = "memory:" + System.nanoTime();
+
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+    @Autowired
+    private SpellScopeVersionRepository repository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteById(SCOPE);
+    }
+
+    @Test
+    void versionsAreReadFromMemoryOnceLoaded() {
+        scopeVersions.refresh();
+        assertThat(scopeVersions.cached(SCOPE)).contains(scopeVersions.current(SCOPE));
+        assertThat(scopeVersions.current(SCOPE).version()).isZero();
+
+        // Un cambio deshecho no se ve
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            scopeVersions.bump(Set.of(SCOPE));
+            status.setRollbackOnly();
+        });
+        assertThat(scopeVersions.current(SCOPE).version()).isZero();
+
+        // Uno confirmado se ve en cuanto se confirma
+        transaction.executeWithoutResult(status -> scopeVersions.bump(Set.of(SCOPE)));
+        assertThat(scopeVersions.current(SCOPE).version()).isEqualTo(1);
+
+        // Los de otros nodos, al recargar
+        repository.increment(Set.of(SCOPE), Instant.now());
+        assertThat(scopeVersions.current(SCOPE).version()).isEqualTo(1);
+        scopeVersions.refresh();
+        assertThat(scopeVersions.current(SCOPE).version()).isEqualTo(2);
+    }
+}
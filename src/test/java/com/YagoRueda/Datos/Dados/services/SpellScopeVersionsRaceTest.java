@@ -0,0 +1,86 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.models.SpellScopeVersionEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellScopeVersionRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Creación simultánea de un ámbito desde dos transacciones, como harían dos nodos que cambian a la vez hechizos del
+ * mismo ámbito. Necesita transacciones reales, así que no se ejecuta dentro de la del test
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(SpellScopeVersions.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SpellScopeVersionsRaceTest {
+
+    private static final String SCOPE = "race:" + System.nanoTime();
+
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+    @Autowired
+    private SpellScopeVersionRepository repository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteById(SCOPE);
+    }
+
+    @Test
+    void concurrentCreationDoesNotRollBackTheCallerTransaction() throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        CountDownLatch inserted = new CountDownLatch(1);
+        // El otro nodo inserta el ámbito y tarda en confirmar, mientras tanto el primero intenta crearlo
+        CompletableFuture<Void> otherNode = CompletableFuture.runAsync(() -> transaction.executeWithoutResult(status -> {
+            SpellScopeVersionEntity version = new SpellScopeVersionEntity();
+            version.setScope(SCOPE);
+            version.setVersion(1);
+            version.setModifiedAt(Instant.now());
+            entityManager.persist(version);
+            entityManager.flush();
+            inserted.countDown();
+            sleep(300);
+        }));
+        assertThat(inserted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // La transacción de quien cambia el hechizo tiene que poder confirmarse
+        transaction.executeWithoutResult(status -> {
+            scopeVersions.bump(Set.of(SCOPE));
+            assertThat(status.isRollbackOnly()).isFalse();
+        });
+        otherNode.get(5, TimeUnit.SECONDS);
+
+        assertThat(scopeVersions.current(SCOPE).version()).isEqualTo(2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
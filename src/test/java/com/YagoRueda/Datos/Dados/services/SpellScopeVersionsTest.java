@@ -0,0 +1,110 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.SpellScopeVersionEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellScopeVersionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.transaction.TestTransaction;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class})
+class SpellScopeVersionsTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private SpellScopeVersions scopeVersions;
+    @Autowired
+    private SpellScopeVersionRepository scopeVersionRepository;
+
+    private UserEntity player;
+
+    @BeforeEach
+    void setUp() {
+        player = new UserEntity();
+        player.setUsername("player");
+        player.setSignup_date(Instant.now());
+        entityManager.persistAndFlush(player);
+    }
+
+    @Test
+    void untouchedScopesHaveTheInitialVersion() {
+        SpellScopeVersions.Version version = scopeVersions.current(SpellScopeVersions.OFFICIAL);
+
+        assertThat(version.version()).isZero();
+        assertThat(version.etag("json")).isEqualTo("W/\"0-json\"");
+        assertThat(version.etag("cbor")).isNotEqualTo(version.etag("json"));
+        assertThat(version.lastModified()).isEqualTo(-1);
+    }
+
+    @Test
+    void committedWritesBumpEveryListTheSpellAppearsIn() {
+        String userScope = SpellScopeVersions.user(player.getId());
+        long publicBefore = scopeVersions.stored(SpellScopeVersions.PUBLIC).version();
+        long officialBefore = scopeVersions.stored(SpellScopeVersions.OFFICIAL).version();
+
+        SpellEntity spell = spellService.createSpell(player, dto(null, "Fireball", false));
+        // Hasta que se confirma el cambio no se toca ninguna versión
+        assertThat(scopeVersions.stored(userScope).version()).isZero();
+        commit();
+        assertThat(scopeVersions.stored(userScope).version()).isEqualTo(1);
+        assertThat(scopeVersions.stored(SpellScopeVersions.PUBLIC).version()).isEqualTo(publicBefore);
+
+        // Al hacerse público entra en el listado de públicos, y el propio hechizo cambia de versión
+        String etagBefore = SpellScopeVersions.Version.of(spellService.getSpell(spell.getId()).getVersion()).etag("json");
+        spellService.modifySpell(player, dto(spell.getId(), "Fireball", true));
+        commit();
+        assertThat(scopeVersions.stored(userScope).version()).isEqualTo(2);
+        assertThat(scopeVersions.stored(SpellScopeVersions.PUBLIC).version()).isEqualTo(publicBefore + 1);
+        assertThat(SpellScopeVersions.Version.of(spellService.getSpell(spell.getId()).getVersion()).etag("json"))
+                .isNotEqualTo(etagBefore);
+
+        spellService.deleteSpell(player, spell.getId());
+        commit();
+        assertThat(scopeVersions.stored(userScope).version()).isEqualTo(3);
+        assertThat(scopeVersions.stored(SpellScopeVersions.PUBLIC).version()).isEqualTo(publicBefore + 2);
+        assertThat(scopeVersions.stored(SpellScopeVersions.OFFICIAL).version()).isEqualTo(officialBefore);
+        // Ya no se guarda una fila por hechizo
+        assertThat(scopeVersionRepository.findAll()).extracting(SpellScopeVersionEntity::getScope)
+                .noneMatch(scope -> scope.startsWith("spell:"));
+
+        scopeVersionRepository.deleteById(userScope);
+        entityManager.remove(entityManager.find(UserEntity.class, player.getId()));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+    }
+
+    /**
+     * Confirma la transacción del test y abre otra
+     */
+    private static void commit() {
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+    }
+
+    private static SpellDto dto(Long id, String name, boolean publicVisible) {
+        SpellDto dto = new SpellDto();
+        dto.setId(id);
+        dto.setName(name);
+        dto.setLevel(3);
+        dto.setPublicVisible(publicVisible);
+        return dto;
+    }
+}
@@ -0,0 +1,116 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.enums.SpellDamageType;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.SpellSearchView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SpellSearchIndexTest {
+
+    private static final long OWNER = 1;
+    private static final long OTHER = 2;
+
+    private SpellRepository spellRepository;
+    private SpellSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        spellRepository = mock(SpellRepository.class);
+        index = new SpellSearchIndex(spellRepository);
+    }
+
+    @Test
+    void accentsAndCaseAreIgnored() {
+        index.onSpellChanged(change(1, OWNER, true, "Conjuración", "Invocas una criatura aterrada"));
+
+        assertThat(ids(index.search("CONJURACION", OTHER, 10))).containsExactly(1L);
+        assertThat(ids(index.search("aterrada", OTHER, 10))).containsExactly(1L);
+        assertThat(SpellTextNormalizer.tokenize("Bonus-action, ¡Pingüino!")).containsExactly("bonus", "action", "pinguino");
+    }
+
+    @Test
+    void allTermsMustMatchAndNameMatchesRankFirst() {
+        index.onSpellChanged(change(1, OWNER, true, "Burning Hands", "A thin sheet of flames shoots out in a cone"));
+        index.onSpellChanged(change(2, OWNER, true, "Cone of Cold", "A blast of cold air erupts in a cone"));
+        index.onSpellChanged(change(3, OWNER, true, "Healing Word", "As a bonus action a creature regains hit points"));
+
+        assertThat(ids(index.search("cone", OTHER, 10))).containsExactly(2L, 1L);
+        assertThat(ids(index.search("bonus action", OTHER, 10))).containsExactly(3L);
+        assertThat(ids(index.search("bonus cone", OTHER, 10))).isEmpty();
+        assertThat(ids(index.search("cone", OTHER, 1))).containsExactly(2L);
+    }
+
+    @Test
+    void privateSpellsAreOnlyVisibleToTheirOwner() {
+        index.onSpellChanged(change(1, OWNER, false, "Secret Ward", "frightened"));
+        index.onSpellChanged(change(2, OTHER, true, "Cause Fear", "the target is frightened"));
+
+        assertThat(ids(index.search("frightened", OWNER, 10))).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(ids(index.search("frightened", OTHER, 10))).containsExactly(2L);
+    }
+
+    @Test
+    void updatesAndDeletesReplaceTheIndexedText() {
+        index.onSpellChanged(change(1, OWNER, true, "Fireball", "explodes"));
+        index.onSpellChanged(change(1, OWNER, true, "Frostball", "freezes"));
+
+        assertThat(index.search("fireball", OWNER, 10)).isEmpty();
+        assertThat(ids(index.search("freezes", OWNER, 10))).containsExactly(1L);
+
+        index.onSpellChanged(new SpellChangedEvent(1, null));
+        assertThat(index.search("freezes", OWNER, 10)).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void rebuildLoadsEverySpell() {
+        when(spellRepository.streamSearchViews()).thenReturn(Stream.of(
+                view(1, OWNER, true, "Shield", "An invisible barrier"),
+                view(2, OWNER, false, "Mage Armor", "A protective magical force")));
+
+        index.rebuild();
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(ids(index.search("barrier", OTHER, 10))).containsExactly(1L);
+        assertThat(index.search("protective", OTHER, 10)).isEmpty();
+    }
+
+    private static SpellChangedEvent change(long id, long userId, boolean publicVisible, String name, String description) {
+        SpellDto dto = new SpellDto();
+        dto.setId(id);
+        dto.setUserId(userId);
+        dto.setPublicVisible(publicVisible);
+        dto.setName(name);
+        dto.setDescription(description);
+        return new SpellChangedEvent(id, dto);
+    }
+
+    private static SpellSearchView view(long id, long userId, boolean publicVisible, String name, String description) {
+        return new SpellSearchView() {
+            public Long getId() { return id; }
+            public Long getUserId() { return userId; }
+            public Boolean getPublicVisible() { return publicVisible; }
+            public String getName() { return name; }
+            public String getDescription() { return description; }
+            public Boolean getOfficial() { return false; }
+            public Integer getLevel() { return null; }
+            public String getSchool() { return null; }
+            public SpellDamageType getDamageType() { return null; }
+            public Boolean getConcentration() { return false; }
+            public Boolean getRitual() { return false; }
+        };
+    }
+
+    private static List<Long> ids(List<SpellSearchIndex.Hit> hits) {
+        return hits.stream().map(SpellSearchIndex.Hit::spellId).toList();
+    }
+}
@@ -0,0 +1,119 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Config.SpellCacheConfig;
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.controlles.SpellCacheEndpoint;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sin la transacción del test, para que las escrituras se confirmen y lleguen a la caché como en la aplicación
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({SpellCacheConfig.class, SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class,
+        SpellSuggestIndex.class, SpellFacetIndex.class, SpellScopeVersions.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SpellSecondLevelCacheTest {
+
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private SpellRepository spellRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private UserEntity player;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        UserEntity user = new UserEntity();
+        user.setUsername("player");
+        user.setSignup_date(Instant.now());
+        player = userRepository.saveAndFlush(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        spellRepository.deleteAll(spellRepository.findByUser(player));
+        userRepository.delete(player);
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cachedReadsRunNoStatementsAndTakeNoConnection() {
+        long id = create("Fireball").getId();
+        entityManagerFactory.getCache().evictAll();
+
+        statistics.clear();
+        assertThat(spellService.getSpell(id).getName()).isEqualTo("Fireball");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        SpellDto cached = spellService.getSpell(id);
+
+        assertThat(cached.getDamageByLevel()).containsEntry(3, "8d6");
+        assertThat(cached.getUserId()).isEqualTo(player.getId());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getConnectCount()).isZero();
+        Map<String, Object> stats = new SpellCacheEndpoint(entityManagerFactory).stats();
+        assertThat(stats).containsEntry("connections", 0L);
+        assertThat((Map<String, Object>) stats.get(SpellEntity.CACHE_REGION)).containsEntry("hits", 1L).containsEntry("hitRatio", 1.0);
+        assertThat((Map<String, Object>) stats.get(SpellEntity.DAMAGE_CACHE_REGION)).containsEntry("hits", 1L);
+    }
+
+    @Test
+    void modifyAndDeleteInvalidateTheCachedSpell() {
+        SpellEntity spell = create("Fireball");
+        long id = spell.getId();
+        spellService.getSpell(id);
+        assertThat(entityManagerFactory.getCache().contains(SpellEntity.class, id)).isTrue();
+
+        SpellDto change = spell.toDTO();
+        change.setName("Delayed Blast Fireball");
+        change.setDamageByLevel(new TreeMap<>(Map.of(7, "12d6")));
+        spellService.modifySpell(player, change);
+        SpellDto modified = spellService.getSpell(id);
+
+        assertThat(modified.getName()).isEqualTo("Delayed Blast Fireball");
+        assertThat(modified.getDamageByLevel()).containsExactly(Map.entry(7, "12d6"));
+
+        spellService.deleteSpell(player, id);
+
+        assertThat(spellService.getSpell(id)).isNull();
+    }
+
+    private SpellEntity create(String name) {
+        SpellDto dto = new SpellDto();
+        dto.setName(name);
+        dto.setLevel(3);
+        dto.setSchool("Evocation");
+        dto.setDamageByLevel(new TreeMap<>(Map.of(3, "8d6", 4, "9d6")));
+        return spellService.createSpell(player, dto);
+    }
+}
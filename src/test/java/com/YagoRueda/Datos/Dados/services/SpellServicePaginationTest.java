@@ -0,0 +1,135 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellFacetPageDto;
+import com.YagoRueda.Datos.Dados.Dtos.SpellPageDto;
+import com.YagoRueda.Datos.Dados.OficialSpellInitializer;
+import com.YagoRueda.Datos.Dados.exceptions.InvalidInputDataException;
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.YagoRueda.Datos.Dados.services.TestUsers.newUser;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class})
+class SpellServicePaginationTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellService spellService;
+    @Autowired
+    private SpellFacetIndex spellFacetIndex;
+
+    private UserEntity player;
+
+    @BeforeEach
+    void setUp() {
+        UserEntity admin = entityManager.persist(newUser(OficialSpellInitializer.OFICIALUSERNAME));
+        player = entityManager.persist(newUser("player"));
+        for (String name : List.of("Fireball", "Fire Bolt", "Bless", "Cure Wounds", "Fly", "Aid", "Fear")) {
+            spell(admin, name, true);
+            spell(player, name, false);
+        }
+        spell(player, "Fire Storm", true);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pagesCoverTheWholeListInNameOrderWithoutRepeats() {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            SpellPageDto page = spellService.getListSpellsPage(player, null, cursor, 3);
+            assertThat(page.getItems()).hasSizeLessThanOrEqualTo(3);
+            page.getItems().stream().map(SpellDto::getName).forEach(names::add);
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(names).containsExactly("Aid", "Bless", "Cure Wounds", "Fear", "Fire Bolt", "Fire Storm",
+                "Fireball", "Fly");
+    }
+
+    @Test
+    void officialAndPublicScopesAreFilteredByPrefix() {
+        SpellPageDto official = spellService.getWOTSpellsPage("Fi", null, 10);
+        assertThat(official.getItems()).extracting(SpellDto::getName).containsExactly("Fire Bolt", "Fireball");
+        assertThat(official.getNextCursor()).isNull();
+
+        SpellPageDto publicSpells = spellService.getPublicSpellsPage("", null, null);
+        assertThat(publicSpells.getItems()).extracting(SpellDto::getName).containsExactly("Fire Storm");
+    }
+
+    @Test
+    void facetedPagesAreFilteredInMemoryAndLoadedInOrder() {
+        spellFacetIndex.rebuild();
+        SpellFacetIndex.Filter levelOne = new SpellFacetIndex.Filter(Set.of(1), null, null, null, null);
+
+        SpellFacetPageDto first = spellService.getListSpellsFaceted(player.getId(), "fi", levelOne, null, 2);
+        assertThat(first.getItems()).extracting(SpellDto::getName).containsExactly("Fire Bolt", "Fire Storm");
+        assertThat(first.getTotal()).isEqualTo(3);
+        assertThat(first.getFacets().get(SpellFacetIndex.LEVEL)).isEqualTo(Map.of("1", 3));
+
+        SpellFacetPageDto second = spellService.getListSpellsFaceted(player.getId(), "fi", levelOne, first.getNextCursor(), 2);
+        assertThat(second.getItems()).extracting(SpellDto::getName).containsExactly("Fireball");
+        assertThat(second.getNextCursor()).isNull();
+
+        SpellFacetPageDto publicSpells = spellService.getPublicSpellsFaceted(null,
+                new SpellFacetIndex.Filter(Set.of(2), null, null, null, null), null, null);
+        assertThat(publicSpells.getItems()).isEmpty();
+        assertThat(publicSpells.getFacets().get(SpellFacetIndex.LEVEL)).isEqualTo(Map.of("1", 1));
+    }
+
+    @Test
+    void staleFacetEntriesAreNeitherServedNorCounted() {
+        spellFacetIndex.rebuild();
+        SpellFacetIndex.Filter levelOne = new SpellFacetIndex.Filter(Set.of(1), null, null, null, null);
+        assertThat(spellService.getPublicSpellsFaceted(null, levelOne, null, null).getTotal()).isEqualTo(1);
+
+        // Otro nodo lo hace privado y este no recibe el evento
+        entityManager.getEntityManager()
+                .createQuery("UPDATE SpellEntity s SET s.publicVisible = false WHERE s.name = 'Fire Storm'")
+                .executeUpdate();
+
+        SpellFacetPageDto publicSpells = spellService.getPublicSpellsFaceted(null, levelOne, null, null);
+        assertThat(publicSpells.getItems()).isEmpty();
+        assertThat(publicSpells.getTotal()).isZero();
+        assertThat(publicSpells.getFacets().get(SpellFacetIndex.LEVEL)).isEmpty();
+    }
+
+    @Test
+    void invalidCursorIsRejected() {
+        assertThatThrownBy(() -> spellService.getPublicSpellsPage(null, "no-es-un-cursor", 10))
+                .isInstanceOf(InvalidInputDataException.class);
+    }
+
+    private void spell(UserEntity owner, String name, boolean publicVisible) {
+        SpellEntity spell = new SpellEntity();
+        spell.setUser(owner);
+        spell.setName(name);
+        spell.setLevel(1);
+        spell.setPublicVisible(publicVisible);
+        spell.setOfficial(owner.getUsername().equals(OficialSpellInitializer.OFICIALUSERNAME));
+        entityManager.persist(spell);
+    }
+}
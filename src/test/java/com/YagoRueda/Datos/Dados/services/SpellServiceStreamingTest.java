@@ -0,0 +1,79 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.models.SpellEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Comprueba que recorrer un resultado grande en streaming no acumula entidades en memoria: el número de entidades
+ * gestionadas por el contexto de persistencia se mantiene acotado por el intervalo de vaciado sea cual sea el tamaño
+ * del resultado
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({SpellService.class, OfficialSpellCatalog.class, SpellSearchIndex.class, SpellSuggestIndex.class,
+        SpellFacetIndex.class, SpellScopeVersions.class})
+class SpellServiceStreamingTest {
+
+    private static final int SPELLS = 1500;
+    private static final int CLEAR_INTERVAL = 100;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private SpellService spellService;
+
+    @BeforeEach
+    void setUp() {
+        UserEntity author = new UserEntity();
+        author.setUsername("author");
+        author.setSignup_date(Instant.now());
+        entityManager.persist(author);
+        for (int i = 0; i < SPELLS; i++) {
+            SpellEntity spell = new SpellEntity();
+            spell.setUser(author);
+            spell.setName("Spell " + i);
+            spell.setLevel(i % 10);
+            spell.setPublicVisible(true);
+            spell.setDescription("x".repeat(500));
+            spell.setDamageByLevel(Map.of(1, "1d6", 2, "2d6"));
+            entityManager.persist(spell);
+            if (i % CLEAR_INTERVAL == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void managedEntitiesStayBoundedWhileStreaming() {
+        SessionImplementor session = entityManager.getEntityManager().unwrap(SessionImplementor.class);
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger maxManaged = new AtomicInteger();
+
+        spellService.streamPublicSpells("", dto -> {
+            assertThat(dto.getDamageByLevel()).containsEntry(2, "2d6");
+            delivered.incrementAndGet();
+            maxManaged.accumulateAndGet(session.getPersistenceContextInternal().getNumberOfManagedEntities(), Math::max);
+        });
+
+        assertThat(delivered.get()).isEqualTo(SPELLS);
+        // Hechizos pendientes de vaciar más el usuario autor
+        assertThat(maxManaged.get()).isLessThanOrEqualTo(CLEAR_INTERVAL + 1);
+    }
+}
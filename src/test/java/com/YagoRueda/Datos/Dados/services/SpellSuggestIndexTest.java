@@ -0,0 +1,70 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.SpellDto;
+import com.YagoRueda.Datos.Dados.repositories.SpellRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class SpellSuggestIndexTest {
+
+    private static final long OWNER = 1;
+    private static final long OTHER = 2;
+
+    private SpellSuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SpellSuggestIndex(mock(SpellRepository.class));
+        long id = 0;
+        for (String name : new String[]{"Fireball", "Fire Bolt", "Fire Shield", "Feather Fall", "Fly", "Cure Wounds",
+                "Delayed Blast Fireball", "Conjuración"}) {
+            index.onSpellChanged(change(++id, OTHER, true, name));
+        }
+    }
+
+    @Test
+    void misspelledAndPartialInputFindsTheIntendedSpell() {
+        assertThat(index.suggest("firbal", OWNER, 3)).first().isEqualTo("Fireball");
+        assertThat(index.suggest("fire", OWNER, 3)).containsExactlyInAnyOrder("Fire Bolt", "Fire Shield", "Fireball");
+        assertThat(index.suggest("cure wonds", OWNER, 1)).containsExactly("Cure Wounds");
+        assertThat(index.suggest("CONJURACION", OWNER, 1)).containsExactly("Conjuración");
+        assertThat(index.suggest("xyz", OWNER, 5)).isEmpty();
+        assertThat(index.suggest("  ", OWNER, 5)).isEmpty();
+    }
+
+    @Test
+    void repeatedNamesAreSuggestedOnce() {
+        index.onSpellChanged(change(100, OWNER, false, "Fireball"));
+
+        assertThat(index.suggest("fireball", OWNER, 10)).containsOnlyOnce("Fireball");
+    }
+
+    @Test
+    void privateSpellsAreOnlySuggestedToTheirOwner() {
+        index.onSpellChanged(change(100, OWNER, false, "Mordenkainen Sword"));
+
+        assertThat(index.suggest("mordenkai", OWNER, 5)).containsExactly("Mordenkainen Sword");
+        assertThat(index.suggest("mordenkai", OTHER, 5)).isEmpty();
+    }
+
+    @Test
+    void renamesAndDeletesAreApplied() {
+        index.onSpellChanged(change(1, OTHER, true, "Meteor Swarm"));
+        assertThat(index.suggest("firebal", OWNER, 10)).doesNotContain("Fireball");
+
+        index.onSpellChanged(new SpellChangedEvent(1, null));
+        assertThat(index.suggest("meteor", OWNER, 10)).isEmpty();
+    }
+
+    private static SpellChangedEvent change(long id, long userId, boolean publicVisible, String name) {
+        SpellDto dto = new SpellDto();
+        dto.setId(id);
+        dto.setUserId(userId);
+        dto.setPublicVisible(publicVisible);
+        dto.setName(name);
+        return new SpellChangedEvent(id, dto);
+    }
+}
@@ -0,0 +1,25 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+
+import java.time.Instant;
+
+/**
+ * Usuarios para los tests. Cada test los guarda con lo que ya usa, el {@code TestEntityManager} o el repositorio
+ */
+public final class TestUsers {
+
+    private TestUsers() {
+    }
+
+    /**
+     * @param username Nombre de usuario
+     * @return Un usuario sin guardar, registrado ahora y sin contraseña
+     */
+    public static UserEntity newUser(String username) {
+        UserEntity user = new UserEntity();
+        user.setUsername(username);
+        user.setSignup_date(Instant.now());
+        return user;
+    }
+}
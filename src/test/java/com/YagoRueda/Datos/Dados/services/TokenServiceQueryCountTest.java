@@ -0,0 +1,112 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.Dtos.AuthenticatedUser;
+import com.YagoRueda.Datos.Dados.models.TokenEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({TokenService.class, SessionCache.class, TokenRenewalBuffer.class, SignedTokenCodec.class,
+        TokenRevocationList.class})
+class TokenServiceQueryCountTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private TokenRenewalBuffer renewalBuffer;
+    @Autowired
+    private TokenRepository tokenRepository;
+
+    private Statistics statistics;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        user = new UserEntity();
+        user.setUsername("player");
+        user.setSignup_date(Instant.now());
+        entityManager.persist(user);
+    }
+
+    @Test
+    void authenticationOnCacheMissRunsOneQuery() {
+        String tokenId = persistToken(Instant.now().plus(1, ChronoUnit.MINUTES));
+
+        Optional<AuthenticatedUser> principal = tokenService.authenticate(tokenId);
+
+        assertThat(principal).isPresent();
+        assertThat(principal.get().userId()).isEqualTo(user.getId());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void authenticationOnCacheHitRunsNoQueries() {
+        String tokenId = persistToken(Instant.now().plus(30, ChronoUnit.MINUTES));
+        tokenService.authenticate(tokenId);
+        statistics.clear();
+
+        assertThat(tokenService.authenticate(tokenId)).isPresent();
+        assertThat(tokenService.getUser(tokenService.authenticate(tokenId).orElseThrow()).getId()).isEqualTo(user.getId());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void unknownTokenIsRejectedWithOneQuery() {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        assertThat(tokenService.authenticate("missing")).isEmpty();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void renewalsAtDifferentTimesFlushToTheirOwnExpiration() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        String first = persistToken(now.plus(1, ChronoUnit.MINUTES));
+        String second = persistToken(now.plus(2, ChronoUnit.MINUTES));
+        renewalBuffer.renew(first, now.plus(30, ChronoUnit.MINUTES));
+        renewalBuffer.renew(second, now.plus(31, ChronoUnit.MINUTES));
+
+        renewalBuffer.flush();
+        entityManager.clear();
+
+        assertThat(tokenRepository.findByTokenId(first).orElseThrow().getExpiresAt())
+                .isEqualTo(now.plus(30, ChronoUnit.MINUTES));
+        assertThat(tokenRepository.findByTokenId(second).orElseThrow().getExpiresAt())
+                .isEqualTo(now.plus(31, ChronoUnit.MINUTES));
+    }
+
+    private String persistToken(Instant expiresAt) {
+        TokenEntity token = new TokenEntity();
+        token.setTokenId("token-" + expiresAt.toEpochMilli());
+        token.setUser(user);
+        token.setCreatedAt(Instant.now());
+        token.setExpiresAt(expiresAt);
+        entityManager.persist(token);
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        return token.getTokenId();
+    }
+}
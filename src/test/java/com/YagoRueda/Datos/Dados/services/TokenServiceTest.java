@@ -0,0 +1,157 @@
+package com.YagoRueda.Datos.Dados.services;
+
+import com.YagoRueda.Datos.Dados.models.TokenEntity;
+import com.YagoRueda.Datos.Dados.models.UserEntity;
+import com.YagoRueda.Datos.Dados.repositories.TokenRepository;
+import com.YagoRueda.Datos.Dados.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class TokenServiceTest {
+
+    private TokenRepository tokenRepository;
+    private SessionCache sessionCache;
+    private TokenRenewalBuffer renewalBuffer;
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        tokenRepository = mock(TokenRepository.class);
+        sessionCache = new SessionCache(100, Duration.ofMinutes(1));
+        renewalBuffer = new TokenRenewalBuffer(tokenRepository, "write-behind", 0.5, false);
+        tokenService = new TokenService(tokenRepository, mock(UserRepository.class), sessionCache, renewalBuffer,
+                new SignedTokenCodec("", Duration.ofHours(8)), new TokenRevocationList(tokenRepository, "database"),
+                "database");
+    }
+
+    @Test
+    void pendingRenewalKeepsSessionAliveAfterStoredExpirationPasses() {
+        TokenEntity token = token("abc", Instant.now().plus(1, ChronoUnit.MINUTES));
+        when(tokenRepository.findWithUserByTokenId("abc")).thenReturn(Optional.of(token));
+
+        // Al token le queda poca vida: la renovación queda pendiente de volcar
+        assertThat(tokenService.validateAndRenewToken("abc")).isTrue();
+        assertThat(renewalBuffer.pendingExpiration("abc")).isAfter(Instant.now().plus(29, ChronoUnit.MINUTES));
+
+        // La sesión sale de la caché y la fecha de bd ya ha pasado porque el volcado no se ha hecho todavía
+        sessionCache.invalidate("abc");
+        token.setExpiresAt(Instant.now().minusSeconds(1));
+
+        assertThat(tokenService.validateAndRenewToken("abc")).isTrue();
+        assertThat(token.isExpired()).isFalse();
+        verify(tokenRepository, never()).save(any());
+        verify(tokenRepository, never()).renewExpiration(anyString(), any());
+    }
+
+    @Test
+    void renewalIsSkippedWhileMostOfTheLifetimeIsLeft() {
+        TokenEntity token = token("abc", Instant.now().plus(29, ChronoUnit.MINUTES));
+        when(tokenRepository.findWithUserByTokenId("abc")).thenReturn(Optional.of(token));
+
+        assertThat(tokenService.validateAndRenewToken("abc")).isTrue();
+        assertThat(tokenService.validateAndRenewToken("abc")).isTrue();
+
+        assertThat(renewalBuffer.pendingCount()).isZero();
+    }
+
+    @Test
+    void flushGroupsTokensThatShareTheirExpiration() {
+        Instant earlier = Instant.now().plus(10, ChronoUnit.MINUTES);
+        Instant later = earlier.plus(1, ChronoUnit.MINUTES);
+        renewalBuffer.renew("a", earlier);
+        renewalBuffer.renew("b", later);
+        renewalBuffer.renew("c", later);
+        when(tokenRepository.renewExpirations(any(), any())).thenReturn(1);
+
+        renewalBuffer.flush();
+
+        verify(tokenRepository).renewExpirations(List.of("a"), earlier);
+        verify(tokenRepository).renewExpirations(
+                ArgumentMatchers.<Collection<String>>argThat(ids -> ids.size() == 2 && ids.containsAll(List.of("b", "c"))),
+                eq(later));
+        assertThat(renewalBuffer.pendingCount()).isZero();
+    }
+
+    @Test
+    void revokedSessionIsRejectedWithoutTouchingTheDatabaseAgain() {
+        TokenEntity token = token("abc", Instant.now().plus(10, ChronoUnit.MINUTES));
+        token.setRevoked(true);
+        when(tokenRepository.findWithUserByTokenId("abc")).thenReturn(Optional.of(token));
+
+        assertThat(tokenService.validateAndRenewToken("abc")).isFalse();
+        assertThat(tokenService.validateAndRenewToken("abc")).isFalse();
+
+        verify(tokenRepository, times(1)).findWithUserByTokenId("abc");
+    }
+
+    @Test
+    void signedTokenIsValidatedWithoutDatabaseUntilRevoked() {
+        UserRepository userRepository = mock(UserRepository.class);
+        TokenService signedService = signedService(userRepository);
+        UserEntity user = new UserEntity();
+        user.setUsername("user");
+
+        TokenEntity token = signedService.createToken(user);
+        assertThat(signedService.authenticate(token.getTokenId()))
+                .hasValueSatisfying(principal -> assertThat(principal.userId()).isEqualTo(user.getId()));
+        assertThat(signedService.validateAndRenewToken(token.getTokenId())).isTrue();
+        assertThat(signedService.validateAndRenewToken(token.getTokenId() + "x")).isFalse();
+        verify(tokenRepository, never()).findWithUserByTokenId(anyString());
+        verifyNoInteractions(userRepository);
+
+        signedService.revokeToken(token);
+        assertThat(signedService.validateAndRenewToken(token.getTokenId())).isFalse();
+    }
+
+    @Test
+    void signedTokenLengthDoesNotDependOnTheUsername() {
+        UserRepository userRepository = mock(UserRepository.class);
+        TokenService signedService = signedService(userRepository);
+        UserEntity user = new UserEntity();
+        user.setUsername("u".repeat(255));
+
+        TokenEntity token = signedService.createToken(user);
+
+        // Cabe en token_entity.token_id, varchar(255)
+        assertThat(token.getTokenId()).hasSizeLessThanOrEqualTo(150);
+        assertThat(signedService.authenticate(token.getTokenId()))
+                .hasValueSatisfying(principal -> assertThat(principal.userId()).isEqualTo(user.getId()));
+    }
+
+    private TokenService signedService(UserRepository userRepository) {
+        when(tokenRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        return new TokenService(tokenRepository, userRepository, sessionCache, renewalBuffer,
+                new SignedTokenCodec("0123456789abcdef0123456789abcdef", Duration.ofHours(8)),
+                new TokenRevocationList(tokenRepository, "signed"), "signed");
+    }
+
+    private static TokenEntity token(String tokenId, Instant expiresAt) {
+        UserEntity user = new UserEntity();
+        user.setUsername("user");
+        TokenEntity token = new TokenEntity();
+        token.setTokenId(tokenId);
+        token.setUser(user);
+        token.setCreatedAt(Instant.now());
+        token.setExpiresAt(expiresAt);
+        return token;
+    }
+}